@@ -0,0 +1,105 @@
+package com.wode.benchmark;
+
+import com.wode.util.CompactKeyValueMap;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.ValueEncoding;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 每个条目占用的内存: 普通字符串键 vs 分桶hash
+ * 用法: CompactMapMemoryBenchmark [host] [port] [database] [entries] [bucketSize]
+ * 会在指定库写入并删除 bench:* 的键, 不要对生产库运行
+ */
+public class CompactMapMemoryBenchmark {
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int database = args.length > 2 ? Integer.parseInt(args[2]) : 15;
+        int entries = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+        int bucketSize = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(host, port);
+        configuration.setDatabase(database);
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration);
+        factory.afterPropertiesSet();
+        try {
+            StringRedisTemplate template = new StringRedisTemplate(factory);
+            String value = "v-0123456789";
+
+            long before = usedMemory(template);
+            for (int start = 0; start < entries; start += 1000) {
+                int from = start;
+                int to = Math.min(entries, start + 1000);
+                template.execute((RedisCallback<Object>) connection -> {
+                    connection.openPipeline();
+                    for (int id = from; id < to; id++) {
+                        connection.stringCommands().set(("bench:plain:" + id).getBytes(StandardCharsets.UTF_8),
+                                value.getBytes(StandardCharsets.UTF_8));
+                    }
+                    connection.closePipeline();
+                    return null;
+                });
+            }
+            long plain = usedMemory(template) - before;
+            delete(template, "bench:plain:*");
+
+            CompactKeyValueMap map = new CompactKeyValueMap(template, "bench:compact", bucketSize);
+            before = usedMemory(template);
+            for (int start = 0; start < entries; start += 1000) {
+                Map<Long, String> batch = new HashMap<>();
+                for (long id = start; id < Math.min(entries, start + 1000); id++) {
+                    batch.put(id, value);
+                }
+                map.multiSet(batch);
+            }
+            long compact = usedMemory(template) - before;
+            String encoding = template.execute((RedisCallback<String>) connection -> {
+                ValueEncoding encoding0 = connection.keyCommands().encodingOf(map.bucketKey(0).getBytes(StandardCharsets.UTF_8));
+                return encoding0 == null ? "unknown" : encoding0.raw();
+            });
+            delete(template, "bench:compact:*");
+
+            System.out.printf("entries=%d bucketSize=%d bucketEncoding=%s%n", entries, bucketSize, encoding);
+            System.out.printf("plain keys : %d bytes, %.1f bytes/entry%n", plain, (double) plain / entries);
+            System.out.printf("compact map: %d bytes, %.1f bytes/entry%n", compact, (double) compact / entries);
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private static long usedMemory(StringRedisTemplate template) {
+        Properties info = template.execute((RedisCallback<Properties>) connection -> connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+
+    private static void delete(StringRedisTemplate template, String pattern) {
+        template.execute((RedisCallback<Object>) connection -> {
+            List<byte[]> keys = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(pattern).count(1000).build())) {
+                while (cursor.hasNext()) {
+                    keys.add(cursor.next());
+                    if (keys.size() == 1000) {
+                        connection.keyCommands().del(keys.toArray(new byte[0][]));
+                        keys.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!keys.isEmpty()) {
+                connection.keyCommands().del(keys.toArray(new byte[0][]));
+            }
+            return null;
+        });
+    }
+}
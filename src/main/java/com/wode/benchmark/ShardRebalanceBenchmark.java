@@ -0,0 +1,67 @@
+package com.wode.benchmark;
+
+import com.wode.util.ShardedRedis;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+
+/**
+ * 分片扩容: 先把键写入前 N-1 个实例, 再加入最后一个实例并迁移, 统计迁移比例(理论值 1/N)并校验所有键仍可读
+ * 用法: ShardRebalanceBenchmark host:port,host:port,... [keys] [virtualNodes]
+ * 本机可以用 redis-server --port 7001 & redis-server --port 7002 & ... 启动多个实例
+ * 会在各实例的0号库写入并删除 bench:shard:* 的键, 不要对生产库运行
+ */
+public class ShardRebalanceBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("usage: ShardRebalanceBenchmark host:port,host:port,... [keys] [virtualNodes]");
+        }
+        List<String> addresses = Arrays.asList(args[0].split(","));
+        if (addresses.size() < 2) {
+            throw new IllegalArgumentException("at least two redis instances are required");
+        }
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int virtualNodes = args.length > 2 ? Integer.parseInt(args[2]) : 160;
+        String initial = String.join(",", addresses.subList(0, addresses.size() - 1));
+        StringRedisSerializer serializer = new StringRedisSerializer();
+
+        try (ShardedRedis sharded = new ShardedRedis(initial, virtualNodes, null, 0, serializer, serializer,
+                500, 500, Executors.newFixedThreadPool(addresses.size()))) {
+            List<String> names = new ArrayList<>(keys);
+            for (int start = 0; start < keys; start += 10_000) {
+                Map<String, String> batch = new LinkedHashMap<>();
+                for (int id = start; id < Math.min(keys, start + 10_000); id++) {
+                    String key = "bench:shard:" + id;
+                    names.add(key);
+                    batch.put(key, "v" + id);
+                }
+                sharded.mutiSet(batch);
+            }
+            long begin = System.nanoTime();
+            List<String> values = sharded.mutiGet(names);
+            long readNanos = System.nanoTime() - begin;
+            System.out.printf("shards=%d keys=%d virtualNodes=%d mutiGet=%.1fms%n", addresses.size() - 1, keys,
+                    virtualNodes, readNanos / 1e6);
+            System.out.println("before: " + sharded.metrics().get("shards"));
+
+            ShardedRedis.Migration migration = sharded.addShard(addresses.get(addresses.size() - 1));
+            System.out.printf("added %s: %s (ideal %.2f%%)%n", addresses.get(addresses.size() - 1), migration,
+                    100.0 / addresses.size());
+            System.out.println("after : " + sharded.metrics().get("shards"));
+
+            values = sharded.mutiGet(names);
+            int missing = 0;
+            for (int i = 0; i < keys; i++) {
+                if (!("v" + i).equals(values.get(i))) {
+                    missing++;
+                }
+            }
+            System.out.printf("missing after migration: %d%n", missing);
+            for (int start = 0; start < keys; start += 10_000) {
+                sharded.delBatch(names.subList(start, Math.min(keys, start + 10_000)).toArray(new String[0]));
+            }
+        }
+    }
+}
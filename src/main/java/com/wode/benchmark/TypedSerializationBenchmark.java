@@ -0,0 +1,106 @@
+package com.wode.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wode.util.TypedJsonRedisSerializer;
+import com.wode.util.TypedRedisOpsFactory;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.*;
+
+/**
+ * 值的大小和(反)序列化耗时: redisTemplate 的默认类型序列化 vs TypedRedisOps 的固定类型序列化
+ * 用法: TypedSerializationBenchmark [iterations] [items]
+ * 不需要Redis, 每种方式先预热同样的次数再计时
+ */
+public class TypedSerializationBenchmark {
+
+    public static class Item {
+
+        private String sku;
+
+        private int quantity;
+
+        private double price;
+    }
+
+    public static class Order {
+
+        private long id;
+
+        private String customer;
+
+        private List<Item> items;
+
+        private Map<String, String> attributes;
+
+        private double total;
+
+        private long createdAt;
+    }
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Order order = sample(items);
+
+        // 与 RedisConfig 中 redisTemplate 的值序列化配置相同
+        Jackson2JsonRedisSerializer<Object> polymorphic = new Jackson2JsonRedisSerializer<>(Object.class);
+        ObjectMapper om = new ObjectMapper();
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        polymorphic.setObjectMapper(om);
+
+        ObjectMapper mapper = TypedRedisOpsFactory.createMapper();
+        TypedJsonRedisSerializer<Order> typed = new TypedJsonRedisSerializer<>(mapper, mapper.constructType(Order.class));
+
+        System.out.printf("iterations=%d items=%d%n", iterations, items);
+        run("default typing", polymorphic, order, iterations);
+        run("typed         ", typed, order, iterations);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void run(String name, RedisSerializer<T> serializer, Object value, int iterations) {
+        T typedValue = (T) value;
+        byte[] bytes = serializer.serialize(typedValue);
+        for (int i = 0; i < iterations; i++) {
+            sink = serializer.deserialize(serializer.serialize(typedValue));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = serializer.serialize(typedValue);
+        }
+        long write = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = serializer.deserialize(bytes);
+        }
+        long read = System.nanoTime() - start;
+        System.out.printf("%s: %d bytes, serialize %.0f ns/op, deserialize %.0f ns/op%n",
+                name, bytes.length, (double) write / iterations, (double) read / iterations);
+    }
+
+    private static Order sample(int items) {
+        Order order = new Order();
+        order.id = 1234567890L;
+        order.customer = "customer-42";
+        order.items = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            Item item = new Item();
+            item.sku = "sku-" + i;
+            item.quantity = i + 1;
+            item.price = 9.99 + i;
+            order.items.add(item);
+            order.total += item.quantity * item.price;
+        }
+        order.attributes = new HashMap<>();
+        order.attributes.put("channel", "app");
+        order.attributes.put("coupon", "SPRING");
+        order.createdAt = 1_600_000_000_000L;
+        return order;
+    }
+}
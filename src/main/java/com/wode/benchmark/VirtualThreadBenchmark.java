@@ -0,0 +1,115 @@
+package com.wode.benchmark;
+
+import com.wode.util.VirtualThreads;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.IntConsumer;
+
+/**
+ * /redis/get 的吞吐对比: 平台线程阻塞调用 / 虚拟线程阻塞调用 / Lettuce响应式
+ * 用法: VirtualThreadBenchmark [host] [port] [requests] [concurrency] [url]
+ * 不带url时直接对Redis执行GET(与 /redis/get 的Redis调用相同, 共享一个连接);
+ * 带url(如 http://127.0.0.1:8080/redis/get)时平台线程和虚拟线程改为请求接口, 响应式一项仍直接访问Redis作为上限参考
+ * 虚拟线程一项需要JDK 21, 低版本上跳过. 会写入并删除 bench:vt:* 的键
+ */
+public class VirtualThreadBenchmark {
+
+    private static final int KEYS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        String url = args.length > 4 ? args[4] : null;
+
+        RedisClient client = RedisClient.create(RedisURI.create(host, port));
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisCommands<String, String> sync = connection.sync();
+            RedisReactiveCommands<String, String> reactive = connection.reactive();
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < KEYS; i++) {
+                values.put(key(i), "value-" + i);
+            }
+            sync.mset(values);
+
+            IntConsumer call = url == null ? i -> sync.get(key(i)) : i -> httpGet(url + "?key=" + key(i));
+            // 预热一轮, 排除JIT和连接建立的影响
+            runBlocking(Thread::new, Math.min(requests, 20_000), Math.min(concurrency, 200), call);
+
+            report("platform", requests, runBlocking(Thread::new, requests, concurrency, call));
+            if (VirtualThreads.isSupported()) {
+                report("virtual", requests, runBlocking(VirtualThreads.factory("bench-vt-"), requests, concurrency, call));
+            } else {
+                System.out.printf("%-9s skipped, JDK %s has no virtual threads%n", "virtual", System.getProperty("java.version"));
+            }
+            long start = System.nanoTime();
+            Flux.range(0, requests).flatMap(i -> reactive.get(key(i)), concurrency).then().block();
+            report("reactive", requests, System.nanoTime() - start);
+
+            sync.del(values.keySet().toArray(new String[0]));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * concurrency 个线程平分请求, 返回耗时(纳秒)
+     */
+    private static long runBlocking(ThreadFactory factory, int requests, int concurrency, IntConsumer call) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(concurrency);
+        long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            int from = (int) ((long) requests * t / concurrency);
+            int to = (int) ((long) requests * (t + 1) / concurrency);
+            Thread thread = factory.newThread(() -> {
+                for (int i = from; i < to; i++) {
+                    call.accept(i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void httpGet(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) >= 0) {
+                    // 读完响应 连接才能被复用
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String key(int i) {
+        return "bench:vt:" + (i % KEYS);
+    }
+
+    private static void report(String mode, int requests, long nanos) {
+        System.out.printf("%-9s %d requests in %d ms, %.0f ops/s%n", mode, requests, nanos / 1_000_000, requests * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,82 @@
+package com.wode.bulk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 批量导入检查点
+ * 并行批次可能乱序完成, 只有连续完成的批次才会推进检查点, 中断后从检查点重新导入(写命令都是幂等的)
+ */
+class BulkCheckpoint {
+
+    private final Path file;
+
+    private final Map<Long, Integer> completed = new TreeMap<>();
+
+    private long nextSeq;
+
+    private long committed;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    BulkCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取已提交的记录数 没有检查点时返回0
+     */
+    long read() throws IOException {
+        if (file != null && Files.exists(file)) {
+            String content = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+            committed = content.isEmpty() ? 0 : Long.parseLong(content);
+        }
+        return committed;
+    }
+
+    /**
+     * 批次完成, 返回推进后的检查点位置
+     */
+    long complete(long seq, int size) throws IOException {
+        lock.lock();
+        try {
+            completed.put(seq, size);
+            long before = committed;
+            Integer done;
+            while ((done = completed.remove(nextSeq)) != null) {
+                committed += done;
+                nextSeq++;
+            }
+            if (committed != before) {
+                write();
+            }
+            return committed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 全部导入成功后删除检查点, 以免下次导入被跳过
+     */
+    void delete() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void write() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, Long.toString(committed).getBytes(StandardCharsets.US_ASCII));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,92 @@
+package com.wode.bulk;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量导入进度
+ */
+public class BulkLoadProgress {
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * 断点续传时跳过的记录数
+     */
+    private final long skipped;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private volatile long committed;
+
+    private volatile boolean finished;
+
+    public BulkLoadProgress(long skipped) {
+        this.skipped = skipped;
+        this.committed = skipped;
+    }
+
+    void submitted(int count) {
+        submitted.addAndGet(count);
+    }
+
+    long written(int count) {
+        return written.addAndGet(count);
+    }
+
+    void failed() {
+        failedBatches.incrementAndGet();
+    }
+
+    void committed(long committed) {
+        this.committed = committed;
+    }
+
+    void finish() {
+        this.finished = true;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /**
+     * 已连续写入成功的记录数(含跳过的), 即检查点位置
+     */
+    public long getCommitted() {
+        return committed;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 吞吐量(条/秒)
+     */
+    public double getThroughput() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        return written.get() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("written=%d committed=%d failedBatches=%d throughput=%.0f/s",
+                getWritten(), getCommitted(), getFailedBatches(), getThroughput());
+    }
+}
@@ -0,0 +1,251 @@
+package com.wode.bulk;
+
+import com.alibaba.fastjson.JSON;
+import com.wode.resp.RespWriter;
+import com.wode.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量导入, 用于故障切换后从数据库导出文件预热新的Redis
+ * 按批次管道写入, 多个连接并行, 同时在途的批次数有上限, 支持检查点续传
+ * 序列化方式与 RedisTemplateUtil 一致, 导入的数据可以直接通过工具类读取
+ */
+@Component
+public class BulkLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${redis.bulk.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${redis.bulk.parallelism:4}")
+    private int parallelism;
+
+    @Value("${redis.bulk.max-in-flight:8}")
+    private int maxInFlight;
+
+    @Value("${redis.bulk.progress-interval:100000}")
+    private long progressInterval;
+
+    @Value("${redis.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * 从文件导入 每行一个 BulkRecord 的JSON
+     *
+     * @param file       数据文件
+     * @param batchTtl   批次过期时间(秒) 记录自身没有ttl时使用 小于等于0为永久
+     * @param checkpoint 检查点文件 可以为null
+     * @return 导入进度
+     */
+    public BulkLoadProgress loadFile(Path file, long batchTtl, Path checkpoint) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Iterator<BulkRecord> records = reader.lines()
+                    .filter(line -> !line.trim().isEmpty())
+                    .map(line -> JSON.parseObject(line, BulkRecord.class))
+                    .iterator();
+            return load(records, batchTtl, checkpoint);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 从迭代器导入
+     *
+     * @param records    记录 按顺序读取, 续传时跳过检查点之前的记录
+     * @param batchTtl   批次过期时间(秒) 记录自身没有ttl时使用 小于等于0为永久
+     * @param checkpoint 检查点文件 可以为null
+     * @return 导入进度 有批次失败时检查点保留在最后连续成功的位置
+     */
+    public BulkLoadProgress load(Iterator<BulkRecord> records, long batchTtl, Path checkpoint) throws IOException, InterruptedException {
+        BulkCheckpoint tracker = new BulkCheckpoint(checkpoint);
+        long skip = tracker.read();
+        for (long i = 0; i < skip && records.hasNext(); i++) {
+            records.next();
+        }
+        BulkLoadProgress progress = new BulkLoadProgress(skip);
+        if (skip > 0) {
+            log.info("bulk load resumed from checkpoint {}", skip);
+        }
+
+        ExecutorService executor = VirtualThreads.newExecutor(virtualThreads, parallelism, "redis-bulk-load");
+        Semaphore window = new Semaphore(maxInFlight);
+        try {
+            long seq = 0;
+            List<BulkRecord> batch = new ArrayList<>(batchSize);
+            while (records.hasNext() && progress.getFailedBatches() == 0) {
+                batch.add(records.next());
+                if (batch.size() == batchSize) {
+                    submit(executor, window, tracker, progress, seq++, batch, batchTtl);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty() && progress.getFailedBatches() == 0) {
+                submit(executor, window, tracker, progress, seq, batch, batchTtl);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        progress.finish();
+        if (progress.getFailedBatches() == 0) {
+            tracker.delete();
+        }
+        log.info("bulk load finished: {}", progress);
+        return progress;
+    }
+
+    /**
+     * 生成RESP格式的批量写入命令, 配合 redis-cli --pipe 使用
+     *
+     * @param records  记录
+     * @param batchTtl 过期时间(秒) 记录自身没有ttl时使用 小于等于0为永久
+     * @param out      输出流
+     * @return 写出的记录数
+     */
+    public long writeResp(Iterator<BulkRecord> records, long batchTtl, OutputStream out) throws IOException {
+        RespWriter writer = new RespWriter(out);
+        long count = 0;
+        while (records.hasNext()) {
+            BulkRecord record = records.next();
+            byte[] key = rawKey(record.getKey());
+            long ttl = ttl(record, batchTtl);
+            switch (record.getType()) {
+                case HASH:
+                    List<byte[]> hashArgs = new ArrayList<>();
+                    hashArgs.add(key);
+                    rawHash(record.getFields()).forEach((field, value) -> {
+                        hashArgs.add(field);
+                        hashArgs.add(value);
+                    });
+                    writer.writeCommand("HSET", hashArgs.toArray(new byte[0][]));
+                    break;
+                case ZSET:
+                    List<byte[]> zsetArgs = new ArrayList<>();
+                    zsetArgs.add(key);
+                    for (RedisZSetCommands.Tuple tuple : rawTuples(record.getMembers())) {
+                        zsetArgs.add(Double.toString(tuple.getScore()).getBytes(StandardCharsets.US_ASCII));
+                        zsetArgs.add(tuple.getValue());
+                    }
+                    writer.writeCommand("ZADD", zsetArgs.toArray(new byte[0][]));
+                    break;
+                default:
+                    writer.writeCommand("SET", key, rawValue(record.getValue()));
+            }
+            if (ttl > 0) {
+                writer.writeCommand("EXPIRE", key, Long.toString(ttl).getBytes(StandardCharsets.US_ASCII));
+            }
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private void submit(ExecutorService executor, Semaphore window, BulkCheckpoint tracker,
+                        BulkLoadProgress progress, long seq, List<BulkRecord> batch, long batchTtl) throws InterruptedException {
+        window.acquire();
+        progress.submitted(batch.size());
+        executor.execute(() -> {
+            try {
+                writeBatch(batch, batchTtl);
+                long written = progress.written(batch.size());
+                progress.committed(tracker.complete(seq, batch.size()));
+                if (written / progressInterval != (written - batch.size()) / progressInterval) {
+                    log.info("bulk load progress: {}", progress);
+                }
+            } catch (Exception e) {
+                progress.failed();
+                log.error("bulk load batch {} failed", seq, e);
+            } finally {
+                window.release();
+            }
+        });
+    }
+
+    private void writeBatch(List<BulkRecord> batch, long batchTtl) {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            for (BulkRecord record : batch) {
+                write(connection, record, ttl(record, batchTtl));
+            }
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    private void write(RedisConnection connection, BulkRecord record, long ttl) {
+        byte[] key = rawKey(record.getKey());
+        switch (record.getType()) {
+            case HASH:
+                connection.hashCommands().hMSet(key, rawHash(record.getFields()));
+                break;
+            case ZSET:
+                connection.zSetCommands().zAdd(key, rawTuples(record.getMembers()));
+                break;
+            default:
+                Expiration expiration = ttl > 0 ? Expiration.seconds(ttl) : Expiration.persistent();
+                connection.stringCommands().set(key, rawValue(record.getValue()), expiration, RedisStringCommands.SetOption.upsert());
+                return;
+        }
+        if (ttl > 0) {
+            connection.keyCommands().expire(key, ttl);
+        }
+    }
+
+    private long ttl(BulkRecord record, long batchTtl) {
+        return record.getTtl() > 0 ? record.getTtl() : batchTtl;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<byte[], byte[]> rawHash(Map<String, Object> fields) {
+        RedisSerializer<Object> hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        Map<byte[], byte[]> raw = new LinkedHashMap<>(fields.size());
+        fields.forEach((field, value) -> raw.put(hashKeySerializer.serialize(field), hashValueSerializer.serialize(value)));
+        return raw;
+    }
+
+    private Set<RedisZSetCommands.Tuple> rawTuples(Map<String, Double> members) {
+        Set<RedisZSetCommands.Tuple> tuples = new LinkedHashSet<>(members.size());
+        members.forEach((member, score) -> tuples.add(new DefaultTuple(rawValue(member), score)));
+        return tuples;
+    }
+}
@@ -0,0 +1,41 @@
+package com.wode.bulk;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 批量导入的一条记录, 文件中每行一个JSON对象
+ * 例: {"type":"STRING","key":"user:1","value":"tom","ttl":3600}
+ */
+@Data
+public class BulkRecord {
+
+    public enum Type {
+        STRING, HASH, ZSET
+    }
+
+    private Type type = Type.STRING;
+
+    private String key;
+
+    /**
+     * STRING类型的值
+     */
+    private String value;
+
+    /**
+     * HASH类型的项
+     */
+    private Map<String, Object> fields;
+
+    /**
+     * ZSET类型的成员及分数
+     */
+    private Map<String, Double> members;
+
+    /**
+     * 时间(秒) 小于等于0时使用批次的过期时间
+     */
+    private long ttl;
+}
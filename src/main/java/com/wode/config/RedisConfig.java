@@ -3,23 +3,39 @@ package com.wode.config;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wode.util.ClientTrackingCache;
+import com.wode.util.PrefixedKeySerializer;
+import com.wode.util.RedisKeyBuilder;
+import com.wode.util.ShardedRedis;
+import com.wode.util.VirtualThreads;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.util.StringUtils;
 
 import java.net.UnknownHostException;
 
 @Configuration
 public class RedisConfig {
 
+    @Bean
+    public TenantDatabaseFactories tenantDatabaseFactories(RedisProperties redisProperties, RedisKeyBuilder keyBuilder) {
+        return new TenantDatabaseFactories(redisProperties, keyBuilder.getTenantDatabases().values());
+    }
+
     @Bean
     @ConditionalOnMissingBean(name = "redisTemplate")
     public RedisTemplate<String, Object> redisTemplate(
-            RedisConnectionFactory redisConnectionFactory)
+            RedisConnectionFactory redisConnectionFactory,
+            TenantDatabaseFactories tenantDatabaseFactories,
+            RedisKeyBuilder keyBuilder)
             throws UnknownHostException {
 
         Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<Object>(Object.class);
@@ -29,8 +45,9 @@ public class RedisConfig {
         jackson2JsonRedisSerializer.setObjectMapper(om);
 
         RedisTemplate<String, Object> template = new RedisTemplate<String, Object>();
-        template.setConnectionFactory(redisConnectionFactory);
-        template.setKeySerializer(jackson2JsonRedisSerializer);
+        template.setConnectionFactory(connectionFactory(redisConnectionFactory, tenantDatabaseFactories, keyBuilder));
+        //键和 StringRedisTemplate 保持一致, 两个工具类可以互相读取
+        template.setKeySerializer(new PrefixedKeySerializer(keyBuilder));
         template.setValueSerializer(jackson2JsonRedisSerializer);
         template.setHashKeySerializer(jackson2JsonRedisSerializer);
         template.setHashValueSerializer(jackson2JsonRedisSerializer);
@@ -41,11 +58,61 @@ public class RedisConfig {
     @Bean
     @ConditionalOnMissingBean(StringRedisTemplate.class)
     public StringRedisTemplate stringRedisTemplate(
-            RedisConnectionFactory redisConnectionFactory)
+            RedisConnectionFactory redisConnectionFactory,
+            TenantDatabaseFactories tenantDatabaseFactories,
+            RedisKeyBuilder keyBuilder)
             throws UnknownHostException {
         StringRedisTemplate template = new StringRedisTemplate();
-        template.setConnectionFactory(redisConnectionFactory);
+        template.setConnectionFactory(connectionFactory(redisConnectionFactory, tenantDatabaseFactories, keyBuilder));
+        template.setKeySerializer(new PrefixedKeySerializer(keyBuilder));
+        template.afterPropertiesSet();
         return template;
     }
-}
 
+    /**
+     * 服务端辅助的本地缓存 需要Redis 6+, 使用独立的RESP3连接开启 CLIENT TRACKING
+     */
+    @Bean(destroyMethod = "close")
+    public ClientTrackingCache clientTrackingCache(
+            RedisProperties redisProperties,
+            @Value("${redis.tracking.enabled:false}") boolean enabled,
+            @Value("${redis.tracking.mode:DEFAULT}") ClientTrackingCache.Mode mode,
+            @Value("${redis.tracking.prefixes:}") String prefixes,
+            @Value("${redis.tracking.max-entries:100000}") int maxEntries,
+            @Value("${redis.tracking.timeout-ms:1000}") long timeoutMillis) {
+        ClientTrackingCache cache = new ClientTrackingCache(redisProperties.getHost(), redisProperties.getPort(),
+                redisProperties.getPassword(), redisProperties.getDatabase(), mode,
+                StringUtils.commaDelimitedListToSet(prefixes), maxEntries, timeoutMillis);
+        if (enabled) {
+            cache.start();
+        }
+        return cache;
+    }
+
+    /**
+     * 客户端一致性哈希分片 redis.shards 为空时不连接任何实例
+     */
+    @Bean(destroyMethod = "close")
+    public ShardedRedis shardedRedis(
+            RedisProperties redisProperties,
+            @Qualifier("redisTemplate") RedisTemplate<String, Object> redisTemplate,
+            @Value("${redis.shards:}") String shards,
+            @Value("${redis.shards.virtual-nodes:160}") int virtualNodes,
+            @Value("${redis.shards.parallelism:8}") int parallelism,
+            @Value("${redis.shards.migration-batch-size:500}") int migrationBatchSize,
+            @Value("${redis.multi.chunk-size:500}") int chunkSize,
+            @Value("${redis.virtual-threads.enabled:false}") boolean virtualThreads) {
+        return new ShardedRedis(shards, virtualNodes, redisProperties.getPassword(), redisProperties.getDatabase(),
+                redisTemplate.getKeySerializer(), redisTemplate.getValueSerializer(), chunkSize, migrationBatchSize,
+                VirtualThreads.newExecutor(virtualThreads, parallelism, "redis-shard"));
+    }
+
+    private RedisConnectionFactory connectionFactory(RedisConnectionFactory redisConnectionFactory,
+                                                     TenantDatabaseFactories tenantDatabaseFactories,
+                                                     RedisKeyBuilder keyBuilder) {
+        if (keyBuilder.getMode() != RedisKeyBuilder.TenantMode.DATABASE) {
+            return redisConnectionFactory;
+        }
+        return new TenantRoutingConnectionFactory(redisConnectionFactory, tenantDatabaseFactories, keyBuilder);
+    }
+}
@@ -0,0 +1,56 @@
+package com.wode.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DATABASE 隔离模式下每个逻辑库一个连接工厂
+ * Lettuce共享连接不允许SELECT切换库, 所以每个库需要独立的连接工厂
+ * 超时和SSL与 spring.redis.* 一致
+ */
+public class TenantDatabaseFactories implements DisposableBean {
+
+    private final RedisProperties properties;
+
+    private final Map<Integer, LettuceConnectionFactory> factories = new ConcurrentHashMap<>();
+
+    public TenantDatabaseFactories(RedisProperties properties, Collection<Integer> databases) {
+        this.properties = properties;
+        databases.forEach(this::get);
+    }
+
+    public RedisConnectionFactory get(int database) {
+        return factories.computeIfAbsent(database, db -> {
+            RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(properties.getHost(), properties.getPort());
+            configuration.setDatabase(db);
+            configuration.setPassword(RedisPassword.of(properties.getPassword()));
+            LettuceClientConfiguration.LettuceClientConfigurationBuilder client = LettuceClientConfiguration.builder();
+            if (properties.getTimeout() != null) {
+                client.commandTimeout(properties.getTimeout());
+            }
+            if (properties.getLettuce().getShutdownTimeout() != null) {
+                client.shutdownTimeout(properties.getLettuce().getShutdownTimeout());
+            }
+            if (properties.isSsl()) {
+                client.useSsl();
+            }
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration, client.build());
+            factory.afterPropertiesSet();
+            return factory;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        factories.values().forEach(LettuceConnectionFactory::destroy);
+    }
+}
@@ -0,0 +1,58 @@
+package com.wode.config;
+
+import com.wode.util.RedisKeyBuilder;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+
+/**
+ * 按当前租户路由到对应逻辑库的连接工厂, 没有映射的租户使用默认连接工厂
+ */
+public class TenantRoutingConnectionFactory implements RedisConnectionFactory {
+
+    private final RedisConnectionFactory defaultFactory;
+
+    private final TenantDatabaseFactories databaseFactories;
+
+    private final RedisKeyBuilder keyBuilder;
+
+    public TenantRoutingConnectionFactory(RedisConnectionFactory defaultFactory,
+                                          TenantDatabaseFactories databaseFactories,
+                                          RedisKeyBuilder keyBuilder) {
+        this.defaultFactory = defaultFactory;
+        this.databaseFactories = databaseFactories;
+        this.keyBuilder = keyBuilder;
+    }
+
+    private RedisConnectionFactory current() {
+        Integer database = keyBuilder.currentDatabase();
+        return database == null ? defaultFactory : databaseFactories.get(database);
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return current().getConnection();
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return current().getClusterConnection();
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return defaultFactory.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return current().getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return defaultFactory.translateExceptionIfPossible(ex);
+    }
+}
@@ -0,0 +1,41 @@
+package com.wode.config;
+
+import com.wode.util.VirtualThreads;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 虚拟线程模式(redis.virtual-threads.enabled=true, 需要JDK 21)
+ * Tomcat 每个请求在一个新的虚拟线程上处理, 阻塞的Redis调用不再受 server.tomcat.max-threads 限制;
+ * Redis仍使用Lettuce共享的单个连接, 命令在连接上多路复用, 等待回复时只挂起虚拟线程
+ */
+@Configuration
+@ConditionalOnProperty(name = "redis.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+        return factory -> {
+            if (!VirtualThreads.isSupported()) {
+                log.warn("redis.virtual-threads.enabled is set but JDK {} has no virtual threads, keeping the Tomcat thread pool",
+                        System.getProperty("java.version"));
+                return;
+            }
+            factory.addConnectorCustomizers(connector -> {
+                ProtocolHandler handler = connector.getProtocolHandler();
+                if (handler instanceof AbstractProtocol) {
+                    ((AbstractProtocol<?>) handler).setExecutor(VirtualThreads.newPerTaskExecutor("http-vt-"));
+                }
+            });
+        };
+    }
+}
@@ -1,11 +1,33 @@
 package com.wode.controller;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.wode.util.AdaptiveTtlPolicy;
+import com.wode.util.ClientTrackingCache;
+import com.wode.util.RedisGuard;
+import com.wode.util.RedisKeyBuilder;
 import com.wode.util.RedisTemplateUtil;
+import com.wode.util.RedisWarmup;
+import com.wode.util.ShardedRedis;
+import com.wode.util.SlidingExpiration;
+import com.wode.util.TraceRecorder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @description:
@@ -19,6 +41,27 @@ public class Controller {
     @Resource
     private RedisTemplateUtil redisTemplateUtil;
 
+    @Resource
+    private RedisGuard redisGuard;
+
+    @Resource
+    private ClientTrackingCache clientTrackingCache;
+
+    @Resource
+    private RedisWarmup redisWarmup;
+
+    @Resource
+    private SlidingExpiration slidingExpiration;
+
+    @Resource
+    private AdaptiveTtlPolicy adaptiveTtlPolicy;
+
+    @Resource
+    private TraceRecorder traceRecorder;
+
+    @Resource
+    private ShardedRedis shardedRedis;
+
     @RequestMapping("/set")
     public String setRedis(String key) {
         boolean set = redisTemplateUtil.set(key, key + System.currentTimeMillis());
@@ -30,4 +73,126 @@ public class Controller {
         String s = redisTemplateUtil.get(key);
         return s;
     }
+
+    /**
+     * 原样输出缓存的字节 不转成String
+     */
+    @RequestMapping("/raw/get")
+    public void getRaw(String key, HttpServletResponse response) throws IOException {
+        byte[] value = redisTemplateUtil.getBytes(key);
+        if (value == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLength(value.length);
+        response.getOutputStream().write(value);
+    }
+
+    @RequestMapping("/raw/set")
+    public String setRaw(String key, @RequestBody byte[] value, @RequestParam(defaultValue = "0") long time) {
+        redisTemplateUtil.setBytes(key, value, time);
+        return "true";
+    }
+
+    /**
+     * 批量获取 请求体为键的JSON数组
+     *
+     * @return 键 -> 值, 不存在的值为null
+     */
+    @RequestMapping("/mget")
+    public Map<String, String> mget(@RequestBody List<String> keys) {
+        List<String> values = redisTemplateUtil.mutiGet(keys);
+        Map<String, String> result = new LinkedHashMap<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            result.put(keys.get(i), values.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 批量保存 请求体为 键 -> 值 的JSON对象
+     */
+    @RequestMapping("/mset")
+    public String mset(@RequestBody Map<String, String> values) {
+        redisTemplateUtil.mutiSet(values);
+        return "true";
+    }
+
+    /**
+     * 批量获取 流式输出NDJSON, 每行 {"key":键,"value":值}
+     * 每取回一块(一个MGET)就写出并flush, 响应不在内存中拼装, 首字节不用等全部取完
+     */
+    @RequestMapping("/mget/stream")
+    public ResponseEntity<StreamingResponseBody> mgetStream(@RequestBody List<String> keys) {
+        // 在MVC的异步线程中输出, 需要带上当前租户
+        String tenant = RedisKeyBuilder.currentTenant();
+        StreamingResponseBody body = out -> {
+            RedisKeyBuilder.setTenant(tenant);
+            try {
+                redisTemplateUtil.mutiGet(keys, (chunkKeys, chunkValues) -> {
+                    try {
+                        for (int i = 0; i < chunkKeys.size(); i++) {
+                            Map<String, String> line = new LinkedHashMap<>(4);
+                            line.put("key", chunkKeys.get(i));
+                            line.put("value", chunkValues.get(i));
+                            out.write(JSON.toJSONBytes(line, SerializerFeature.WriteMapNullValue));
+                            out.write('\n');
+                        }
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                RedisKeyBuilder.clearTenant();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    /**
+     * 就绪检查 启动预热完成前返回503
+     */
+    @RequestMapping("/ready")
+    public ResponseEntity<Map<String, Object>> ready() {
+        return ResponseEntity.status(redisWarmup.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(redisWarmup.status());
+    }
+
+    @RequestMapping("/guard")
+    public Map<String, Object> guard() {
+        return redisGuard.metrics();
+    }
+
+    @RequestMapping("/tx")
+    public Map<String, Object> transactions() {
+        return redisTemplateUtil.transactionMetrics();
+    }
+
+    @RequestMapping("/sliding")
+    public Map<String, Object> sliding() {
+        return slidingExpiration.metrics();
+    }
+
+    @RequestMapping("/adaptive-ttl")
+    public Map<String, Object> adaptiveTtl() {
+        return adaptiveTtlPolicy.report();
+    }
+
+    @RequestMapping("/trace")
+    public Map<String, Object> trace() {
+        return traceRecorder.metrics();
+    }
+
+    @RequestMapping("/shards")
+    public Map<String, Object> shards() {
+        return shardedRedis.metrics();
+    }
+
+    @RequestMapping("/near-cache")
+    public Map<String, Object> nearCache() {
+        return clientTrackingCache.stats();
+    }
 }
@@ -0,0 +1,233 @@
+package com.wode.loadtest;
+
+import com.wode.Application;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * /redis/set 和 /redis/get 的端到端压测
+ * 在进程内启动 MiniRedisServer 和应用(随机端口), 全部走本机回环, 不需要外部Redis和网络
+ * 用法: HttpLoadTest [--load.xxx=值 ...] [应用配置 ...]
+ * --load.keys=10000             键数量, 压测前先通过 /redis/set 写入全部键
+ * --load.distribution=uniform   键分布 uniform/zipf
+ * --load.zipf-exponent=0.99     zipf指数
+ * --load.concurrency=64         压测线程数
+ * --load.rate=0                 目标请求数/秒 大于0为开环(按计划时间发送, 延迟修正协调遗漏), 0为闭环(尽快发送)
+ * --load.duration=30            压测时长(秒)
+ * --load.warmup=5               预热时长(秒) 不计入结果
+ * --load.set-ratio=0.1          写请求比例
+ * --load.seed=42                随机种子 相同参数下请求序列可复现
+ * 其余参数原样传给应用, 如 --redis.batch.enabled=true; 传了 --spring.redis.port 时使用该Redis而不启动替身
+ */
+public class HttpLoadTest {
+
+    private final String baseUrl;
+
+    private final KeyDistribution distribution;
+
+    private final int keys;
+
+    private final int concurrency;
+
+    private final double rate;
+
+    private final double setRatio;
+
+    private final long seed;
+
+    private HttpLoadTest(String baseUrl, Map<String, String> options) {
+        this.baseUrl = baseUrl;
+        this.keys = Integer.parseInt(options.getOrDefault("keys", "10000"));
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        this.setRatio = Double.parseDouble(options.getOrDefault("set-ratio", "0.1"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        this.distribution = KeyDistribution.parse(options.getOrDefault("distribution", "uniform"), keys,
+                Double.parseDouble(options.getOrDefault("zipf-exponent", "0.99")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--load.")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring("--load.".length(), eq), arg.substring(eq + 1));
+            } else {
+                appArgs.add(arg);
+            }
+        }
+        boolean externalRedis = appArgs.stream().anyMatch(arg -> arg.startsWith("--spring.redis.port="));
+        if (appArgs.stream().noneMatch(arg -> arg.startsWith("--server.port="))) {
+            appArgs.add("--server.port=0");
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        // HttpURLConnection 默认每个地址只保留5个空闲连接, 不调大会不停新建连接
+        System.setProperty("http.maxConnections", Integer.toString(concurrency));
+
+        MiniRedisServer redis = null;
+        if (!externalRedis) {
+            redis = new MiniRedisServer(0);
+            appArgs.add("--spring.redis.host=127.0.0.1");
+            appArgs.add("--spring.redis.port=" + redis.getPort());
+        }
+        ConfigurableApplicationContext context = SpringApplication.run(Application.class, appArgs.toArray(new String[0]));
+        try {
+            int port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+            HttpLoadTest test = new HttpLoadTest("http://127.0.0.1:" + port + "/redis", options);
+            long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "5")));
+            long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+
+            test.preload();
+            test.run(warmup, test.seed + 1_000_000);
+            Result result = test.run(duration, test.seed);
+            result.print(test);
+        } finally {
+            context.close();
+            if (redis != null) {
+                redis.close();
+            }
+        }
+    }
+
+    /**
+     * 闭环写入全部键 保证读请求都能命中
+     */
+    private void preload() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < concurrency; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                for (int key = worker; key < keys; key += concurrency) {
+                    request("set", key);
+                }
+            }, "load-preload-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private Result run(long durationNanos, long runSeed) throws InterruptedException {
+        Result result = new Result();
+        AtomicLong sequence = new AtomicLong();
+        long interval = rate > 0 ? (long) (1e9 / rate) : 0;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        long end = start + durationNanos;
+        AtomicLong lastDone = new AtomicLong(start);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < concurrency; t++) {
+            LatencyRecorder corrected = new LatencyRecorder();
+            LatencyRecorder service = new LatencyRecorder();
+            result.corrected.add(corrected);
+            result.service.add(service);
+            SplittableRandom random = new SplittableRandom(runSeed + t);
+            Thread thread = new Thread(() -> {
+                while (true) {
+                    long intended;
+                    if (interval > 0) {
+                        intended = start + sequence.getAndIncrement() * interval;
+                        if (intended >= end) {
+                            break;
+                        }
+                        long wait;
+                        while ((wait = intended - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else {
+                        intended = System.nanoTime();
+                        if (intended >= end) {
+                            break;
+                        }
+                    }
+                    int key = distribution.next(random);
+                    boolean write = random.nextDouble() < setRatio;
+                    long begin = System.nanoTime();
+                    boolean ok = request(write ? "set" : "get", key);
+                    long done = System.nanoTime();
+                    corrected.record(done - intended);
+                    service.record(done - begin);
+                    if (!ok) {
+                        result.errors.increment();
+                    }
+                    lastDone.accumulateAndGet(done, Math::max);
+                }
+            }, "load-worker-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        result.elapsedNanos = lastDone.get() - start;
+        return result;
+    }
+
+    private boolean request(String endpoint, int key) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(baseUrl + "/" + endpoint + "?key=lt:" + key).openConnection();
+            int status = connection.getResponseCode();
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            return status == 200;
+        } catch (IOException e) {
+            if (connection != null) {
+                try {
+                    drain(connection.getErrorStream());
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 读完响应 连接才能放回keep-alive缓存复用
+     */
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[4096];
+            while (stream.read(buffer) >= 0) {
+                // 丢弃
+            }
+        }
+    }
+
+    private static class Result {
+
+        final List<LatencyRecorder> corrected = new ArrayList<>();
+
+        final List<LatencyRecorder> service = new ArrayList<>();
+
+        final LongAdder errors = new LongAdder();
+
+        long elapsedNanos;
+
+        void print(HttpLoadTest test) {
+            LatencyRecorder correctedAll = LatencyRecorder.merge(corrected);
+            LatencyRecorder serviceAll = LatencyRecorder.merge(service);
+            int requests = correctedAll.size();
+            System.out.printf("keys=%d concurrency=%d rate=%s set-ratio=%.2f%n", test.keys, test.concurrency,
+                    test.rate > 0 ? String.format("%.0f/s (open loop)", test.rate) : "max (closed loop)", test.setRatio);
+            System.out.printf("requests=%d errors=%d elapsed=%dms throughput=%.0f req/s%n", requests, errors.sum(),
+                    elapsedNanos / 1_000_000, requests * 1e9 / Math.max(1, elapsedNanos));
+            System.out.println("latency (from intended start): " + correctedAll.summary());
+            System.out.println("service time                 : " + serviceAll.summary());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.wode.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 压测的键分布 返回 [0, keys) 的键序号
+ */
+public abstract class KeyDistribution {
+
+    protected final int keys;
+
+    protected KeyDistribution(int keys) {
+        this.keys = keys;
+    }
+
+    public abstract int next(SplittableRandom random);
+
+    public static KeyDistribution uniform(int keys) {
+        return new KeyDistribution(keys) {
+            @Override
+            public int next(SplittableRandom random) {
+                return random.nextInt(keys);
+            }
+        };
+    }
+
+    /**
+     * Zipf分布 序号越小越热, 第i个键的概率正比于 1/(i+1)^exponent
+     *
+     * @param keys     键数量
+     * @param exponent 指数 越大越集中, 常用0.99
+     */
+    public static KeyDistribution zipf(int keys, double exponent) {
+        double[] cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= sum;
+        }
+        return new KeyDistribution(keys) {
+            @Override
+            public int next(SplittableRandom random) {
+                int index = Arrays.binarySearch(cdf, random.nextDouble());
+                return Math.min(keys - 1, index >= 0 ? index : -index - 1);
+            }
+        };
+    }
+
+    public static KeyDistribution parse(String name, int keys, double zipfExponent) {
+        switch (name.toLowerCase()) {
+            case "uniform":
+                return uniform(keys);
+            case "zipf":
+            case "zipfian":
+                return zipf(keys, zipfExponent);
+            default:
+                throw new IllegalArgumentException("unknown key distribution " + name);
+        }
+    }
+}
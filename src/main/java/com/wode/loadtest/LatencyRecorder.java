@@ -0,0 +1,59 @@
+package com.wode.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * 延迟记录 每个压测线程一个, 结束后合并计算分位数
+ * 开环压测时从计划发送时间开始计时(修正协调遗漏): 服务变慢导致请求排队的时间也算进延迟, 不会因为少发请求而低估尾延迟
+ */
+public class LatencyRecorder {
+
+    private long[] values = new long[1024];
+
+    private int size;
+
+    public void record(long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public static LatencyRecorder merge(Iterable<LatencyRecorder> recorders) {
+        LatencyRecorder merged = new LatencyRecorder();
+        for (LatencyRecorder recorder : recorders) {
+            for (int i = 0; i < recorder.size; i++) {
+                merged.record(recorder.values[i]);
+            }
+        }
+        Arrays.sort(merged.values, 0, merged.size);
+        return merged;
+    }
+
+    /**
+     * 分位数 只能在 merge 的结果上调用
+     *
+     * @param percentile 0-100
+     * @return 延迟(纳秒) 没有记录时返回0
+     */
+    public long percentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return values[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    public String summary() {
+        return String.format("p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                millis(percentile(50)), millis(percentile(90)), millis(percentile(99)), millis(percentile(99.9)), millis(percentile(100)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,1055 @@
+package com.wode.loadtest;
+
+import com.wode.resp.RespReader;
+import com.wode.resp.RespWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内的Redis替身 只监听127.0.0.1, 用于压测和回放, 不依赖外部Redis
+ * 支持字符串相关的常用命令(GET/GETEX/SET/MGET/MSET/DEL/EXPIRE/INCRBY等)、带项过期时间的hash(HSET/HGET/HDEL/HEXPIRE/HTTL)、
+ * 集合(SADD/SREM/SCARD/SINTERCARD)、位置(GEOADD/GEOSEARCH/ZREM, 坐标按原值保存, 不做geohash量化)
+ * 和 WATCH/MULTI/EXEC 事务, 不支持的命令返回错误;
+ * 每个连接一个线程, 按顺序处理管道中的命令, 输入读空时才刷出回复
+ * EXEC 持有写锁执行, 其他命令持有读锁, 事务对其他连接是原子的
+ */
+public class MiniRedisServer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MiniRedisServer.class);
+
+    private final ServerSocket serverSocket;
+
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> disabled = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Thread acceptor;
+
+    private volatile boolean closed;
+
+    /**
+     * @param port 端口 0为随机
+     */
+    public MiniRedisServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::acceptLoop, "mini-redis-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * 模拟低版本的Redis 这些命令之后返回 unknown command
+     */
+    public void disable(String... commands) {
+        for (String command : commands) {
+            disabled.add(command.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "mini-redis-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("mini redis accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            RespReader reader = new RespReader(in);
+            RespWriter writer = new RespWriter(new BufferedOutputStream(s.getOutputStream()));
+            Session session = new Session();
+            while (!closed) {
+                Object request = reader.read();
+                if (!(request instanceof List)) {
+                    writer.writeError("ERR protocol error");
+                } else if (!dispatch(toArgs((List<?>) request), writer, session)) {
+                    writer.flush();
+                    return;
+                }
+                if (in.available() == 0) {
+                    writer.flush();
+                }
+            }
+        } catch (EOFException ignored) {
+            // 客户端断开
+        } catch (IOException e) {
+            if (!closed) {
+                log.debug("mini redis connection failed", e);
+            }
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private boolean dispatch(byte[][] args, RespWriter writer, Session session) throws IOException {
+        boolean exec = args.length > 0 && "EXEC".equalsIgnoreCase(new String(args[0], StandardCharsets.US_ASCII));
+        Lock held = exec ? lock.writeLock() : lock.readLock();
+        held.lock();
+        try {
+            return execute(args, writer, session);
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * @return 是否继续处理该连接 QUIT 时返回false
+     */
+    private boolean execute(byte[][] args, RespWriter writer, Session session) throws IOException {
+        if (args.length == 0) {
+            writer.writeError("ERR empty command");
+            return true;
+        }
+        String command = new String(args[0], StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+        if (session.queued != null && !TX_COMMANDS.contains(command)) {
+            session.queued.add(args);
+            writer.writeSimple("QUEUED");
+            return true;
+        }
+        if (disabled.contains(command)) {
+            writer.writeError("ERR unknown command '" + command + "'");
+            return true;
+        }
+        try {
+            switch (command) {
+                case "MULTI":
+                    if (session.queued != null) {
+                        writer.writeError("ERR MULTI calls can not be nested");
+                    } else {
+                        session.queued = new ArrayList<>();
+                        writer.writeSimple("OK");
+                    }
+                    break;
+                case "WATCH":
+                    if (session.queued != null) {
+                        writer.writeError("ERR WATCH inside MULTI is not allowed");
+                        break;
+                    }
+                    if (session.watched == null) {
+                        session.watched = new HashMap<>();
+                    }
+                    for (int i = 1; i < args.length; i++) {
+                        String key = key(args[i]);
+                        if (!session.watched.containsKey(key)) {
+                            session.watched.put(key, live(key));
+                        }
+                    }
+                    writer.writeSimple("OK");
+                    break;
+                case "UNWATCH":
+                    session.watched = null;
+                    writer.writeSimple("OK");
+                    break;
+                case "DISCARD":
+                    if (session.queued == null) {
+                        writer.writeError("ERR DISCARD without MULTI");
+                    } else {
+                        session.queued = null;
+                        session.watched = null;
+                        writer.writeSimple("OK");
+                    }
+                    break;
+                case "EXEC":
+                    exec(writer, session);
+                    break;
+                case "PING":
+                    if (args.length > 1) {
+                        writer.writeBulk(args[1]);
+                    } else {
+                        writer.writeSimple("PONG");
+                    }
+                    break;
+                case "ECHO":
+                    writer.writeBulk(args[1]);
+                    break;
+                case "SELECT":
+                case "AUTH":
+                case "CLIENT":
+                    writer.writeSimple("OK");
+                    break;
+                case "QUIT":
+                    writer.writeSimple("OK");
+                    return false;
+                case "GET":
+                    writer.writeBulk(value(args[1]));
+                    break;
+                case "GETEX":
+                    getex(args, writer);
+                    break;
+                case "SET":
+                    set(args, writer);
+                    break;
+                case "SETEX":
+                    data.put(key(args[1]), new Entry(args[3], deadline(parseLong(args[2]) * 1000)));
+                    writer.writeSimple("OK");
+                    break;
+                case "PSETEX":
+                    data.put(key(args[1]), new Entry(args[3], deadline(parseLong(args[2]))));
+                    writer.writeSimple("OK");
+                    break;
+                case "SETNX":
+                    live(key(args[1]));
+                    writer.writeInteger(data.putIfAbsent(key(args[1]), new Entry(args[2], 0)) == null ? 1 : 0);
+                    break;
+                case "MGET":
+                    writer.writeArrayHeader(args.length - 1);
+                    for (int i = 1; i < args.length; i++) {
+                        // 与Redis一致 非字符串的键返回nil
+                        Entry entry = live(key(args[i]));
+                        writer.writeBulk(entry != null && entry.value instanceof byte[] ? (byte[]) entry.value : null);
+                    }
+                    break;
+                case "MSET":
+                    for (int i = 1; i + 1 < args.length; i += 2) {
+                        data.put(key(args[i]), new Entry(args[i + 1], 0));
+                    }
+                    writer.writeSimple("OK");
+                    break;
+                case "DEL":
+                case "UNLINK":
+                    long deleted = 0;
+                    for (int i = 1; i < args.length; i++) {
+                        if (live(key(args[i])) != null && data.remove(key(args[i])) != null) {
+                            deleted++;
+                        }
+                    }
+                    writer.writeInteger(deleted);
+                    break;
+                case "EXISTS":
+                    long exists = 0;
+                    for (int i = 1; i < args.length; i++) {
+                        if (live(key(args[i])) != null) {
+                            exists++;
+                        }
+                    }
+                    writer.writeInteger(exists);
+                    break;
+                case "EXPIRE":
+                    writer.writeInteger(expire(args[1], parseLong(args[2]) * 1000));
+                    break;
+                case "PEXPIRE":
+                    writer.writeInteger(expire(args[1], parseLong(args[2])));
+                    break;
+                case "TTL":
+                    long pttl = pttl(args[1]);
+                    writer.writeInteger(pttl < 0 ? pttl : (pttl + 999) / 1000);
+                    break;
+                case "PTTL":
+                    writer.writeInteger(pttl(args[1]));
+                    break;
+                case "INCR":
+                    writer.writeInteger(incrBy(args[1], 1));
+                    break;
+                case "INCRBY":
+                    writer.writeInteger(incrBy(args[1], parseLong(args[2])));
+                    break;
+                case "DECR":
+                    writer.writeInteger(incrBy(args[1], -1));
+                    break;
+                case "DECRBY":
+                    writer.writeInteger(incrBy(args[1], -parseLong(args[2])));
+                    break;
+                case "DBSIZE":
+                    writer.writeInteger(data.size());
+                    break;
+                case "FLUSHDB":
+                case "FLUSHALL":
+                    data.clear();
+                    writer.writeSimple("OK");
+                    break;
+                case "HSET":
+                    writer.writeInteger(hset(args));
+                    break;
+                case "HGET":
+                    Field field = fields(key(args[1])).get(key(args[2]));
+                    writer.writeBulk(field == null ? null : field.value);
+                    break;
+                case "HDEL":
+                    writer.writeInteger(hdel(args));
+                    break;
+                case "HEXPIRE":
+                    hexpire(args, writer);
+                    break;
+                case "HTTL":
+                    httl(args, writer);
+                    break;
+                case "SADD":
+                    writer.writeInteger(sadd(args));
+                    break;
+                case "SREM":
+                    writer.writeInteger(srem(args));
+                    break;
+                case "SCARD":
+                    writer.writeInteger(members(key(args[1])).size());
+                    break;
+                case "SINTERCARD":
+                    sintercard(args, writer);
+                    break;
+                case "GEOADD":
+                    writer.writeInteger(geoadd(args));
+                    break;
+                case "GEOSEARCH":
+                    geosearch(args, writer);
+                    break;
+                case "ZREM":
+                    writer.writeInteger(zrem(args));
+                    break;
+                case "INFO":
+                    writer.writeBulk(("# Server\r\nredis_version:6.0.0-mini\r\n# Keyspace\r\ndb0:keys=" + data.size() + "\r\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    break;
+                default:
+                    writer.writeError("ERR unknown command '" + command + "'");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            writer.writeError("ERR wrong number of arguments for '" + command + "' command");
+        } catch (NumberFormatException e) {
+            writer.writeError("ERR value is not an integer or out of range");
+        } catch (WrongTypeException e) {
+            writer.writeError("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return true;
+    }
+
+    /**
+     * 监视的键都没有变化(条目还是WATCH时的同一个对象)时依次执行排队的命令, 否则返回空数组
+     * 每次写入都会换成新的条目, 写入相同的值也算变化, 与Redis一致
+     */
+    private void exec(RespWriter writer, Session session) throws IOException {
+        if (session.queued == null) {
+            writer.writeError("ERR EXEC without MULTI");
+            return;
+        }
+        List<byte[][]> queued = session.queued;
+        Map<String, Entry> watched = session.watched;
+        session.queued = null;
+        session.watched = null;
+        if (watched != null) {
+            for (Map.Entry<String, Entry> entry : watched.entrySet()) {
+                if (live(entry.getKey()) != entry.getValue()) {
+                    writer.writeArrayHeader(-1);
+                    return;
+                }
+            }
+        }
+        writer.writeArrayHeader(queued.size());
+        for (byte[][] args : queued) {
+            execute(args, writer, session);
+        }
+    }
+
+    /**
+     * SET key value [EX seconds|PX milliseconds] [NX|XX]
+     */
+    private void set(byte[][] args, RespWriter writer) throws IOException {
+        long ttl = 0;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < args.length; i++) {
+            String option = new String(args[i], StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            switch (option) {
+                case "EX":
+                    ttl = parseLong(args[++i]) * 1000;
+                    break;
+                case "PX":
+                    ttl = parseLong(args[++i]);
+                    break;
+                case "NX":
+                    nx = true;
+                    break;
+                case "XX":
+                    xx = true;
+                    break;
+                default:
+                    writer.writeError("ERR syntax error");
+                    return;
+            }
+        }
+        String key = key(args[1]);
+        Entry entry = new Entry(args[2], deadline(ttl));
+        boolean written;
+        if (nx) {
+            live(key);
+            written = data.putIfAbsent(key, entry) == null;
+        } else if (xx) {
+            written = live(key) != null && data.replace(key, entry) != null;
+        } else {
+            data.put(key, entry);
+            written = true;
+        }
+        if (written) {
+            writer.writeSimple("OK");
+        } else {
+            writer.writeBulk(null);
+        }
+    }
+
+    /**
+     * GETEX key [EX seconds|PX milliseconds|EXAT timestamp|PXAT timestamp|PERSIST]
+     */
+    private void getex(byte[][] args, RespWriter writer) throws IOException {
+        long expireAt = -1;
+        if (args.length > 2) {
+            String option = new String(args[2], StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            switch (option) {
+                case "EX":
+                    expireAt = deadline(parseLong(args[3]) * 1000);
+                    break;
+                case "PX":
+                    expireAt = deadline(parseLong(args[3]));
+                    break;
+                case "EXAT":
+                    expireAt = parseLong(args[3]) * 1000;
+                    break;
+                case "PXAT":
+                    expireAt = parseLong(args[3]);
+                    break;
+                case "PERSIST":
+                    expireAt = 0;
+                    break;
+                default:
+                    writer.writeError("ERR syntax error");
+                    return;
+            }
+        }
+        String key = key(args[1]);
+        Entry entry = live(key);
+        byte[] value = string(entry);
+        if (entry != null && expireAt >= 0) {
+            data.replace(key, entry, new Entry(entry.value, expireAt));
+        }
+        writer.writeBulk(value);
+    }
+
+    private long expire(byte[] rawKey, long millis) {
+        String key = key(rawKey);
+        Entry entry = live(key);
+        if (entry == null) {
+            return 0;
+        }
+        data.replace(key, entry, new Entry(entry.value, deadline(millis)));
+        return 1;
+    }
+
+    private long pttl(byte[] rawKey) {
+        Entry entry = live(key(rawKey));
+        if (entry == null) {
+            return -2;
+        }
+        return entry.expireAt == 0 ? -1 : Math.max(0, entry.expireAt - System.currentTimeMillis());
+    }
+
+    private long incrBy(byte[] rawKey, long delta) {
+        String key = key(rawKey);
+        long[] result = new long[1];
+        data.compute(key, (k, entry) -> {
+            boolean alive = entry != null && !entry.isExpired();
+            long current = alive ? parseLong(string(entry)) : 0;
+            result[0] = current + delta;
+            return new Entry(Long.toString(result[0]).getBytes(StandardCharsets.US_ASCII), alive ? entry.expireAt : 0);
+        });
+        return result[0];
+    }
+
+    private byte[] value(byte[] rawKey) {
+        return string(live(key(rawKey)));
+    }
+
+    private static byte[] string(Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        if (!(entry.value instanceof byte[])) {
+            throw new WrongTypeException();
+        }
+        return (byte[]) entry.value;
+    }
+
+    /**
+     * 类型匹配的值 键不存在时返回null, 类型不符时报 WRONGTYPE
+     */
+    private <T> T typed(String key, Class<T> type) {
+        Entry entry = live(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!type.isInstance(entry.value)) {
+            throw new WrongTypeException();
+        }
+        return type.cast(entry.value);
+    }
+
+    /**
+     * 未过期的项 键不存在时为空
+     */
+    private Map<String, Field> fields(String key) {
+        Hash hash = typed(key, Hash.class);
+        if (hash == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Field> live = new LinkedHashMap<>();
+        hash.fields.forEach((name, field) -> {
+            if (!field.isExpired()) {
+                live.put(name, field);
+            }
+        });
+        return live;
+    }
+
+    /**
+     * 写回hash 每次写入换成新的条目(WATCH按条目判断变化), 没有项时删除键
+     */
+    private void putFields(String key, Map<String, Field> fields) {
+        Entry old = live(key);
+        if (fields.isEmpty()) {
+            data.remove(key);
+        } else {
+            data.put(key, new Entry(new Hash(fields), old == null ? 0 : old.expireAt));
+        }
+    }
+
+    /**
+     * HSET key field value [field value ...] 写入的项清除其过期时间
+     */
+    private long hset(byte[][] args) {
+        if (args.length < 4 || args.length % 2 != 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        String key = key(args[1]);
+        Map<String, Field> fields = new LinkedHashMap<>(fields(key));
+        long added = 0;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if (fields.put(key(args[i]), new Field(args[i + 1], 0)) == null) {
+                added++;
+            }
+        }
+        putFields(key, fields);
+        return added;
+    }
+
+    private long hdel(byte[][] args) {
+        String key = key(args[1]);
+        Map<String, Field> fields = new LinkedHashMap<>(fields(key));
+        long removed = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (fields.remove(key(args[i])) != null) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            putFields(key, fields);
+        }
+        return removed;
+    }
+
+    /**
+     * HEXPIRE key seconds FIELDS numfields field [field ...]
+     * 每项回复 -2项不存在 2时间为0已删除 1已设置
+     */
+    private void hexpire(byte[][] args, RespWriter writer) throws IOException {
+        String key = key(args[1]);
+        long seconds = parseLong(args[2]);
+        List<String> names = fieldNames(args, 3);
+        if (names == null) {
+            writer.writeError("ERR syntax error");
+            return;
+        }
+        Map<String, Field> fields = new LinkedHashMap<>(fields(key));
+        writer.writeArrayHeader(names.size());
+        for (String name : names) {
+            Field field = fields.get(name);
+            if (field == null) {
+                writer.writeInteger(-2);
+            } else if (seconds <= 0) {
+                fields.remove(name);
+                writer.writeInteger(2);
+            } else {
+                fields.put(name, new Field(field.value, deadline(seconds * 1000)));
+                writer.writeInteger(1);
+            }
+        }
+        if (typed(key, Hash.class) != null) {
+            putFields(key, fields);
+        }
+    }
+
+    /**
+     * HTTL key FIELDS numfields field [field ...]
+     * 每项回复 -2项不存在 -1永久 其余为剩余秒数
+     */
+    private void httl(byte[][] args, RespWriter writer) throws IOException {
+        List<String> names = fieldNames(args, 2);
+        if (names == null) {
+            writer.writeError("ERR syntax error");
+            return;
+        }
+        Map<String, Field> fields = fields(key(args[1]));
+        writer.writeArrayHeader(names.size());
+        for (String name : names) {
+            Field field = fields.get(name);
+            if (field == null) {
+                writer.writeInteger(-2);
+            } else if (field.expireAt == 0) {
+                writer.writeInteger(-1);
+            } else {
+                writer.writeInteger((Math.max(0, field.expireAt - System.currentTimeMillis()) + 999) / 1000);
+            }
+        }
+    }
+
+    /**
+     * 解析 FIELDS numfields field... 格式不对时返回null
+     */
+    private static List<String> fieldNames(byte[][] args, int from) {
+        if (args.length < from + 2 || !"FIELDS".equalsIgnoreCase(new String(args[from], StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        int count = (int) parseLong(args[from + 1]);
+        if (count <= 0 || args.length != from + 2 + count) {
+            return null;
+        }
+        List<String> names = new ArrayList<>(count);
+        for (int i = from + 2; i < args.length; i++) {
+            names.add(key(args[i]));
+        }
+        return names;
+    }
+
+    /**
+     * 集合的成员 键不存在时为空
+     */
+    private Set<String> members(String key) {
+        Members members = typed(key, Members.class);
+        return members == null ? Collections.emptySet() : members.values;
+    }
+
+    /**
+     * 写回集合 每次写入换成新的条目, 没有成员时删除键
+     */
+    private void putMembers(String key, Set<String> values) {
+        Entry old = live(key);
+        if (values.isEmpty()) {
+            data.remove(key);
+        } else {
+            data.put(key, new Entry(new Members(values), old == null ? 0 : old.expireAt));
+        }
+    }
+
+    private long sadd(byte[][] args) {
+        if (args.length < 3) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        String key = key(args[1]);
+        Set<String> values = new LinkedHashSet<>(members(key));
+        long added = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (values.add(key(args[i]))) {
+                added++;
+            }
+        }
+        putMembers(key, values);
+        return added;
+    }
+
+    private long srem(byte[][] args) {
+        String key = key(args[1]);
+        Set<String> values = new LinkedHashSet<>(members(key));
+        long removed = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (values.remove(key(args[i]))) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            putMembers(key, values);
+        }
+        return removed;
+    }
+
+    /**
+     * SINTERCARD numkeys key [key ...] [LIMIT limit] limit为0不限
+     */
+    private void sintercard(byte[][] args, RespWriter writer) throws IOException {
+        int numKeys = (int) parseLong(args[1]);
+        if (numKeys <= 0 || args.length < 2 + numKeys) {
+            writer.writeError("ERR numkeys should be greater than 0");
+            return;
+        }
+        long limit = 0;
+        if (args.length == 4 + numKeys && "LIMIT".equalsIgnoreCase(new String(args[2 + numKeys], StandardCharsets.US_ASCII))) {
+            limit = parseLong(args[3 + numKeys]);
+        } else if (args.length != 2 + numKeys) {
+            writer.writeError("ERR syntax error");
+            return;
+        }
+        List<Set<String>> sets = new ArrayList<>(numKeys);
+        for (int i = 2; i < 2 + numKeys; i++) {
+            sets.add(members(key(args[i])));
+        }
+        long count = 0;
+        for (String value : sets.get(0)) {
+            if (sets.stream().allMatch(set -> set.contains(value)) && ++count == limit) {
+                break;
+            }
+        }
+        writer.writeInteger(count);
+    }
+
+    /**
+     * GEOADD key longitude latitude member [longitude latitude member ...]
+     */
+    private long geoadd(byte[][] args) {
+        if (args.length < 5 || (args.length - 2) % 3 != 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        String key = key(args[1]);
+        Geo old = typed(key, Geo.class);
+        Map<String, double[]> members = old == null ? new LinkedHashMap<>() : new LinkedHashMap<>(old.members);
+        long added = 0;
+        for (int i = 2; i + 2 < args.length; i += 3) {
+            double[] point = {parseDouble(args[i]), parseDouble(args[i + 1])};
+            if (members.put(key(args[i + 2]), point) == null) {
+                added++;
+            }
+        }
+        Entry entry = live(key);
+        data.put(key, new Entry(new Geo(members), entry == null ? 0 : entry.expireAt));
+        return added;
+    }
+
+    /**
+     * ZREM key member [member ...] 只支持GEOADD写入的键
+     */
+    private long zrem(byte[][] args) {
+        String key = key(args[1]);
+        Geo old = typed(key, Geo.class);
+        if (old == null) {
+            return 0;
+        }
+        Map<String, double[]> members = new LinkedHashMap<>(old.members);
+        long removed = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (members.remove(key(args[i])) != null) {
+                removed++;
+            }
+        }
+        if (members.isEmpty()) {
+            data.remove(key);
+        } else if (removed > 0) {
+            data.put(key, new Entry(new Geo(members), live(key).expireAt));
+        }
+        return removed;
+    }
+
+    /**
+     * GEOSEARCH key FROMLONLAT longitude latitude BYRADIUS radius unit|BYBOX width height unit
+     * [ASC|DESC] [COUNT count [ANY]] [WITHCOORD] [WITHDIST]
+     * 距离按Redis的公式计算, 单位支持 m 和 km
+     */
+    private void geosearch(byte[][] args, RespWriter writer) throws IOException {
+        double longitude = 0;
+        double latitude = 0;
+        double radius = -1;
+        double width = -1;
+        double height = -1;
+        double unit = 1;
+        boolean from = false;
+        boolean desc = false;
+        long count = 0;
+        boolean withDist = false;
+        boolean withCoord = false;
+        for (int i = 2; i < args.length; i++) {
+            String option = new String(args[i], StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            switch (option) {
+                case "FROMLONLAT":
+                    longitude = parseDouble(args[++i]);
+                    latitude = parseDouble(args[++i]);
+                    from = true;
+                    break;
+                case "BYRADIUS":
+                    radius = parseDouble(args[++i]);
+                    unit = unit(args[++i]);
+                    break;
+                case "BYBOX":
+                    width = parseDouble(args[++i]);
+                    height = parseDouble(args[++i]);
+                    unit = unit(args[++i]);
+                    break;
+                case "ASC":
+                    desc = false;
+                    break;
+                case "DESC":
+                    desc = true;
+                    break;
+                case "COUNT":
+                    count = parseLong(args[++i]);
+                    if (i + 1 < args.length && "ANY".equalsIgnoreCase(new String(args[i + 1], StandardCharsets.US_ASCII))) {
+                        i++;
+                    }
+                    break;
+                case "WITHDIST":
+                    withDist = true;
+                    break;
+                case "WITHCOORD":
+                    withCoord = true;
+                    break;
+                default:
+                    writer.writeError("ERR syntax error");
+                    return;
+            }
+        }
+        if (!from || unit <= 0 || (radius < 0) == (width < 0)) {
+            writer.writeError("ERR syntax error");
+            return;
+        }
+        Geo geo = typed(key(args[1]), Geo.class);
+        List<Map.Entry<String, Double>> hits = new ArrayList<>();
+        if (geo != null) {
+            for (Map.Entry<String, double[]> member : geo.members.entrySet()) {
+                double[] point = member.getValue();
+                double distance = geoDistance(longitude, latitude, point[0], point[1]);
+                boolean inside = radius >= 0 ? distance <= radius * unit
+                        : EARTH_RADIUS_IN_METERS * Math.abs(Math.toRadians(point[1] - latitude)) <= height * unit / 2
+                        && geoDistance(longitude, point[1], point[0], point[1]) <= width * unit / 2;
+                if (inside) {
+                    hits.add(new AbstractMap.SimpleEntry<>(member.getKey(), distance));
+                }
+            }
+        }
+        Comparator<Map.Entry<String, Double>> order = Map.Entry.comparingByValue();
+        hits.sort(desc ? order.reversed() : order);
+        if (count > 0 && hits.size() > count) {
+            hits = hits.subList(0, (int) count);
+        }
+        writer.writeArrayHeader(hits.size());
+        for (Map.Entry<String, Double> hit : hits) {
+            byte[] member = hit.getKey().getBytes(StandardCharsets.ISO_8859_1);
+            if (!withDist && !withCoord) {
+                writer.writeBulk(member);
+                continue;
+            }
+            writer.writeArrayHeader(1 + (withDist ? 1 : 0) + (withCoord ? 1 : 0));
+            writer.writeBulk(member);
+            if (withDist) {
+                writer.writeBulk(String.format(Locale.ROOT, "%.4f", hit.getValue() / unit).getBytes(StandardCharsets.US_ASCII));
+            }
+            if (withCoord) {
+                double[] point = geo.members.get(hit.getKey());
+                writer.writeArrayHeader(2);
+                writer.writeBulk(String.valueOf(point[0]).getBytes(StandardCharsets.US_ASCII));
+                writer.writeBulk(String.valueOf(point[1]).getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    private static double unit(byte[] raw) {
+        String unit = new String(raw, StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+        return "m".equals(unit) ? 1 : "km".equals(unit) ? 1000 : -1;
+    }
+
+    /**
+     * 与Redis geohashGetDistance 相同的半正矢公式
+     */
+    private static double geoDistance(double lon1, double lat1, double lon2, double lat2) {
+        double u = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = u * u + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * v * v;
+        return 2.0 * EARTH_RADIUS_IN_METERS * Math.asin(Math.sqrt(a));
+    }
+
+    /**
+     * 读取未过期的条目 过期的和所有项都已过期的hash惰性删除
+     */
+    private Entry live(String key) {
+        Entry entry = data.get(key);
+        if (entry != null && (entry.isExpired() || entry.value instanceof Hash && ((Hash) entry.value).isExpired())) {
+            data.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private static long deadline(long ttlMillis) {
+        return ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+    }
+
+    /**
+     * 键按 ISO-8859-1 转成String, 和字节一一对应
+     */
+    private static String key(byte[] raw) {
+        return new String(raw, StandardCharsets.ISO_8859_1);
+    }
+
+    private static long parseLong(byte[] raw) {
+        return Long.parseLong(new String(raw, StandardCharsets.US_ASCII));
+    }
+
+    private static double parseDouble(byte[] raw) {
+        return Double.parseDouble(new String(raw, StandardCharsets.US_ASCII));
+    }
+
+    private static byte[][] toArgs(List<?> request) {
+        byte[][] args = new byte[request.size()][];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = request.get(i);
+            args[i] = arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+
+    private static final double EARTH_RADIUS_IN_METERS = 6372797.560856;
+
+    private static final Set<String> TX_COMMANDS = new HashSet<>(Arrays.asList("MULTI", "EXEC", "DISCARD", "WATCH", "QUIT"));
+
+    /**
+     * 连接的事务状态
+     */
+    private static final class Session {
+
+        /**
+         * WATCH的键和当时的条目 条目为null表示当时不存在
+         */
+        Map<String, Entry> watched;
+
+        /**
+         * MULTI之后排队的命令 不在事务中时为null
+         */
+        List<byte[][]> queued;
+    }
+
+    /**
+     * 对其他类型的键执行命令
+     */
+    private static final class WrongTypeException extends RuntimeException {
+
+        WrongTypeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Entry {
+
+        /**
+         * byte[] 字符串、Hash、Members 或 Geo
+         */
+        final Object value;
+
+        /**
+         * 过期时间戳(毫秒) 0为永久
+         */
+        final long expireAt;
+
+        Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired() {
+            return expireAt != 0 && expireAt <= System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * hash 写入时整体替换, 不在原对象上修改
+     */
+    private static final class Hash {
+
+        final Map<String, Field> fields;
+
+        Hash(Map<String, Field> fields) {
+            this.fields = fields;
+        }
+
+        boolean isExpired() {
+            return fields.values().stream().allMatch(Field::isExpired);
+        }
+    }
+
+    /**
+     * hash的项 可以单独设置过期时间
+     */
+    private static final class Field {
+
+        final byte[] value;
+
+        /**
+         * 过期时间戳(毫秒) 0为永久
+         */
+        final long expireAt;
+
+        Field(byte[] value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired() {
+            return expireAt != 0 && expireAt <= System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 集合 写入时整体替换
+     */
+    private static final class Members {
+
+        final Set<String> values;
+
+        Members(Set<String> values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * 位置集合 成员 -> [经度, 纬度], 写入时整体替换
+     */
+    private static final class Geo {
+
+        final Map<String, double[]> members;
+
+        Geo(Map<String, double[]> members) {
+            this.members = members;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.wode.loadtest;
+
+import com.wode.resp.RespClient;
+import com.wode.util.TraceFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 按录制的访问轨迹(TraceRecorder)重放请求 用于在真实的访问模式上比较不同配置
+ * 按记录的时间间隔发送(开环, 延迟从计划时间开始计算), 可以加速或不限速; 同一个键的命令走同一个连接, 保持原有顺序
+ * 键用 "trace:" + 键哈希 代替, 值用录制的大小填充; 轨迹中被INCR过的键写入数字"0", 否则INCRBY会报 not an integer;
+ * hash命令按字符串命令回放(替身不支持hash)
+ * 用法: TraceReplay --trace=文件或目录 [--选项=值 ...]
+ * --speed=1              回放倍速 0为不限速
+ * --connections=8        连接数
+ * --max-inflight=1000    最多未完成的命令数
+ * --max-value-bytes=65536 值大小上限
+ * --preload=true         回放前写入轨迹中第一次访问就命中的键, 使命中率可比
+ * --host=127.0.0.1 --port=6379 使用指定的Redis, 不传port时启动进程内的 MiniRedisServer
+ */
+public class TraceReplay {
+
+    private final List<Path> files;
+
+    private final double speed;
+
+    private final int connections;
+
+    private final int maxInflight;
+
+    private final int maxValueBytes;
+
+    private final byte[] filler;
+
+    /**
+     * 轨迹中出现过INCR的键哈希 这些键的SET和预加载写数字
+     */
+    private final Set<Long> counters = new HashSet<>();
+
+    private TraceReplay(List<Path> files, Map<String, String> options) {
+        this.files = files;
+        this.speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "8"));
+        this.maxInflight = Integer.parseInt(options.getOrDefault("max-inflight", "1000"));
+        this.maxValueBytes = Integer.parseInt(options.getOrDefault("max-value-bytes", "65536"));
+        this.filler = new byte[maxValueBytes];
+        Arrays.fill(filler, (byte) 'x');
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("unexpected argument " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        String trace = options.get("trace");
+        if (trace == null) {
+            throw new IllegalArgumentException("--trace is required");
+        }
+        List<Path> files = traceFiles(Paths.get(trace));
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("no trace files in " + trace);
+        }
+
+        MiniRedisServer redis = null;
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port;
+        if (options.containsKey("port")) {
+            port = Integer.parseInt(options.get("port"));
+        } else {
+            redis = new MiniRedisServer(0);
+            port = redis.getPort();
+        }
+        TraceReplay replay = new TraceReplay(files, options);
+        List<RespClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < replay.connections; i++) {
+                clients.add(new RespClient(host, port, 3000, push -> {
+                }, null));
+            }
+            replay.scanCounters();
+            if (Boolean.parseBoolean(options.getOrDefault("preload", "true"))) {
+                System.out.printf("preloaded %d keys%n", replay.preload(clients));
+            }
+            replay.run(clients).print(replay);
+        } finally {
+            clients.forEach(RespClient::close);
+            if (redis != null) {
+                redis.close();
+            }
+        }
+    }
+
+    private static List<Path> traceFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return Collections.singletonList(path);
+        }
+        try (Stream<Path> stream = Files.list(path)) {
+            return stream.filter(file -> file.getFileName().toString().startsWith("redis-trace-"))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 找出轨迹中被INCR过的键
+     */
+    private void scanCounters() throws IOException {
+        for (Path file : files) {
+            TraceFormat.Reader reader = TraceFormat.open(file);
+            while (reader.next()) {
+                if (reader.command() == TraceFormat.Command.INCR) {
+                    counters.add(reader.keyHash());
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入第一次访问就是命中读取的键 这些键在录制开始前已经存在
+     *
+     * @return 写入的键数
+     */
+    private long preload(List<RespClient> clients) throws Exception {
+        Set<Long> seen = new HashSet<>();
+        List<CompletableFuture<Object>> batch = new ArrayList<>();
+        long loaded = 0;
+        for (Path file : files) {
+            TraceFormat.Reader reader = TraceFormat.open(file);
+            while (reader.next()) {
+                if (!seen.add(reader.keyHash()) || reader.command() == null || !reader.command().isRead()
+                        || (reader.flags() & TraceFormat.FLAG_HIT) == 0) {
+                    continue;
+                }
+                batch.add(client(clients, reader.keyHash()).send(bytes("SET"), bytes(reader.key()), value(reader)));
+                loaded++;
+                if (batch.size() == maxInflight) {
+                    CompletableFuture.allOf(batch.toArray(new CompletableFuture[0])).get();
+                    batch.clear();
+                }
+            }
+        }
+        CompletableFuture.allOf(batch.toArray(new CompletableFuture[0])).get();
+        return loaded;
+    }
+
+    private Result run(List<RespClient> clients) throws IOException, InterruptedException {
+        Result result = new Result();
+        List<LatencyRecorder> corrected = new ArrayList<>();
+        List<LatencyRecorder> service = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            corrected.add(new LatencyRecorder());
+            service.add(new LatencyRecorder());
+        }
+        Semaphore inflight = new Semaphore(maxInflight);
+        long firstStartMillis = -1;
+        long firstMicros = -1;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        for (Path file : files) {
+            TraceFormat.Reader reader = TraceFormat.open(file);
+            if (firstStartMillis < 0) {
+                firstStartMillis = reader.getStartMillis();
+            }
+            // 不同录制会话的文件按各自的开始时间接到一条时间线上
+            long offsetMicros = TimeUnit.MILLISECONDS.toMicros(reader.getStartMillis() - firstStartMillis);
+            while (reader.next()) {
+                TraceFormat.Command command = reader.command();
+                if (command == null) {
+                    result.skipped++;
+                    continue;
+                }
+                long micros = offsetMicros + reader.micros();
+                if (firstMicros < 0) {
+                    firstMicros = micros;
+                }
+                result.spanMicros = micros - firstMicros;
+                long intended;
+                if (speed > 0) {
+                    intended = start + (long) (TimeUnit.MICROSECONDS.toNanos(micros - firstMicros) / speed);
+                    long wait;
+                    while ((wait = intended - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    intended = System.nanoTime();
+                }
+                inflight.acquire();
+                long begin = System.nanoTime();
+                result.maxLagNanos = Math.max(result.maxLagNanos, begin - intended);
+                result.commands.merge(command, 1L, Long::sum);
+                if (command.isRead() && (reader.flags() & TraceFormat.FLAG_HIT) != 0) {
+                    result.recordedHits++;
+                }
+                int index = (int) Long.remainderUnsigned(reader.keyHash(), connections);
+                LatencyRecorder correctedRecorder = corrected.get(index);
+                LatencyRecorder serviceRecorder = service.get(index);
+                boolean read = command.isRead();
+                // 回调在该连接的读线程中执行, 每个连接一个记录器, 不需要同步
+                clients.get(index).send(command(reader)).whenComplete((reply, error) -> {
+                    long done = System.nanoTime();
+                    correctedRecorder.record(done - intended);
+                    serviceRecorder.record(done - begin);
+                    if (error != null) {
+                        result.errors.increment();
+                    } else if (read && reply != null) {
+                        result.replayHits.increment();
+                    }
+                    inflight.release();
+                });
+            }
+        }
+        inflight.acquire(maxInflight);
+        result.elapsedNanos = System.nanoTime() - start;
+        result.corrected = LatencyRecorder.merge(corrected);
+        result.service = LatencyRecorder.merge(service);
+        return result;
+    }
+
+    private byte[][] command(TraceFormat.Reader reader) {
+        byte[] key = bytes(reader.key());
+        int ttl = reader.ttlSeconds();
+        switch (reader.command()) {
+            case GET:
+            case HGET:
+                return new byte[][]{bytes("GET"), key};
+            case SET:
+            case HSET:
+                return ttl > 0
+                        ? new byte[][]{bytes("SET"), key, value(reader), bytes("EX"), bytes(Integer.toString(ttl))}
+                        : new byte[][]{bytes("SET"), key, value(reader)};
+            case DEL:
+                return new byte[][]{bytes("DEL"), key};
+            case EXPIRE:
+                return new byte[][]{bytes("EXPIRE"), key, bytes(Integer.toString(Math.max(1, ttl)))};
+            default:
+                return new byte[][]{bytes("INCRBY"), key, bytes("1")};
+        }
+    }
+
+    private RespClient client(List<RespClient> clients, long keyHash) {
+        return clients.get((int) Long.remainderUnsigned(keyHash, connections));
+    }
+
+    /**
+     * 计数器写"0"(INCRBY 不接受前导零, 不能按录制的大小补齐), 其他键按录制的大小填充
+     */
+    private byte[] value(TraceFormat.Reader reader) {
+        if (counters.contains(reader.keyHash())) {
+            return bytes("0");
+        }
+        return Arrays.copyOf(filler, Math.max(1, Math.min(reader.size(), maxValueBytes)));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class Result {
+
+        final Map<TraceFormat.Command, Long> commands = new EnumMap<>(TraceFormat.Command.class);
+
+        final LongAdder errors = new LongAdder();
+
+        final LongAdder replayHits = new LongAdder();
+
+        long recordedHits;
+
+        long skipped;
+
+        long spanMicros;
+
+        long maxLagNanos;
+
+        long elapsedNanos;
+
+        LatencyRecorder corrected;
+
+        LatencyRecorder service;
+
+        void print(TraceReplay replay) {
+            long reads = commands.getOrDefault(TraceFormat.Command.GET, 0L) + commands.getOrDefault(TraceFormat.Command.HGET, 0L);
+            int requests = corrected.size();
+            System.out.printf("files=%d connections=%d speed=%s trace span=%.1fs%n", replay.files.size(), replay.connections,
+                    replay.speed > 0 ? replay.speed + "x" : "max", spanMicros / 1e6);
+            System.out.printf("requests=%d skipped=%d errors=%d elapsed=%dms throughput=%.0f req/s%n", requests, skipped,
+                    errors.sum(), elapsedNanos / 1_000_000, requests * 1e9 / Math.max(1, elapsedNanos));
+            System.out.println("commands: " + commands);
+            System.out.printf("hit ratio: recorded=%.2f%% replay=%.2f%%%n", percent(recordedHits, reads), percent(replayHits.sum(), reads));
+            System.out.printf("max schedule lag=%.2fms%n", maxLagNanos / 1e6);
+            System.out.println("latency (from intended start): " + corrected.summary());
+            System.out.println("service time                 : " + service.summary());
+        }
+
+        private static double percent(long part, long total) {
+            return total == 0 ? 0 : part * 100.0 / total;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.wode.repository;
+
+import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Redis缓存 + 数据源的读写穿透仓库
+ * 读: 批量GET命中的直接返回, 未命中的一次性交给 loader 加载并回填; 数据源也没有的键缓存一个空标记, 防止缓存穿透;
+ * 剩余过期时间低于 refreshAhead 的键异步重新加载, 热点键不会集中过期; 空标记不提前刷新
+ * 写: 先写数据源(writer)再更新缓存, 删除时先删数据源再删缓存
+ * 值用fastjson序列化, 键为 namespace:key
+ */
+public class RedisBackedRepository<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisBackedRepository.class);
+
+    private static final byte[] NULL_MARKER = "\u0000null".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 批量加载 返回结果中不包含数据源里不存在的键
+     */
+    public interface Loader<K, V> {
+        Map<K, V> loadAll(Collection<K> keys);
+    }
+
+    public interface Writer<K, V> {
+        void write(K key, V value);
+
+        void delete(K key);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final String namespace;
+
+    private final Function<K, String> keyMapper;
+
+    private final Class<V> valueType;
+
+    private final Loader<K, V> loader;
+
+    private final Writer<K, V> writer;
+
+    private final long ttlSeconds;
+
+    private final long negativeTtlSeconds;
+
+    private final long refreshAheadSeconds;
+
+    private final Executor refreshExecutor;
+
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    private RedisBackedRepository(Builder<K, V> builder) {
+        this.redisTemplate = builder.redisTemplate;
+        this.namespace = builder.namespace;
+        this.keyMapper = builder.keyMapper;
+        this.valueType = builder.valueType;
+        this.loader = builder.loader;
+        this.writer = builder.writer;
+        this.ttlSeconds = builder.ttlSeconds;
+        this.negativeTtlSeconds = builder.negativeTtlSeconds;
+        this.refreshAheadSeconds = builder.refreshAheadSeconds;
+        this.refreshExecutor = builder.refreshExecutor;
+    }
+
+    public static <K, V> Builder<K, V> builder(StringRedisTemplate redisTemplate, String namespace, Class<V> valueType) {
+        return new Builder<>(redisTemplate, namespace, valueType);
+    }
+
+    public V get(K key) {
+        return getAll(Collections.singletonList(key)).get(key);
+    }
+
+    /**
+     * 批量读取
+     *
+     * @param keys 键
+     * @return 键 -> 值, 不存在的键不包含在结果中
+     */
+    public Map<K, V> getAll(Collection<K> keys) {
+        List<K> keyList = new ArrayList<>(new LinkedHashSet<>(keys));
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            for (K key : keyList) {
+                byte[] rawKey = rawKey(key);
+                connection.stringCommands().get(rawKey);
+                connection.keyCommands().pTtl(rawKey);
+            }
+            return connection.closePipeline();
+        });
+        Map<K, V> result = new LinkedHashMap<>(keyList.size());
+        List<K> missing = new ArrayList<>();
+        List<K> expiring = new ArrayList<>();
+        for (int i = 0; i < keyList.size(); i++) {
+            K key = keyList.get(i);
+            byte[] raw = (byte[]) replies.get(2 * i);
+            Long pttl = (Long) replies.get(2 * i + 1);
+            if (raw == null) {
+                missing.add(key);
+                continue;
+            }
+            if (Arrays.equals(raw, NULL_MARKER)) {
+                // 空值标记只按 negativeTtl 过期, 不提前刷新, 否则每次读取不存在的键都会访问数据源
+                continue;
+            }
+            result.put(key, JSON.parseObject(raw, valueType));
+            if (refreshAheadSeconds > 0 && pttl != null && pttl > 0 && pttl < refreshAheadSeconds * 1000) {
+                expiring.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            result.putAll(load(missing));
+        }
+        expiring.forEach(this::refreshAsync);
+        return result;
+    }
+
+    /**
+     * 写穿透 先写数据源再写缓存
+     */
+    public void put(K key, V value) {
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        cache(Collections.singletonMap(key, value), Collections.emptyList());
+    }
+
+    /**
+     * 先删数据源再删缓存
+     */
+    public void remove(K key) {
+        if (writer != null) {
+            writer.delete(key);
+        }
+        evict(key);
+    }
+
+    /**
+     * 只删除缓存 数据源在别处被修改时调用
+     */
+    public void evict(K key) {
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().del(rawKey(key)));
+    }
+
+    private Map<K, V> load(List<K> keys) {
+        Map<K, V> loaded = loader.loadAll(keys);
+        List<K> absent = new ArrayList<>();
+        for (K key : keys) {
+            if (loaded.get(key) == null) {
+                absent.add(key);
+            }
+        }
+        cache(loaded, absent);
+        return loaded;
+    }
+
+    private void refreshAsync(K key) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                load(Collections.singletonList(key));
+            } catch (Exception e) {
+                log.warn("refresh-ahead of {}:{} failed", namespace, key, e);
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    /**
+     * 一个管道写入加载到的值和空标记
+     */
+    private void cache(Map<K, V> values, List<K> absent) {
+        Expiration ttl = ttlSeconds > 0 ? Expiration.seconds(ttlSeconds) : Expiration.persistent();
+        Expiration negativeTtl = Expiration.seconds(negativeTtlSeconds);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            values.forEach((key, value) -> {
+                if (value != null) {
+                    connection.stringCommands().set(rawKey(key), JSON.toJSONBytes(value), ttl, RedisStringCommands.SetOption.upsert());
+                }
+            });
+            if (negativeTtlSeconds > 0) {
+                for (K key : absent) {
+                    connection.stringCommands().set(rawKey(key), NULL_MARKER, negativeTtl, RedisStringCommands.SetOption.upsert());
+                }
+            }
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(K key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(namespace + ":" + keyMapper.apply(key));
+    }
+
+    public static class Builder<K, V> {
+
+        private final StringRedisTemplate redisTemplate;
+
+        private final String namespace;
+
+        private final Class<V> valueType;
+
+        private Function<K, String> keyMapper = String::valueOf;
+
+        private Loader<K, V> loader = keys -> Collections.emptyMap();
+
+        private Writer<K, V> writer;
+
+        private long ttlSeconds = 3600;
+
+        private long negativeTtlSeconds = 60;
+
+        private long refreshAheadSeconds;
+
+        private Executor refreshExecutor = ForkJoinPool.commonPool();
+
+        private Builder(StringRedisTemplate redisTemplate, String namespace, Class<V> valueType) {
+            this.redisTemplate = redisTemplate;
+            this.namespace = namespace;
+            this.valueType = valueType;
+        }
+
+        public Builder<K, V> keyMapper(Function<K, String> keyMapper) {
+            this.keyMapper = keyMapper;
+            return this;
+        }
+
+        public Builder<K, V> loader(Loader<K, V> loader) {
+            this.loader = loader;
+            return this;
+        }
+
+        public Builder<K, V> writer(Writer<K, V> writer) {
+            this.writer = writer;
+            return this;
+        }
+
+        /**
+         * 缓存时间(秒) 小于等于0为永久
+         */
+        public Builder<K, V> ttl(long seconds) {
+            this.ttlSeconds = seconds;
+            return this;
+        }
+
+        /**
+         * 空标记的缓存时间(秒) 小于等于0时不缓存空结果
+         */
+        public Builder<K, V> negativeTtl(long seconds) {
+            this.negativeTtlSeconds = seconds;
+            return this;
+        }
+
+        /**
+         * 剩余时间低于该值(秒)时异步刷新 0为不刷新
+         */
+        public Builder<K, V> refreshAhead(long seconds) {
+            this.refreshAheadSeconds = seconds;
+            return this;
+        }
+
+        public Builder<K, V> refreshExecutor(Executor executor) {
+            this.refreshExecutor = executor;
+            return this;
+        }
+
+        public RedisBackedRepository<K, V> build() {
+            return new RedisBackedRepository<>(this);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.wode.resp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 轻量的RESP连接 用于Lettuce不支持的场景(RESP3推送消息等)
+ * 多个线程可以同时发送命令, 回复按发送顺序匹配; 推送消息由读线程交给 pushListener 处理
+ */
+public class RespClient implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RespClient.class);
+
+    private final Socket socket;
+
+    private final RespWriter writer;
+
+    private final RespReader reader;
+
+    private final Queue<CompletableFuture<Object>> pending = new ConcurrentLinkedQueue<>();
+
+    private final Consumer<RespPush> pushListener;
+
+    private final Runnable closeListener;
+
+    private final Thread readerThread;
+
+    private volatile boolean closed;
+
+    /**
+     * 保护写出和 pending 的顺序 用 ReentrantLock 而不是 synchronized, 虚拟线程在写socket时不会钉住载体线程
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * @param host          地址
+     * @param port          端口
+     * @param timeoutMillis 连接超时
+     * @param pushListener  推送消息处理 在读线程中调用, 不能阻塞
+     * @param closeListener 连接断开时调用 可以为null
+     */
+    public RespClient(String host, int port, int timeoutMillis,
+                      Consumer<RespPush> pushListener, Runnable closeListener) throws IOException {
+        this.socket = new Socket();
+        this.socket.setTcpNoDelay(true);
+        this.socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+        this.writer = new RespWriter(new BufferedOutputStream(socket.getOutputStream()));
+        this.reader = new RespReader(new BufferedInputStream(socket.getInputStream()));
+        this.pushListener = pushListener;
+        this.closeListener = closeListener;
+        this.readerThread = new Thread(this::readLoop, "resp-client-" + host + ":" + port);
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /**
+     * 异步发送命令
+     *
+     * @param args 命令及参数
+     * @return 回复 服务端错误时以 RespError 异常结束
+     */
+    public CompletableFuture<Object> send(byte[]... args) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        writeLock.lock();
+        try {
+            if (closed) {
+                future.completeExceptionally(new IOException("connection closed"));
+                return future;
+            }
+            pending.add(future);
+            try {
+                writer.writeCommand(args);
+                writer.flush();
+            } catch (IOException e) {
+                close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return future;
+    }
+
+    public CompletableFuture<Object> send(String... args) {
+        byte[][] raw = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            raw[i] = args[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return send(raw);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        CompletableFuture<Object> future;
+        while ((future = pending.poll()) != null) {
+            future.completeExceptionally(new IOException("connection closed"));
+        }
+        if (closeListener != null) {
+            closeListener.run();
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                Object reply = reader.read();
+                if (reply instanceof RespPush) {
+                    try {
+                        pushListener.accept((RespPush) reply);
+                    } catch (RuntimeException e) {
+                        log.warn("push listener failed", e);
+                    }
+                    continue;
+                }
+                CompletableFuture<Object> future = pending.poll();
+                if (future == null) {
+                    continue;
+                }
+                if (reply instanceof RespError) {
+                    future.completeExceptionally((RespError) reply);
+                } else {
+                    future.complete(reply);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("resp connection lost: {}", e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+}
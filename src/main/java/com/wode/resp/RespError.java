@@ -0,0 +1,11 @@
+package com.wode.resp;
+
+/**
+ * 服务端返回的错误
+ */
+public class RespError extends RuntimeException {
+
+    public RespError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package com.wode.resp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * RESP3 推送消息 如 CLIENT TRACKING 的 invalidate
+ */
+public class RespPush {
+
+    private final List<Object> items;
+
+    public RespPush(List<Object> items) {
+        this.items = items;
+    }
+
+    /**
+     * 消息类型 如 invalidate、message
+     */
+    public String getKind() {
+        Object kind = items.isEmpty() ? null : items.get(0);
+        return kind instanceof byte[] ? new String((byte[]) kind, StandardCharsets.UTF_8) : String.valueOf(kind);
+    }
+
+    public List<Object> getItems() {
+        return items;
+    }
+}
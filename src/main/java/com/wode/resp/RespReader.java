@@ -0,0 +1,107 @@
+package com.wode.resp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RESP2/RESP3协议解码
+ * 简单字符串返回String, 整数返回Long, 批量字符串返回byte[], 数组/集合返回List,
+ * map按 键,值,键,值 展开为List, 错误返回 RespError(不抛出), 推送消息返回 RespPush, 空值返回null
+ */
+public class RespReader {
+
+    private final InputStream in;
+
+    public RespReader(InputStream in) {
+        this.in = in;
+    }
+
+    public Object read() throws IOException {
+        int type = in.read();
+        switch (type) {
+            case -1:
+                throw new EOFException("connection closed");
+            case '+':
+                return readLine();
+            case '-':
+            case '!':
+                return new RespError(type == '-' ? readLine() : new String(readBulk(), StandardCharsets.UTF_8));
+            case ':':
+                return Long.parseLong(readLine());
+            case ',':
+                return Double.parseDouble(readLine());
+            case '(':
+                return readLine();
+            case '#':
+                return "t".equals(readLine());
+            case '_':
+                readLine();
+                return null;
+            case '$':
+            case '=':
+                return readBulk();
+            case '*':
+            case '~':
+                return readAggregate(1);
+            case '%':
+                return readAggregate(2);
+            case '>':
+                return new RespPush(readAggregate(1));
+            case '|':
+                // 属性信息直接跳过, 返回后面真正的回复
+                readAggregate(2);
+                return read();
+            default:
+                throw new IOException("unknown RESP type " + (char) type);
+        }
+    }
+
+    private List<Object> readAggregate(int multiplier) throws IOException {
+        int count = Integer.parseInt(readLine());
+        if (count < 0) {
+            return null;
+        }
+        List<Object> items = new ArrayList<>(count * multiplier);
+        for (int i = 0; i < count * multiplier; i++) {
+            items.add(read());
+        }
+        return items;
+    }
+
+    private byte[] readBulk() throws IOException {
+        int length = Integer.parseInt(readLine());
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = in.read(bytes, offset, length - offset);
+            if (n < 0) {
+                throw new EOFException("connection closed");
+            }
+            offset += n;
+        }
+        // \r\n
+        in.read();
+        in.read();
+        return bytes;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c < 0) {
+                throw new EOFException("connection closed");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.wode.resp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RESP协议编码, 用于生成 redis-cli --pipe 可直接导入的批量命令文件, 以及测试用服务端的回复
+ */
+public class RespWriter {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final OutputStream out;
+
+    public RespWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * 写出一条命令
+     *
+     * @param args 命令及参数 第一个为命令名
+     * @throws IOException
+     */
+    public void writeCommand(byte[]... args) throws IOException {
+        writePrefixed('*', args.length);
+        for (byte[] arg : args) {
+            writePrefixed('$', arg.length);
+            out.write(arg);
+            out.write(CRLF);
+        }
+    }
+
+    public void writeCommand(String command, byte[]... args) throws IOException {
+        byte[][] all = new byte[args.length + 1][];
+        all[0] = command.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(args, 0, all, 1, args.length);
+        writeCommand(all);
+    }
+
+    public void writeSimple(String value) throws IOException {
+        out.write('+');
+        out.write(value.getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+
+    public void writeError(String message) throws IOException {
+        out.write('-');
+        out.write(message.getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+
+    public void writeInteger(long value) throws IOException {
+        out.write(':');
+        out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    /**
+     * 批量字符串 null写出为空值($-1)
+     */
+    public void writeBulk(byte[] value) throws IOException {
+        if (value == null) {
+            writePrefixed('$', -1);
+            return;
+        }
+        writePrefixed('$', value.length);
+        out.write(value);
+        out.write(CRLF);
+    }
+
+    public void writeArrayHeader(int length) throws IOException {
+        writePrefixed('*', length);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writePrefixed(char type, int length) throws IOException {
+        out.write(type);
+        out.write(Integer.toString(length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+}
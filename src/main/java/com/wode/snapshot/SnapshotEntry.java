@@ -0,0 +1,34 @@
+package com.wode.snapshot;
+
+/**
+ * 快照中的一个键 DUMP出的序列化值及剩余过期时间
+ */
+public class SnapshotEntry {
+
+    private final byte[] key;
+
+    /**
+     * 剩余过期时间(毫秒) 小于等于0代表永久有效
+     */
+    private final long pttl;
+
+    private final byte[] dump;
+
+    public SnapshotEntry(byte[] key, long pttl, byte[] dump) {
+        this.key = key;
+        this.pttl = pttl;
+        this.dump = dump;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public long getPttl() {
+        return pttl;
+    }
+
+    public byte[] getDump() {
+        return dump;
+    }
+}
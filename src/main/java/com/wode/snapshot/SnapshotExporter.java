@@ -0,0 +1,104 @@
+package com.wode.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按模式导出键到本地快照文件
+ * 通过SCAN遍历(不使用KEYS), 每批键管道执行DUMP+PTTL后直接写入文件, 内存占用和数据量无关
+ */
+@Component
+public class SnapshotExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotExporter.class);
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${redis.snapshot.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 导出
+     *
+     * @param pattern  键的匹配模式 按服务端实际的键匹配
+     * @param file     快照文件 已存在时覆盖
+     * @param compress 是否压缩
+     * @return 导出的键数量
+     */
+    public long export(String pattern, Path file, boolean compress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SnapshotFormat.writeHeader(channel, compress);
+            ScanOptions options = ScanOptions.scanOptions().match(pattern).count(batchSize).build();
+            Long count = redisTemplate.execute((RedisCallback<Long>) connection -> {
+                long exported = 0;
+                List<byte[]> keys = new ArrayList<>(batchSize);
+                try (Cursor<byte[]> cursor = connection.scan(options)) {
+                    while (cursor.hasNext()) {
+                        keys.add(cursor.next());
+                        if (keys.size() == batchSize) {
+                            exported += writeBatch(channel, keys, compress);
+                            keys.clear();
+                        }
+                    }
+                    if (!keys.isEmpty()) {
+                        exported += writeBatch(channel, keys, compress);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return exported;
+            });
+            channel.force(false);
+            log.info("exported {} keys matching {} to {}", count, pattern, file);
+            return count == null ? 0 : count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 管道获取一批键的DUMP值和过期时间并写入一个数据块
+     * 使用独立的连接, 不影响SCAN游标所在的连接
+     */
+    private int writeBatch(FileChannel channel, List<byte[]> keys, boolean compress) throws IOException {
+        List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            for (byte[] key : keys) {
+                connection.keyCommands().dump(key);
+                connection.keyCommands().pTtl(key);
+            }
+            return connection.closePipeline();
+        });
+        List<SnapshotEntry> entries = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] dump = (byte[]) results.get(2 * i);
+            Long pttl = (Long) results.get(2 * i + 1);
+            // 在SCAN和DUMP之间过期或被删除的键
+            if (dump == null || pttl == null || pttl == -2) {
+                continue;
+            }
+            entries.add(new SnapshotEntry(keys.get(i), pttl, dump));
+        }
+        if (!entries.isEmpty()) {
+            SnapshotFormat.writeBlock(channel, entries, compress);
+        }
+        return entries.size();
+    }
+}
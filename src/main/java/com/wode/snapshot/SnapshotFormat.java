@@ -0,0 +1,182 @@
+package com.wode.snapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 快照文件格式
+ * <pre>
+ * 文件头: "RSNP" 版本(1字节) 标志(1字节, bit0=压缩)
+ * 数据块: 原始长度(int) 存储长度(int) 存储内容(压缩时为deflate后的内容)
+ * 块内容: 重复 [键长度(int) 键 过期时间毫秒(long) 值长度(int) DUMP值]
+ * </pre>
+ * 每个数据块对应一批SCAN结果, 读写时内存占用只和批次大小有关
+ */
+final class SnapshotFormat {
+
+    private static final byte[] MAGIC = {'R', 'S', 'N', 'P'};
+
+    private static final byte VERSION = 1;
+
+    private static final byte FLAG_COMPRESSED = 1;
+
+    private SnapshotFormat() {
+    }
+
+    static void writeHeader(FileChannel channel, boolean compressed) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 2);
+        header.put(MAGIC).put(VERSION).put(compressed ? FLAG_COMPRESSED : 0);
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * 读取文件头
+     *
+     * @return 是否压缩
+     */
+    static boolean readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 2);
+        if (!readFully(channel, header)) {
+            throw new EOFException("empty snapshot file");
+        }
+        header.flip();
+        for (byte b : MAGIC) {
+            if (header.get() != b) {
+                throw new IOException("not a snapshot file");
+            }
+        }
+        byte version = header.get();
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+        return (header.get() & FLAG_COMPRESSED) != 0;
+    }
+
+    static void writeBlock(FileChannel channel, List<SnapshotEntry> entries, boolean compressed) throws IOException {
+        int rawLength = 0;
+        for (SnapshotEntry entry : entries) {
+            rawLength += 4 + entry.getKey().length + 8 + 4 + entry.getDump().length;
+        }
+        ByteBuffer raw = ByteBuffer.allocate(rawLength);
+        for (SnapshotEntry entry : entries) {
+            raw.putInt(entry.getKey().length).put(entry.getKey())
+                    .putLong(entry.getPttl())
+                    .putInt(entry.getDump().length).put(entry.getDump());
+        }
+        byte[] stored = compressed ? deflate(raw.array()) : raw.array();
+        ByteBuffer block = ByteBuffer.allocate(8 + stored.length);
+        block.putInt(rawLength).putInt(stored.length).put(stored);
+        block.flip();
+        writeFully(channel, block);
+    }
+
+    /**
+     * 读取下一个数据块
+     *
+     * @return 块内的键 文件结束时返回null
+     */
+    static List<SnapshotEntry> readBlock(FileChannel channel, boolean compressed) throws IOException {
+        ByteBuffer blockHeader = ByteBuffer.allocate(8);
+        if (!readFully(channel, blockHeader)) {
+            return null;
+        }
+        blockHeader.flip();
+        int rawLength = blockHeader.getInt();
+        ByteBuffer stored = ByteBuffer.allocate(blockHeader.getInt());
+        if (!readFully(channel, stored)) {
+            throw new EOFException("truncated snapshot block");
+        }
+        ByteBuffer raw = ByteBuffer.wrap(compressed ? inflate(stored.array(), rawLength) : stored.array());
+        List<SnapshotEntry> entries = new ArrayList<>();
+        while (raw.hasRemaining()) {
+            byte[] key = new byte[raw.getInt()];
+            raw.get(key);
+            long pttl = raw.getLong();
+            byte[] dump = new byte[raw.getInt()];
+            raw.get(dump);
+            entries.add(new SnapshotEntry(key, pttl, dump));
+        }
+        return entries;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteBuffer out = ByteBuffer.allocate(raw.length + raw.length / 1000 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                if (out.remaining() < n) {
+                    ByteBuffer bigger = ByteBuffer.allocate(out.capacity() * 2 + n);
+                    out.flip();
+                    bigger.put(out);
+                    out = bigger;
+                }
+                out.put(chunk, 0, n);
+            }
+            byte[] result = new byte[out.position()];
+            out.flip();
+            out.get(result);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] raw = new byte[rawLength];
+            int offset = 0;
+            while (offset < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, offset, rawLength - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != rawLength) {
+                throw new IOException("corrupted snapshot block");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("corrupted snapshot block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 读满缓冲区
+     *
+     * @return false 文件已结束且没有读到任何内容
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("truncated snapshot file");
+            }
+        }
+        return true;
+    }
+}
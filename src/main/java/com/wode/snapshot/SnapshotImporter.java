@@ -0,0 +1,95 @@
+package com.wode.snapshot;
+
+import com.wode.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 从快照文件导入 按数据块并行管道执行RESTORE
+ * 同时在途的数据块数量有上限, 内存占用和文件大小无关
+ */
+@Component
+public class SnapshotImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotImporter.class);
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${redis.snapshot.parallelism:4}")
+    private int parallelism;
+
+    @Value("${redis.snapshot.max-in-flight:8}")
+    private int maxInFlight;
+
+    @Value("${redis.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * 导入
+     *
+     * @param file    快照文件
+     * @param replace 键已存在时是否覆盖 为false时已存在的键会导致该块失败
+     * @return 导入的键数量
+     */
+    public long importFile(Path file, boolean replace) throws IOException, InterruptedException {
+        AtomicLong imported = new AtomicLong();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ExecutorService executor = VirtualThreads.newExecutor(virtualThreads, parallelism, "redis-snapshot-import");
+        Semaphore window = new Semaphore(maxInFlight);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean compressed = SnapshotFormat.readHeader(channel);
+            List<SnapshotEntry> block;
+            while (failure.get() == null && (block = SnapshotFormat.readBlock(channel, compressed)) != null) {
+                window.acquire();
+                List<SnapshotEntry> entries = block;
+                executor.execute(() -> {
+                    try {
+                        restore(entries, replace);
+                        imported.addAndGet(entries.size());
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        window.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        if (failure.get() != null) {
+            throw new IOException("snapshot import failed after " + imported.get() + " keys", failure.get());
+        }
+        log.info("imported {} keys from {}", imported.get(), file);
+        return imported.get();
+    }
+
+    private void restore(List<SnapshotEntry> entries, boolean replace) {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            for (SnapshotEntry entry : entries) {
+                long ttl = entry.getPttl() > 0 ? entry.getPttl() : 0;
+                connection.keyCommands().restore(entry.getKey(), ttl, entry.getDump(), replace);
+            }
+            connection.closePipeline();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,302 @@
+package com.wode.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按访问频率调整过期时间
+ * 以逻辑键第一个 ':' 之前的部分为命名空间, 统计每个命名空间的读取次数和带过期时间的写入次数, 计数器按半衰期衰减;
+ * 复用率(衰减后的读取/写入, 即每写入一次平均被读几次)高于 hot-reuse 的命名空间过期时间放大到 max-factor 倍,
+ * 低于 cold-reuse 的缩小到 min-factor 倍, 中间按对数插值. 调整后的时间限制在 [min-seconds, max-seconds] 内,
+ * 但不会把调用方给的时间往相反方向推; 永久键(时间小于等于0)、样本不足的命名空间和 exclude-prefixes 匹配的键不调整
+ * 调整的写入: RedisTemplateUtil/StringRedisTemplateUtil 的 set、expire、Bound 操作的过期时间, 以及 RedisTemplateUtil 的 sSet 和集合运算结果;
+ * setIfAbsent/setIfPresent(SET NX/XX, 锁的获取和续期)不调整, 锁的过期时间必须与调用方的预期一致
+ * report 给出每个命名空间的命中率和按 Little 定律(写入速率 × 平均过期时间 × 平均值大小)估算的常驻内存
+ */
+@Component
+public class AdaptiveTtlPolicy {
+
+    private static final String OTHER = "*";
+
+    private static final String NO_NAMESPACE = "_";
+
+    private static final double LN2 = Math.log(2);
+
+    private static final class Stats {
+
+        final LongAdder windowReads = new LongAdder();
+
+        final LongAdder windowWrites = new LongAdder();
+
+        final LongAdder hits = new LongAdder();
+
+        final LongAdder misses = new LongAdder();
+
+        final LongAdder writes = new LongAdder();
+
+        final LongAdder sizedWrites = new LongAdder();
+
+        final LongAdder valueBytes = new LongAdder();
+
+        final LongAdder requestedMillis = new LongAdder();
+
+        final LongAdder adaptiveMillis = new LongAdder();
+
+        /**
+         * 衰减后的计数 只由衰减线程写
+         */
+        volatile double reads;
+
+        volatile double ttlWrites;
+
+        volatile double factor = 1;
+    }
+
+    @Value("${redis.adaptive-ttl.enabled:false}")
+    private boolean enabled;
+
+    @Value("${redis.adaptive-ttl.min-factor:0.5}")
+    private double minFactor;
+
+    @Value("${redis.adaptive-ttl.max-factor:4}")
+    private double maxFactor;
+
+    @Value("${redis.adaptive-ttl.min-seconds:60}")
+    private long minSeconds;
+
+    @Value("${redis.adaptive-ttl.max-seconds:86400}")
+    private long maxSeconds;
+
+    @Value("${redis.adaptive-ttl.cold-reuse:1}")
+    private double coldReuse;
+
+    @Value("${redis.adaptive-ttl.hot-reuse:16}")
+    private double hotReuse;
+
+    @Value("${redis.adaptive-ttl.half-life-seconds:300}")
+    private long halfLifeSeconds;
+
+    @Value("${redis.adaptive-ttl.decay-interval-ms:5000}")
+    private long decayInterval;
+
+    @Value("${redis.adaptive-ttl.min-samples:100}")
+    private long minSamples;
+
+    @Value("${redis.adaptive-ttl.max-namespaces:1000}")
+    private int maxNamespaces;
+
+    @Value("${redis.adaptive-ttl.exclude-prefixes:lock:}")
+    private String excludePrefixes;
+
+    private List<String> excluded = Collections.emptyList();
+
+    private final Map<String, Stats> namespaces = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        excluded = new ArrayList<>(StringUtils.commaDelimitedListToSet(excludePrefixes));
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-adaptive-ttl");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::decay, decayInterval, decayInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 登记一次读取
+     *
+     * @param key 键
+     * @param hit 是否命中
+     */
+    public void recordRead(String key, boolean hit) {
+        if (!enabled || key == null) {
+            return;
+        }
+        Stats stats = stats(key);
+        stats.windowReads.increment();
+        (hit ? stats.hits : stats.misses).increment();
+    }
+
+    /**
+     * 调整后的过期时间
+     *
+     * @param key  键
+     * @param time 调用方给的时间(秒) 小于等于0为永久, 不调整
+     * @return 时间(秒)
+     */
+    public long ttl(String key, long time) {
+        return ttl(key, time, TimeUnit.SECONDS, -1);
+    }
+
+    /**
+     * 调整后的过期时间 同时登记值的大小, 用于估算内存
+     *
+     * @param key       键
+     * @param time      调用方给的时间(秒)
+     * @param sizeBytes 值的大小 未知时传-1
+     * @return 时间(秒)
+     */
+    public long ttl(String key, long time, long sizeBytes) {
+        return ttl(key, time, TimeUnit.SECONDS, sizeBytes);
+    }
+
+    /**
+     * 调整后的过期时间
+     *
+     * @param key     键
+     * @param timeout 调用方给的时间
+     * @param unit    时间单位 返回值的单位与之相同
+     * @return 时间
+     */
+    public long ttl(String key, long timeout, TimeUnit unit) {
+        return ttl(key, timeout, unit, -1);
+    }
+
+    private long ttl(String key, long timeout, TimeUnit unit, long sizeBytes) {
+        if (!enabled || key == null || timeout <= 0 || excluded(key)) {
+            return timeout;
+        }
+        Stats stats = stats(key);
+        long requested = unit.toMillis(timeout);
+        long adaptive = Math.round(requested * stats.factor);
+        // 上下限只约束调整的幅度, 调用方本来就超出范围的时间保持不变
+        long lower = Math.min(requested, TimeUnit.SECONDS.toMillis(minSeconds));
+        long upper = Math.max(requested, TimeUnit.SECONDS.toMillis(maxSeconds));
+        adaptive = Math.max(lower, Math.min(upper, adaptive));
+
+        stats.windowWrites.increment();
+        stats.writes.increment();
+        stats.requestedMillis.add(requested);
+        stats.adaptiveMillis.add(adaptive);
+        if (sizeBytes >= 0) {
+            stats.sizedWrites.increment();
+            stats.valueBytes.add(sizeBytes);
+        }
+        return Math.max(1, unit.convert(adaptive, TimeUnit.MILLISECONDS));
+    }
+
+    private boolean excluded(String key) {
+        for (String prefix : excluded) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 衰减计数器并重新计算每个命名空间的系数
+     */
+    public void decay() {
+        double retain = Math.pow(0.5, (double) decayInterval / TimeUnit.SECONDS.toMillis(halfLifeSeconds));
+        for (Stats stats : namespaces.values()) {
+            long reads = stats.windowReads.sumThenReset();
+            long writes = stats.windowWrites.sumThenReset();
+            stats.reads = stats.reads * retain + reads;
+            stats.ttlWrites = stats.ttlWrites * retain + writes;
+            stats.factor = factor(stats);
+        }
+    }
+
+    private double factor(Stats stats) {
+        if (stats.reads + stats.ttlWrites < minSamples) {
+            return 1;
+        }
+        double reuse = stats.reads / Math.max(1, stats.ttlWrites);
+        if (reuse <= coldReuse) {
+            return minFactor;
+        }
+        if (reuse >= hotReuse) {
+            return maxFactor;
+        }
+        double position = Math.log(reuse / coldReuse) / Math.log(hotReuse / coldReuse);
+        return Math.exp(Math.log(minFactor) + position * (Math.log(maxFactor) - Math.log(minFactor)));
+    }
+
+    /**
+     * 每个命名空间的命中率与内存估算
+     * 常驻内存按稳态写入速率(衰减计数 × ln2 / 半衰期)估算, 没有计入覆盖写和主动删除, 是上限
+     */
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        long requestedBytes = 0;
+        long adaptiveBytes = 0;
+        Map<String, Object> details = new TreeMap<>();
+        for (Map.Entry<String, Stats> entry : namespaces.entrySet()) {
+            Stats stats = entry.getValue();
+            long hits = stats.hits.sum();
+            long misses = stats.misses.sum();
+            long writes = stats.writes.sum();
+            long sizedWrites = stats.sizedWrites.sum();
+            double avgBytes = sizedWrites == 0 ? 0 : (double) stats.valueBytes.sum() / sizedWrites;
+            double avgRequested = writes == 0 ? 0 : stats.requestedMillis.sum() / 1000.0 / writes;
+            double avgAdaptive = writes == 0 ? 0 : stats.adaptiveMillis.sum() / 1000.0 / writes;
+            double writeRate = stats.ttlWrites * LN2 / halfLifeSeconds;
+            long namespaceRequested = Math.round(writeRate * avgRequested * avgBytes);
+            long namespaceAdaptive = Math.round(writeRate * avgAdaptive * avgBytes);
+            requestedBytes += namespaceRequested;
+            adaptiveBytes += namespaceAdaptive;
+
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("hits", hits);
+            detail.put("misses", misses);
+            detail.put("hitRatio", hits + misses == 0 ? null : (double) hits / (hits + misses));
+            detail.put("writes", writes);
+            detail.put("reuse", stats.reads / Math.max(1, stats.ttlWrites));
+            detail.put("factor", stats.factor);
+            detail.put("avgRequestedSeconds", avgRequested);
+            detail.put("avgAdaptiveSeconds", avgAdaptive);
+            detail.put("avgValueBytes", avgBytes);
+            detail.put("estimatedBytesRequested", namespaceRequested);
+            detail.put("estimatedBytesAdaptive", namespaceAdaptive);
+            details.put(entry.getKey(), detail);
+        }
+        report.put("estimatedBytesRequested", requestedBytes);
+        report.put("estimatedBytesAdaptive", adaptiveBytes);
+        report.put("namespaces", details);
+        return report;
+    }
+
+    private Stats stats(String key) {
+        int colon = key.indexOf(':');
+        String namespace = colon > 0 ? key.substring(0, colon) : NO_NAMESPACE;
+        Stats stats = namespaces.get(namespace);
+        if (stats != null) {
+            return stats;
+        }
+        // 命名空间由调用方的键决定, 数量超过上限后合并统计, 避免无界增长
+        if (namespaces.size() >= maxNamespaces) {
+            namespace = OTHER;
+        }
+        return namespaces.computeIfAbsent(namespace, n -> new Stats());
+    }
+}
@@ -0,0 +1,207 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 单键读请求自动攒批
+ * 多个线程的 GET/HGET/ZSCORE 请求先放入队列, 最多等待 maxDelay 或攒够 maxBatch 个后一次发送:
+ * 全部为GET时用一条MGET, 否则用管道. 以很小且有上限的延迟换取高并发下的吞吐
+ * 键在调用方线程编码(包含租户前缀), 批次在后台线程执行
+ */
+public class AutoBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(AutoBatcher.class);
+
+    private enum Command {
+        GET, HGET, ZSCORE
+    }
+
+    private static class Request {
+
+        final Command command;
+
+        final byte[] key;
+
+        final byte[] arg;
+
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Request(Command command, byte[] key, byte[] arg) {
+            this.command = command;
+            this.key = key;
+            this.arg = arg;
+        }
+    }
+
+    private final RedisTemplate<?, ?> redisTemplate;
+
+    private final int maxBatch;
+
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    private final ExecutorService executor;
+
+    private final Thread collector;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param redisTemplate    执行批次的模板
+     * @param maxBatch         每批最多的命令数
+     * @param maxDelayMicros   第一个请求最多等待的时间(微秒)
+     * @param parallelism      同时执行的批次数
+     * @param virtualThreads   是否在虚拟线程上执行批次
+     */
+    public AutoBatcher(RedisTemplate<?, ?> redisTemplate, int maxBatch, long maxDelayMicros, int parallelism, boolean virtualThreads) {
+        this.redisTemplate = redisTemplate;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.executor = VirtualThreads.newExecutor(virtualThreads, parallelism, "redis-auto-batch");
+        this.collector = new Thread(this::collect, "redis-auto-batch-collector");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    public CompletableFuture<Object> get(byte[] key) {
+        return submit(new Request(Command.GET, key, null));
+    }
+
+    public CompletableFuture<Object> hget(byte[] key, byte[] field) {
+        return submit(new Request(Command.HGET, key, field));
+    }
+
+    public CompletableFuture<Object> zScore(byte[] key, byte[] member) {
+        return submit(new Request(Command.ZSCORE, key, member));
+    }
+
+    /**
+     * 停止攒批 正在攒的批次和队列中剩余的请求会在关闭前发送, 关闭后提交的请求直接失败
+     */
+    public void close() {
+        running = false;
+        collector.interrupt();
+        try {
+            collector.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Request> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            execute(rest);
+        }
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Object> submit(Request request) {
+        if (!running) {
+            request.future.completeExceptionally(new IllegalStateException("auto batcher closed"));
+            return request.future;
+        }
+        queue.add(request);
+        // close 可能在检查之后已经取完队列, 还能从队列移除说明没有人会再处理它
+        if (!running && queue.remove(request)) {
+            request.future.completeExceptionally(new IllegalStateException("auto batcher closed"));
+        }
+        return request.future;
+    }
+
+    private void collect() {
+        while (running) {
+            List<Request> batch = new ArrayList<>(maxBatch);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                // 已经从队列取出的请求不会再被 close 取到, 在这里发送
+                if (!batch.isEmpty()) {
+                    dispatch(batch);
+                }
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(List<Request> batch) {
+        try {
+            executor.execute(() -> execute(batch));
+        } catch (RejectedExecutionException e) {
+            // close 等待超时后线程池已关闭
+            execute(batch);
+        }
+    }
+
+    private void execute(List<Request> batch) {
+        try {
+            List<?> results = allGets(batch) ? mGet(batch) : pipeline(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results.get(i));
+            }
+        } catch (Exception e) {
+            log.warn("redis auto batch of {} failed", batch.size(), e);
+            batch.forEach(request -> request.future.completeExceptionally(e));
+        }
+    }
+
+    private boolean allGets(List<Request> batch) {
+        for (Request request : batch) {
+            if (request.command != Command.GET) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<byte[]> mGet(List<Request> batch) {
+        byte[][] keys = new byte[batch.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = batch.get(i).key;
+        }
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(keys));
+    }
+
+    private List<Object> pipeline(List<Request> batch) {
+        return redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            for (Request request : batch) {
+                switch (request.command) {
+                    case HGET:
+                        connection.hashCommands().hGet(request.key, request.arg);
+                        break;
+                    case ZSCORE:
+                        connection.zSetCommands().zScore(request.key, request.arg);
+                        break;
+                    default:
+                        connection.stringCommands().get(request.key);
+                }
+            }
+            return connection.closePipeline();
+        });
+    }
+}
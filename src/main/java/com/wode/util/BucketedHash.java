@@ -0,0 +1,219 @@
+package com.wode.util;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.*;
+
+/**
+ * 拆分到N个物理hash的逻辑hash
+ * 项按hash值分配到 key:0 ~ key:(N-1), 每个物理hash的项数保持在 listpack 编码阈值(默认128)以内,
+ * 比一个巨大的hashtable编码更省内存, 也避免单个大key
+ */
+public class BucketedHash {
+
+    /**
+     * Redis hash-max-listpack-entries 默认值
+     */
+    public static final int LISTPACK_MAX_ENTRIES = 128;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisCommandSupport commands;
+
+    private final String key;
+
+    private final int buckets;
+
+    BucketedHash(RedisTemplate<String, Object> redisTemplate, RedisCommandSupport commands, String key, int buckets) {
+        this.redisTemplate = redisTemplate;
+        this.commands = commands;
+        this.key = key;
+        this.buckets = buckets;
+    }
+
+    /**
+     * 按预计项数估算物理hash数量
+     *
+     * @param expectedSize        预计项数
+     * @param maxEntriesPerBucket 每个物理hash的最大项数
+     */
+    public static int bucketsFor(long expectedSize, int maxEntriesPerBucket) {
+        return (int) Math.max(1, (expectedSize + maxEntriesPerBucket - 1) / maxEntriesPerBucket);
+    }
+
+    public String bucketKey(String field) {
+        return key + ":" + ((field.hashCode() & 0x7fffffff) % buckets);
+    }
+
+    public Object get(String field) {
+        return redisTemplate.opsForHash().get(bucketKey(field), field);
+    }
+
+    public void put(String field, Object value) {
+        redisTemplate.opsForHash().put(bucketKey(field), field, value);
+    }
+
+    /**
+     * 批量写入 按物理hash分组后一个管道发送
+     */
+    public void putAll(Map<String, ?> values) {
+        Map<String, Map<String, Object>> grouped = new HashMap<>();
+        values.forEach((field, value) -> grouped.computeIfAbsent(bucketKey(field), k -> new LinkedHashMap<>()).put(field, value));
+        RedisSerializer<String> keySerializer = keySerializer();
+        RedisSerializer<Object> fieldSerializer = hashKeySerializer();
+        RedisSerializer<Object> valueSerializer = hashValueSerializer();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            grouped.forEach((bucketKey, fields) -> {
+                Map<byte[], byte[]> raw = new LinkedHashMap<>(fields.size());
+                fields.forEach((field, value) -> raw.put(fieldSerializer.serialize(field), valueSerializer.serialize(value)));
+                connection.hashCommands().hMSet(keySerializer.serialize(bucketKey), raw);
+            });
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    /**
+     * 批量读取 按物理hash分组后一个管道发送HMGET
+     *
+     * @return 项 -> 值, 不存在的项不包含在结果中
+     */
+    public Map<String, Object> multiGet(Collection<String> fields) {
+        Map<String, List<String>> grouped = new LinkedHashMap<>();
+        fields.forEach(field -> grouped.computeIfAbsent(bucketKey(field), k -> new ArrayList<>()).add(field));
+        RedisSerializer<String> keySerializer = keySerializer();
+        RedisSerializer<Object> fieldSerializer = hashKeySerializer();
+        RedisSerializer<Object> valueSerializer = hashValueSerializer();
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            grouped.forEach((bucketKey, bucketFields) -> {
+                byte[][] raw = new byte[bucketFields.size()][];
+                for (int i = 0; i < raw.length; i++) {
+                    raw[i] = fieldSerializer.serialize(bucketFields.get(i));
+                }
+                connection.hashCommands().hMGet(keySerializer.serialize(bucketKey), raw);
+            });
+            return connection.closePipeline();
+        });
+        Map<String, Object> result = new LinkedHashMap<>(fields.size());
+        Iterator<Object> replyIt = replies.iterator();
+        for (List<String> bucketFields : grouped.values()) {
+            @SuppressWarnings("unchecked")
+            List<byte[]> values = (List<byte[]>) replyIt.next();
+            for (int i = 0; i < bucketFields.size(); i++) {
+                byte[] value = values.get(i);
+                if (value != null) {
+                    result.put(bucketFields.get(i), valueSerializer.deserialize(value));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量删除 按物理hash分组后一个管道发送HDEL
+     */
+    public void remove(String... fields) {
+        Map<String, List<String>> grouped = new HashMap<>();
+        for (String field : fields) {
+            grouped.computeIfAbsent(bucketKey(field), k -> new ArrayList<>()).add(field);
+        }
+        RedisSerializer<String> keySerializer = keySerializer();
+        RedisSerializer<Object> fieldSerializer = hashKeySerializer();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            grouped.forEach((bucketKey, bucketFields) -> {
+                byte[][] raw = new byte[bucketFields.size()][];
+                for (int i = 0; i < raw.length; i++) {
+                    raw[i] = fieldSerializer.serialize(bucketFields.get(i));
+                }
+                connection.hashCommands().hDel(keySerializer.serialize(bucketKey), raw);
+            });
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    /**
+     * 总项数 一个管道发送所有HLEN
+     */
+    public long size() {
+        RedisSerializer<String> keySerializer = keySerializer();
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            for (int i = 0; i < buckets; i++) {
+                connection.hashCommands().hLen(keySerializer.serialize(key + ":" + i));
+            }
+            return connection.closePipeline();
+        });
+        long size = 0;
+        for (Object reply : replies) {
+            size += reply == null ? 0 : (Long) reply;
+        }
+        return size;
+    }
+
+    /**
+     * 给所有物理hash设置过期时间 一个管道发送所有EXPIRE
+     */
+    public void expire(long seconds) {
+        RedisSerializer<String> keySerializer = keySerializer();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            for (int i = 0; i < buckets; i++) {
+                connection.keyCommands().expire(keySerializer.serialize(key + ":" + i), seconds);
+            }
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    /**
+     * 惰性遍历所有物理hash 每页一次独立的HSCAN, 不占用连接
+     */
+    public Iterator<Map.Entry<String, Object>> iterator(long count) {
+        return new Iterator<Map.Entry<String, Object>>() {
+
+            private int bucket = -1;
+
+            private ScanIterator<Map.Entry<String, Object>, Map.Entry<String, Object>> current;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null || !current.hasNext()) {
+                    if (++bucket >= buckets) {
+                        return false;
+                    }
+                    current = LargeHashOps.hscan(redisTemplate, commands, key + ":" + bucket, null, count);
+                }
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<String> keySerializer() {
+        return (RedisSerializer<String>) redisTemplate.getKeySerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> hashKeySerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> hashValueSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+    }
+}
@@ -0,0 +1,151 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 熔断器 按最近 windowSize 次调用的失败率判断
+ * CLOSED 正常放行; 失败率超过阈值后 OPEN, 在 openMillis 内直接拒绝;
+ * 之后进入 HALF_OPEN 只放行一次试探调用, 成功则恢复 CLOSED, 失败重新 OPEN
+ * 试探调用按线程识别, onSuccess/onFailure/onIgnored 要在调用 tryAcquire 的线程上调用;
+ * 半开时打开前发出的调用迟到的结果不影响状态
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final boolean[] window;
+
+    private final int minimumCalls;
+
+    private final double failureRateThreshold;
+
+    private final long openMillis;
+
+    /**
+     * 半开状态下执行试探调用的线程
+     */
+    private final AtomicReference<Thread> trial = new AtomicReference<>();
+
+    private int index;
+
+    private int calls;
+
+    private int failures;
+
+    private volatile State state = State.CLOSED;
+
+    private volatile long openedAt;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold, long openMillis) {
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 是否允许调用 返回true后必须调用 onSuccess 或 onFailure
+     */
+    public boolean tryAcquire() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            synchronized (this) {
+                if (state == State.OPEN) {
+                    transition(State.HALF_OPEN);
+                }
+            }
+        }
+        return trial.compareAndSet(null, Thread.currentThread());
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (trial.get() == Thread.currentThread()) {
+                reset();
+                transition(State.CLOSED);
+                trial.set(null);
+            }
+        } else {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            if (trial.get() == Thread.currentThread()) {
+                open();
+                trial.set(null);
+            }
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+            open();
+        }
+    }
+
+    /**
+     * 放弃本次调用(如舱壁已满未真正执行), 不计入统计
+     */
+    public void onIgnored() {
+        trial.compareAndSet(Thread.currentThread(), null);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 当前窗口内的失败率
+     */
+    public synchronized double getFailureRate() {
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[index]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[index] = failed;
+        if (failed) {
+            failures++;
+        }
+        index = (index + 1) % window.length;
+    }
+
+    private void open() {
+        openedAt = System.currentTimeMillis();
+        transition(State.OPEN);
+    }
+
+    private void reset() {
+        index = 0;
+        calls = 0;
+        failures = 0;
+    }
+
+    private void transition(State next) {
+        log.warn("circuit breaker {} {} -> {}", name, state, next);
+        state = next;
+    }
+}
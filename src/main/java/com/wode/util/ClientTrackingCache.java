@@ -0,0 +1,439 @@
+package com.wode.util;
+
+import com.wode.resp.RespClient;
+import com.wode.resp.RespPush;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 RESP3 CLIENT TRACKING 的进程内缓存
+ * 未命中时通过开启了跟踪的专用连接读取, 服务端在键被修改时推送 invalidate 消息, 收到后精确删除本地缓存
+ * DEFAULT 模式服务端只跟踪本连接读过的键; BCAST 模式按前缀广播, 只缓存匹配前缀的键
+ * 连接断开期间不可用并清空缓存, 后台定时重连
+ * 加载结果只在加载期间没有收到失效消息时写入缓存, 检查和写入在 loading 的同一个原子操作里完成;
+ * DEFAULT 模式的跟踪是一次性的, 漏掉的失效消息不会再来, 所以不能先检查再写入
+ * maxEntries 按字符串键数加hash字段数计算
+ */
+public class ClientTrackingCache implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientTrackingCache.class);
+
+    public enum Mode {
+        DEFAULT, BCAST
+    }
+
+    /**
+     * 缓存键不存在的结果
+     */
+    private static final Object NULL = new Object();
+
+    private final String host;
+
+    private final int port;
+
+    private final String password;
+
+    private final int database;
+
+    private final Mode mode;
+
+    private final List<byte[]> prefixes = new ArrayList<>();
+
+    private final int maxEntries;
+
+    private final long timeoutMillis;
+
+    private final Map<ByteBuffer, Object> values = new ConcurrentHashMap<>();
+
+    private final Map<ByteBuffer, Map<ByteBuffer, Object>> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * 正在加载的键, 加载期间收到失效消息时丢弃加载结果
+     */
+    private final Map<ByteBuffer, Object> loading = new ConcurrentHashMap<>();
+
+    /**
+     * hashes 中的字段总数
+     */
+    private final AtomicInteger hashFields = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private ScheduledExecutorService reconnector;
+
+    private volatile RespClient client;
+
+    private volatile boolean available;
+
+    /**
+     * 首次连接已结束(无论成败) 之后的重连由后台慢慢重试, 不再让调用方等待
+     */
+    private volatile boolean attempted;
+
+    /**
+     * @param prefixes      需要缓存的键前缀(含环境前缀) 为空时缓存所有键
+     * @param maxEntries    最多缓存的键数
+     * @param timeoutMillis 读取超时
+     */
+    public ClientTrackingCache(String host, int port, String password, int database, Mode mode,
+                               Collection<String> prefixes, int maxEntries, long timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.database = database;
+        this.mode = mode;
+        prefixes.forEach(prefix -> this.prefixes.add(prefix.getBytes(StandardCharsets.UTF_8)));
+        this.maxEntries = maxEntries;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 建立跟踪连接 失败时后台重试
+     */
+    public void start() {
+        reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-tracking-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconnector.scheduleWithFixedDelay(() -> {
+            if (!available) {
+                connect();
+            }
+        }, 0, 5, TimeUnit.SECONDS);
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * 等待首次连接结束 未调用 start 或首次连接失败(服务端不支持 HELLO 3/CLIENT TRACKING 等)时立即返回
+     *
+     * @return 是否可用
+     */
+    public boolean awaitAvailable(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (reconnector != null && !available && !attempted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        return available;
+    }
+
+    /**
+     * 预加载 通过跟踪连接一次发出所有GET(管道), 加载后的键同样会收到失效通知
+     *
+     * @param rawKeys 键 不在跟踪范围内或已缓存的跳过
+     * @return 加载的键数
+     */
+    public int preload(List<byte[]> rawKeys) {
+        RespClient current = client;
+        if (current == null || !available) {
+            return 0;
+        }
+        byte[] get = "GET".getBytes(StandardCharsets.US_ASCII);
+        List<ByteBuffer> keys = new ArrayList<>(rawKeys.size());
+        List<Object> tokens = new ArrayList<>(rawKeys.size());
+        List<CompletableFuture<Object>> futures = new ArrayList<>(rawKeys.size());
+        for (byte[] rawKey : rawKeys) {
+            ByteBuffer key = ByteBuffer.wrap(rawKey);
+            if (!cacheable(rawKey) || values.containsKey(key)) {
+                continue;
+            }
+            Object token = new Object();
+            loading.put(key, token);
+            keys.add(key);
+            tokens.add(token);
+            futures.add(current.send(get, rawKey));
+        }
+        int loaded = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            byte[] value;
+            try {
+                value = (byte[]) await(futures.get(i));
+            } catch (RuntimeException e) {
+                loading.remove(keys.get(i), tokens.get(i));
+                continue;
+            }
+            if (value == null) {
+                loading.remove(keys.get(i), tokens.get(i));
+                continue;
+            }
+            ByteBuffer key = keys.get(i);
+            evictIfFull();
+            if (publish(key, tokens.get(i), () -> values.put(key, value))) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 键是否在跟踪范围内
+     */
+    public boolean cacheable(byte[] rawKey) {
+        if (prefixes.isEmpty()) {
+            return true;
+        }
+        for (byte[] prefix : prefixes) {
+            if (startsWith(rawKey, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * GET 优先读本地缓存
+     */
+    public byte[] get(byte[] rawKey) {
+        ByteBuffer key = ByteBuffer.wrap(rawKey);
+        Object cached = values.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached == NULL ? null : (byte[]) cached;
+        }
+        misses.increment();
+        Object token = new Object();
+        loading.put(key, token);
+        byte[] value;
+        try {
+            value = (byte[]) call("GET".getBytes(StandardCharsets.US_ASCII), rawKey);
+        } catch (RuntimeException e) {
+            loading.remove(key, token);
+            throw e;
+        }
+        evictIfFull();
+        publish(key, token, () -> values.put(key, value == null ? NULL : value));
+        return value;
+    }
+
+    /**
+     * HGET 优先读本地缓存 整个hash在任一项修改时失效
+     */
+    public byte[] hget(byte[] rawKey, byte[] rawField) {
+        ByteBuffer key = ByteBuffer.wrap(rawKey);
+        ByteBuffer field = ByteBuffer.wrap(rawField);
+        Map<ByteBuffer, Object> fields = hashes.get(key);
+        Object cached = fields == null ? null : fields.get(field);
+        if (cached != null) {
+            hits.increment();
+            return cached == NULL ? null : (byte[]) cached;
+        }
+        misses.increment();
+        Object token = new Object();
+        loading.put(key, token);
+        byte[] value;
+        try {
+            value = (byte[]) call("HGET".getBytes(StandardCharsets.US_ASCII), rawKey, rawField);
+        } catch (RuntimeException e) {
+            loading.remove(key, token);
+            throw e;
+        }
+        evictIfFull();
+        publish(key, token, () -> hashes.compute(key, (k, cachedFields) -> {
+            Map<ByteBuffer, Object> target = cachedFields == null ? new ConcurrentHashMap<>() : cachedFields;
+            if (target.put(field, value == null ? NULL : value) == null) {
+                hashFields.incrementAndGet();
+            }
+            return target;
+        }));
+        return value;
+    }
+
+    /**
+     * 只读本地缓存 不访问Redis, 用于熔断时的降级
+     */
+    public byte[] peek(byte[] rawKey) {
+        Object cached = values.get(ByteBuffer.wrap(rawKey));
+        return cached == null || cached == NULL ? null : (byte[]) cached;
+    }
+
+    /**
+     * 本进程写入后立即失效, 不等服务端推送, 保证写后读一致
+     */
+    public void invalidate(byte[] rawKey) {
+        ByteBuffer key = ByteBuffer.wrap(rawKey);
+        loading.remove(key);
+        values.remove(key);
+        removeHash(key);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("available", available);
+        stats.put("mode", mode);
+        stats.put("size", values.size() + hashFields.get());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        if (reconnector != null) {
+            reconnector.shutdownNow();
+        }
+        available = false;
+        RespClient current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void connect() {
+        RespClient connection = null;
+        try {
+            connection = new RespClient(host, port, (int) timeoutMillis, this::onPush, this::onClose);
+            client = connection;
+            List<String> hello = new ArrayList<>(Arrays.asList("HELLO", "3"));
+            if (password != null && !password.isEmpty()) {
+                hello.addAll(Arrays.asList("AUTH", "default", password));
+            }
+            await(connection.send(hello.toArray(new String[0])));
+            if (database != 0) {
+                await(connection.send("SELECT", String.valueOf(database)));
+            }
+            List<byte[]> tracking = new ArrayList<>();
+            for (String arg : new String[]{"CLIENT", "TRACKING", "on"}) {
+                tracking.add(arg.getBytes(StandardCharsets.US_ASCII));
+            }
+            if (mode == Mode.BCAST) {
+                tracking.add("BCAST".getBytes(StandardCharsets.US_ASCII));
+                for (byte[] prefix : prefixes) {
+                    tracking.add("PREFIX".getBytes(StandardCharsets.US_ASCII));
+                    tracking.add(prefix);
+                }
+            }
+            await(connection.send(tracking.toArray(new byte[0][])));
+            clear();
+            available = true;
+            log.info("redis client tracking enabled in {} mode", mode);
+        } catch (Exception e) {
+            log.warn("redis client tracking unavailable: {}", e.getMessage());
+            if (connection != null) {
+                connection.close();
+            }
+        } finally {
+            attempted = true;
+        }
+    }
+
+    private void onPush(RespPush push) {
+        if (!"invalidate".equals(push.getKind())) {
+            return;
+        }
+        Object keys = push.getItems().size() > 1 ? push.getItems().get(1) : null;
+        invalidations.increment();
+        if (keys == null) {
+            // FLUSHDB/FLUSHALL 或服务端内存不足时清空
+            clear();
+            return;
+        }
+        for (Object key : (List<?>) keys) {
+            invalidate((byte[]) key);
+        }
+    }
+
+    private void onClose() {
+        available = false;
+        clear();
+    }
+
+    private Object call(byte[]... args) {
+        RespClient current = client;
+        if (current == null || !available) {
+            throw new IllegalStateException("redis client tracking unavailable");
+        }
+        return await(current.send(args));
+    }
+
+    private Object await(CompletableFuture<Object> future) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("redis client tracking timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 加载期间没有收到失效消息(token 仍是自己的)时写入缓存
+     * 失效处理先移除 loading 再删除缓存, 与这里在同一个键上互斥, 写入的值要么不发生要么随后被删除
+     *
+     * @return 是否写入
+     */
+    private boolean publish(ByteBuffer key, Object token, Runnable store) {
+        boolean[] stored = new boolean[1];
+        loading.computeIfPresent(key, (k, current) -> {
+            if (current != token) {
+                return current;
+            }
+            store.run();
+            stored[0] = true;
+            return null;
+        });
+        return stored[0];
+    }
+
+    private void removeHash(ByteBuffer key) {
+        Map<ByteBuffer, Object> removed = hashes.remove(key);
+        if (removed != null) {
+            hashFields.addAndGet(-removed.size());
+        }
+    }
+
+    private void evictIfFull() {
+        if (values.size() + hashFields.get() < maxEntries) {
+            return;
+        }
+        if (!values.isEmpty()) {
+            Iterator<ByteBuffer> it = values.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+            return;
+        }
+        Iterator<ByteBuffer> it = hashes.keySet().iterator();
+        if (it.hasNext()) {
+            removeHash(it.next());
+        }
+    }
+
+    private void clear() {
+        loading.clear();
+        values.clear();
+        hashes.keySet().forEach(this::removeHash);
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix) {
+        if (value.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (value[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
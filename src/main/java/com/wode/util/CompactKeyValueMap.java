@@ -0,0 +1,115 @@
+package com.wode.util;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 用分桶hash代替大量小字符串键
+ * id 映射到 namespace:{id/bucketSize} 这个hash的 id%bucketSize 项, 省掉每个键的元数据开销
+ * 只有在hash保持listpack编码时才省内存: bucketSize 不能超过服务端 hash-max-listpack-entries(默认128),
+ * 值的长度不能超过 hash-max-listpack-value(默认64字节), 需要更大的桶时先调大服务端配置
+ */
+public class CompactKeyValueMap {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final String namespace;
+
+    private final int bucketSize;
+
+    public CompactKeyValueMap(StringRedisTemplate redisTemplate, String namespace, int bucketSize) {
+        this.redisTemplate = redisTemplate;
+        this.namespace = namespace;
+        this.bucketSize = bucketSize;
+    }
+
+    public String bucketKey(long id) {
+        return namespace + ":" + id / bucketSize;
+    }
+
+    private String field(long id) {
+        return Long.toString(id % bucketSize);
+    }
+
+    public String get(long id) {
+        return (String) redisTemplate.opsForHash().get(bucketKey(id), field(id));
+    }
+
+    public void set(long id, String value) {
+        redisTemplate.opsForHash().put(bucketKey(id), field(id), value);
+    }
+
+    public void remove(long id) {
+        redisTemplate.opsForHash().delete(bucketKey(id), field(id));
+    }
+
+    /**
+     * 批量读取 按桶分组后一个管道发送HMGET
+     *
+     * @return id -> 值, 不存在的id不包含在结果中
+     */
+    public Map<Long, String> multiGet(Collection<Long> ids) {
+        Map<String, List<Long>> grouped = group(ids);
+        RedisSerializer<String> keySerializer = redisTemplate.getStringSerializer();
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            grouped.forEach((bucketKey, bucketIds) -> {
+                byte[][] fields = new byte[bucketIds.size()][];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = field(bucketIds.get(i)).getBytes(StandardCharsets.US_ASCII);
+                }
+                connection.hashCommands().hMGet(rawKey(bucketKey), fields);
+            });
+            return connection.closePipeline();
+        });
+        Map<Long, String> result = new LinkedHashMap<>(ids.size());
+        Iterator<Object> replyIt = replies.iterator();
+        for (List<Long> bucketIds : grouped.values()) {
+            @SuppressWarnings("unchecked")
+            List<byte[]> values = (List<byte[]>) replyIt.next();
+            for (int i = 0; i < bucketIds.size(); i++) {
+                byte[] value = values.get(i);
+                if (value != null) {
+                    result.put(bucketIds.get(i), keySerializer.deserialize(value));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入 按桶分组后一个管道发送HMSET
+     */
+    public void multiSet(Map<Long, String> values) {
+        Map<String, List<Long>> grouped = group(values.keySet());
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            grouped.forEach((bucketKey, bucketIds) -> {
+                Map<byte[], byte[]> raw = new LinkedHashMap<>(bucketIds.size());
+                for (Long id : bucketIds) {
+                    raw.put(field(id).getBytes(StandardCharsets.US_ASCII), values.get(id).getBytes(StandardCharsets.UTF_8));
+                }
+                connection.hashCommands().hMSet(rawKey(bucketKey), raw);
+            });
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    private Map<String, List<Long>> group(Collection<Long> ids) {
+        Map<String, List<Long>> grouped = new LinkedHashMap<>();
+        for (Long id : ids) {
+            grouped.computeIfAbsent(bucketKey(id), k -> new ArrayList<>()).add(id);
+        }
+        return grouped;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+}
@@ -0,0 +1,146 @@
+package com.wode.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 一致性哈希环 每个节点在环上放 virtualNodes 个虚拟节点, 键归属顺时针方向的第一个虚拟节点
+ * 增加一个节点时只有落在新虚拟节点上的键换节点(约 1/(N+1)), 其余键不动
+ * 键中含有非空的 {...} 时只对括号内的部分哈希, 与Redis Cluster的hash tag一致, 相关的键可以放到同一个节点
+ * 实例不可变, 增删节点返回新的环, 读取不需要加锁
+ *
+ * @param <T> 节点
+ */
+public final class ConsistentHashRing<T> {
+
+    private final int virtualNodes;
+
+    private final Map<String, T> nodes;
+
+    private final TreeMap<Long, String> ring;
+
+    public ConsistentHashRing(int virtualNodes) {
+        this(virtualNodes, Collections.emptyMap());
+    }
+
+    private ConsistentHashRing(int virtualNodes, Map<String, T> nodes) {
+        this.virtualNodes = virtualNodes;
+        this.nodes = Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+        this.ring = new TreeMap<>();
+        for (String name : nodes.keySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // 哈希冲突时按名字决定归属, 与节点加入的顺序无关
+                ring.merge(hash((name + "#" + i).getBytes(StandardCharsets.UTF_8)), name,
+                        (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    /**
+     * 增加节点
+     *
+     * @param name 节点名 决定虚拟节点在环上的位置, 同名节点在任何进程里位置都相同
+     * @param node 节点
+     * @return 新的环
+     */
+    public ConsistentHashRing<T> with(String name, T node) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate node " + name);
+        }
+        Map<String, T> copy = new LinkedHashMap<>(nodes);
+        copy.put(name, node);
+        return new ConsistentHashRing<>(virtualNodes, copy);
+    }
+
+    /**
+     * 移除节点
+     *
+     * @return 新的环
+     */
+    public ConsistentHashRing<T> without(String name) {
+        Map<String, T> copy = new LinkedHashMap<>(nodes);
+        copy.remove(name);
+        return new ConsistentHashRing<>(virtualNodes, copy);
+    }
+
+    /**
+     * 键所在的节点
+     *
+     * @param key 序列化后的键
+     * @return 节点 环为空时返回null
+     */
+    public T get(byte[] key) {
+        String name = nameOf(key);
+        return name == null ? null : nodes.get(name);
+    }
+
+    public String nameOf(byte[] key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(hashPart(key)));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    public Map<String, T> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * 每个节点占环的比例 用于检查虚拟节点数是否足够让分布均匀
+     */
+    public Map<String, Double> ownership() {
+        Map<String, Double> ownership = new TreeMap<>();
+        nodes.keySet().forEach(name -> ownership.put(name, 0.0));
+        Long previous = ring.isEmpty() ? null : ring.lastKey();
+        for (Map.Entry<Long, String> entry : ring.entrySet()) {
+            // 两个有符号long之差按无符号理解, 即环上的弧长; 只有一个虚拟节点时差为0, 弧长是整个环
+            double arc = ring.size() == 1 ? 18446744073709551616.0 : unsigned(entry.getKey() - previous);
+            ownership.merge(entry.getValue(), arc / 18446744073709551616.0, Double::sum);
+            previous = entry.getKey();
+        }
+        return ownership;
+    }
+
+    private static double unsigned(long value) {
+        return value >= 0 ? value : value + 18446744073709551616.0;
+    }
+
+    /**
+     * 参与hash的部分 第一个非空的 {...} 中的内容, 没有时为整个键
+     */
+    static byte[] hashPart(byte[] key) {
+        for (int open = 0; open < key.length; open++) {
+            if (key[open] == '{') {
+                for (int close = open + 1; close < key.length; close++) {
+                    if (key[close] == '}') {
+                        return close > open + 1 ? Arrays.copyOfRange(key, open + 1, close) : key;
+                    }
+                }
+                return key;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 64位FNV-1a 再经过 murmur3 的 fmix64 打散, 相近的输入在环上也分布均匀
+     */
+    static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
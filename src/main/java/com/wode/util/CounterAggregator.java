@@ -0,0 +1,325 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 高频计数器写合并
+ * incr/hincr/zsetIncr 先累加到本地的 LongAdder/DoubleAdder, 每隔 flush-interval-ms 用一个管道把增量写入Redis,
+ * 同一个键在一个周期内只产生一条命令. 进程异常退出最多丢失一个周期的增量, 正常关闭时会先写入
+ * 序列化方式与 RedisTemplateUtil 的 incr/hincr/zsetIncr 一致
+ */
+@Component
+public class CounterAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterAggregator.class);
+
+    /**
+     * 连续多少个周期没有增量后移除本地累加器
+     */
+    private static final int IDLE_FLUSHES = 10;
+
+    /**
+     * 浮点增量小于该值视为0 DoubleAdder 各单元分别累加, 加上相反数后可能剩下舍入误差
+     */
+    private static final double DOUBLE_EPSILON = 1e-9;
+
+    private enum Kind {
+        INCR, HINCR, ZINCR
+    }
+
+    private static final class Target {
+
+        final Kind kind;
+
+        final byte[] key;
+
+        final byte[] member;
+
+        final int hash;
+
+        Target(Kind kind, byte[] key, byte[] member) {
+            this.kind = kind;
+            this.key = key;
+            this.member = member;
+            this.hash = 31 * (31 * kind.hashCode() + Arrays.hashCode(key)) + Arrays.hashCode(member);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) o;
+            return kind == other.kind && Arrays.equals(key, other.key) && Arrays.equals(member, other.member);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Counter {
+
+        final LongAdder longs = new LongAdder();
+
+        final DoubleAdder doubles = new DoubleAdder();
+
+        int idle;
+    }
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private RedisKeyBuilder keyBuilder;
+
+    @Value("${redis.counter.flush-interval-ms:1000}")
+    private long flushInterval;
+
+    private final Map<Target, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 上个周期移除的累加器 再检查一次, 防止移除瞬间并发写入的增量丢失
+     */
+    private List<Map.Entry<Target, Counter>> removed = new ArrayList<>();
+
+    private final LongAdder accepted = new LongAdder();
+
+    private final LongAdder flushedCommands = new LongAdder();
+
+    private final LongAdder failedFlushes = new LongAdder();
+
+    private volatile long lastFlushMillis;
+
+    /**
+     * 不用 synchronized, 持锁期间有网络I/O, 虚拟线程调用时不会钉住载体线程
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(flushInterval * 2, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * 递增
+     *
+     * @param key   键
+     * @param delta 要增加几(大于0)
+     */
+    public void incr(String key, long delta) {
+        if (delta < 0) {
+            throw new RuntimeException("递增因子必须大于0");
+        }
+        if (direct()) {
+            redisTemplate.opsForValue().increment(key, delta);
+            return;
+        }
+        counter(new Target(Kind.INCR, rawKey(key), null)).longs.add(delta);
+    }
+
+    /**
+     * hash递增
+     *
+     * @param key  键
+     * @param item 项
+     * @param by   要增加几
+     */
+    public void hincr(String key, String item, double by) {
+        if (direct()) {
+            redisTemplate.opsForHash().increment(key, item, by);
+            return;
+        }
+        counter(new Target(Kind.HINCR, rawKey(key), serialize(redisTemplate.getHashKeySerializer(), item))).doubles.add(by);
+    }
+
+    /**
+     * 有序集合成员加分
+     *
+     * @param key   键
+     * @param value 成员
+     * @param delta 要增加的分数
+     */
+    public void zsetIncr(String key, String value, double delta) {
+        if (direct()) {
+            redisTemplate.opsForZSet().incrementScore(key, value, delta);
+            return;
+        }
+        counter(new Target(Kind.ZINCR, rawKey(key), serialize(redisTemplate.getValueSerializer(), value))).doubles.add(delta);
+    }
+
+    /**
+     * 把累积的增量写入Redis 失败的增量放回, 下个周期重试; 管道部分失败时只放回失败命令的增量
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLocked() {
+        long start = System.currentTimeMillis();
+        Map<Target, Counter> batch = new LinkedHashMap<>();
+        Map<Target, long[]> longDeltas = new HashMap<>();
+        Map<Target, double[]> doubleDeltas = new HashMap<>();
+
+        for (Map.Entry<Target, Counter> entry : removed) {
+            collect(entry.getKey(), entry.getValue(), batch, longDeltas, doubleDeltas);
+        }
+        removed = new ArrayList<>();
+        for (Iterator<Map.Entry<Target, Counter>> it = counters.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Target, Counter> entry = it.next();
+            if (!collect(entry.getKey(), entry.getValue(), batch, longDeltas, doubleDeltas) && ++entry.getValue().idle >= IDLE_FLUSHES) {
+                it.remove();
+                removed.add(entry);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Target> targets = new ArrayList<>(batch.keySet());
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.openPipeline();
+                for (Target target : targets) {
+                    switch (target.kind) {
+                        case INCR:
+                            connection.stringCommands().incrBy(target.key, longDeltas.get(target)[0]);
+                            break;
+                        case HINCR:
+                            connection.hashCommands().hIncrBy(target.key, target.member, doubleDeltas.get(target)[0]);
+                            break;
+                        default:
+                            connection.zSetCommands().zIncrBy(target.key, doubleDeltas.get(target)[0], target.member);
+                    }
+                }
+                connection.closePipeline();
+                return null;
+            });
+            flushedCommands.add(targets.size());
+        } catch (RedisPipelineException e) {
+            // 管道中已经成功的命令不能再加一次, 只放回失败的
+            List<Object> results = e.getPipelineResult();
+            int failed = 0;
+            for (int i = 0; i < targets.size(); i++) {
+                if (i >= results.size() || results.get(i) instanceof Throwable) {
+                    requeue(targets.get(i), longDeltas, doubleDeltas);
+                    failed++;
+                }
+            }
+            failedFlushes.increment();
+            flushedCommands.add(targets.size() - failed);
+            log.warn("redis counter flush: {} of {} commands failed, will retry", failed, targets.size(), e);
+        } catch (Exception e) {
+            failedFlushes.increment();
+            log.warn("redis counter flush of {} keys failed, will retry", targets.size(), e);
+            targets.forEach(target -> requeue(target, longDeltas, doubleDeltas));
+        }
+        lastFlushMillis = System.currentTimeMillis() - start;
+    }
+
+    private void requeue(Target target, Map<Target, long[]> longDeltas, Map<Target, double[]> doubleDeltas) {
+        Counter live = counters.computeIfAbsent(target, t -> new Counter());
+        if (target.kind == Kind.INCR) {
+            live.longs.add(longDeltas.get(target)[0]);
+        } else {
+            live.doubles.add(doubleDeltas.get(target)[0]);
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("accepted", accepted.sum());
+        metrics.put("flushedCommands", flushedCommands.sum());
+        metrics.put("failedFlushes", failedFlushes.sum());
+        metrics.put("pendingKeys", counters.size());
+        metrics.put("lastFlushMillis", lastFlushMillis);
+        return metrics;
+    }
+
+    /**
+     * 取出增量 用 sum 后加上相反数的方式清零, 并发的累加不会丢失(sumThenReset 会丢掉读和清零之间的累加)
+     * 浮点清零后留下的舍入误差不当作增量, 否则每个周期都会写一次接近0的增量, 累加器也不会因空闲被移除
+     *
+     * @return 是否有增量
+     */
+    private boolean collect(Target target, Counter counter, Map<Target, Counter> batch,
+                            Map<Target, long[]> longDeltas, Map<Target, double[]> doubleDeltas) {
+        if (target.kind == Kind.INCR) {
+            long delta = counter.longs.sum();
+            if (delta == 0) {
+                return false;
+            }
+            counter.longs.add(-delta);
+            longDeltas.computeIfAbsent(target, t -> new long[1])[0] += delta;
+        } else {
+            double delta = counter.doubles.sum();
+            if (Math.abs(delta) < DOUBLE_EPSILON) {
+                return false;
+            }
+            counter.doubles.add(-delta);
+            doubleDeltas.computeIfAbsent(target, t -> new double[1])[0] += delta;
+        }
+        counter.idle = 0;
+        batch.put(target, counter);
+        return true;
+    }
+
+    private Counter counter(Target target) {
+        accepted.increment();
+        return counters.computeIfAbsent(target, t -> new Counter());
+    }
+
+    /**
+     * DATABASE隔离模式下租户的库和写入线程不一致, 直接写
+     */
+    private boolean direct() {
+        return keyBuilder.currentDatabase() != null;
+    }
+
+    private byte[] rawKey(String key) {
+        return keyBuilder.rawKey(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(RedisSerializer<?> serializer, Object value) {
+        return ((RedisSerializer<Object>) serializer).serialize(value);
+    }
+}
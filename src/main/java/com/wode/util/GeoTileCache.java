@@ -0,0 +1,259 @@
+package com.wode.util;
+
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands.DistanceUnit;
+import org.springframework.data.redis.connection.RedisGeoCommands.GeoLocation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 附近搜索的进程内短期缓存 按geohash格子缓存候选点
+ * 查询点所在格子的边长不超过半径的一半, 以格子中心为圆心、半径加上格子半对角线向Redis取一次候选点,
+ * 同一格子内的查询都落在这个大圆内, 本地按实际距离过滤和截取数量, 结果与直接查询一致;
+ * 候选点超过上限或查询失败时不缓存
+ */
+public class GeoTileCache {
+
+    private static final int MAX_PRECISION = 12;
+
+    /**
+     * 与Redis计算距离使用的地球半径一致
+     */
+    private static final double EARTH_RADIUS_METERS = 6372797.560856;
+
+    /**
+     * 向Redis查询候选点 结果按距离升序, 查询失败时返回null
+     */
+    public interface CandidateLoader {
+        List<GeoResult<GeoLocation<String>>> load(double longitude, double latitude, double radiusMeters, long count);
+    }
+
+    private final long ttlMillis;
+
+    private final int maxEntries;
+
+    private final int maxCandidates;
+
+    private final Map<TileKey, Tile> tiles = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlMillis     格子的缓存时间(毫秒)
+     * @param maxEntries    最多缓存的格子数 超过时先清除过期的格子
+     * @param maxCandidates 一个格子最多缓存的候选点数
+     */
+    public GeoTileCache(long ttlMillis, int maxEntries, int maxCandidates) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * 半径查询
+     *
+     * @param cacheKey     缓存的命名空间(如Redis键)
+     * @param longitude    经度
+     * @param latitude     纬度
+     * @param radiusMeters 半径(米)
+     * @param count        最多返回几个 小于等于0为不限
+     * @param loader       候选点查询
+     * @return 按距离升序的结果 查询失败时为空列表
+     */
+    public List<GeoResult<GeoLocation<String>>> nearby(String cacheKey, double longitude, double latitude,
+                                                      double radiusMeters, long count, CandidateLoader loader) {
+        Cell cell = cell(longitude, latitude, radiusMeters / 2);
+        if (cell == null) {
+            return orEmpty(loader.load(longitude, latitude, radiusMeters, count));
+        }
+        TileKey key = new TileKey(cacheKey, cell.bits, cell.length, radiusMeters);
+        long now = System.currentTimeMillis();
+        Tile cached = tiles.get(key);
+        if (cached == null || cached.expireAt <= now) {
+            double centerLon = (cell.minLon + cell.maxLon) / 2;
+            double centerLat = (cell.minLat + cell.maxLat) / 2;
+            // 格子内任意一点到中心的距离不超过中心到角的距离, 南北两个角的距离不同, 取较大的
+            double expanded = radiusMeters + Math.max(distance(centerLon, centerLat, cell.minLon, cell.minLat),
+                    distance(centerLon, centerLat, cell.minLon, cell.maxLat));
+            List<GeoResult<GeoLocation<String>>> candidates = loader.load(centerLon, centerLat, expanded, maxCandidates + 1);
+            if (candidates == null) {
+                // Redis不可用时的空结果不能当作"附近没有"缓存下来
+                return new ArrayList<>();
+            }
+            if (candidates.size() > maxCandidates) {
+                return orEmpty(loader.load(longitude, latitude, radiusMeters, count));
+            }
+            evictIfFull(now);
+            cached = new Tile(candidates, now + ttlMillis);
+            tiles.put(key, cached);
+        }
+        List<GeoResult<GeoLocation<String>>> result = new ArrayList<>();
+        for (GeoResult<GeoLocation<String>> candidate : cached.candidates) {
+            Point point = candidate.getContent().getPoint();
+            double meters = distance(longitude, latitude, point.getX(), point.getY());
+            if (meters <= radiusMeters) {
+                result.add(new GeoResult<>(candidate.getContent(), new Distance(meters, DistanceUnit.METERS)));
+            }
+        }
+        result.sort(Comparator.comparingDouble(r -> r.getDistance().getValue()));
+        return count > 0 && result.size() > count ? new ArrayList<>(result.subList(0, (int) count)) : result;
+    }
+
+    private void evictIfFull(long now) {
+        if (tiles.size() < maxEntries) {
+            return;
+        }
+        tiles.values().removeIf(tile -> tile.expireAt <= now);
+        Iterator<TileKey> it = tiles.keySet().iterator();
+        while (tiles.size() >= maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static <T> List<T> orEmpty(List<T> results) {
+        return results == null ? new ArrayList<>() : results;
+    }
+
+    /**
+     * 键的数据有变化时清除它的格子
+     */
+    public void invalidate(String cacheKey) {
+        tiles.keySet().removeIf(key -> key.cacheKey.equals(cacheKey));
+    }
+
+    public int size() {
+        return tiles.size();
+    }
+
+    /**
+     * 点所在的geohash格子 取边长不超过 maxSideMeters 的最粗精度
+     *
+     * @return 格子 半径太小找不到合适的格子时返回null
+     */
+    static Cell cell(double longitude, double latitude, double maxSideMeters) {
+        double minLon = -180, maxLon = 180, minLat = -90, maxLat = 90;
+        long bits = 0;
+        boolean evenBit = true;
+        for (int bit = 1; bit <= MAX_PRECISION * 5; bit++) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    bits = bits << 1 | 1;
+                    minLon = mid;
+                } else {
+                    bits = bits << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    bits = bits << 1 | 1;
+                    minLat = mid;
+                } else {
+                    bits = bits << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (bit % 5 == 0) {
+                double width = distance(minLon, latitude, maxLon, latitude);
+                double height = distance(longitude, minLat, longitude, maxLat);
+                if (Math.max(width, height) <= maxSideMeters) {
+                    return new Cell(minLon, maxLon, minLat, maxLat, bits, bit);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 两点间的球面距离(米) 与Redis GEODIST 的算法一致
+     */
+    static double distance(double lon1, double lat1, double lon2, double lat2) {
+        double lat1r = Math.toRadians(lat1);
+        double lat2r = Math.toRadians(lat2);
+        double u = Math.sin((lat2r - lat1r) / 2);
+        double v = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1r) * Math.cos(lat2r) * v * v));
+    }
+
+    static final class Cell {
+
+        final double minLon;
+
+        final double maxLon;
+
+        final double minLat;
+
+        final double maxLat;
+
+        /**
+         * geohash的二进制位
+         */
+        final long bits;
+
+        /**
+         * 位数 5的倍数, 每5位对应一个geohash字符
+         */
+        final int length;
+
+        Cell(double minLon, double maxLon, double minLat, double maxLat, long bits, int length) {
+            this.minLon = minLon;
+            this.maxLon = maxLon;
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.bits = bits;
+            this.length = length;
+        }
+    }
+
+    private static final class Tile {
+
+        final List<GeoResult<GeoLocation<String>>> candidates;
+
+        final long expireAt;
+
+        Tile(List<GeoResult<GeoLocation<String>>> candidates, long expireAt) {
+            this.candidates = candidates;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final class TileKey {
+
+        final String cacheKey;
+
+        final long hash;
+
+        final int length;
+
+        final double radius;
+
+        TileKey(String cacheKey, long hash, int length, double radius) {
+            this.cacheKey = cacheKey;
+            this.hash = hash;
+            this.length = length;
+            this.radius = radius;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return hash == other.hash && length == other.length && radius == other.radius && cacheKey.equals(other.cacheKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return (cacheKey.hashCode() * 31 + Long.hashCode(hash)) * 31 + Double.hashCode(radius);
+        }
+    }
+}
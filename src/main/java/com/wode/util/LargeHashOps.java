@@ -0,0 +1,134 @@
+package com.wode.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 大hash操作
+ * 按需读取部分项, 惰性遍历, 项级别的过期时间(HEXPIRE, Redis 7.4+), 以及把逻辑上的大hash拆分到多个物理hash
+ * 序列化方式与 RedisTemplateUtil 一致
+ */
+@Component
+public class LargeHashOps {
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private RedisCommandSupport commands;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 惰性遍历hash 每页一次独立的HSCAN, 不占用连接, 提前退出不需要 close
+     *
+     * @param key     键
+     * @param pattern 项的匹配模式
+     * @param count   每次SCAN的数量
+     * @return 迭代器
+     */
+    public ScanIterator<Map.Entry<String, Object>, Map.Entry<String, Object>> scan(String key, String pattern, long count) {
+        return hscan(redisTemplate, commands, key, pattern, count);
+    }
+
+    /**
+     * 读取指定的项(HMGET) 转换为指定类型
+     *
+     * @param key    键
+     * @param fields 项
+     * @param type   值的类型
+     * @return 项 -> 值, 不存在的项不包含在结果中
+     */
+    public <T> Map<String, T> project(String key, Collection<String> fields, Class<T> type) {
+        List<Object> values = redisTemplate.opsForHash().multiGet(key, new ArrayList<>(fields));
+        Map<String, T> result = new LinkedHashMap<>(fields.size());
+        Iterator<Object> it = values.iterator();
+        for (String field : fields) {
+            Object value = it.next();
+            if (value != null) {
+                result.put(field, type.isInstance(value) ? type.cast(value) : objectMapper.convertValue(value, type));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 设置项的过期时间(HEXPIRE) 不影响整个hash及其他项的过期时间 需要Redis 7.4+
+     *
+     * @param key     键
+     * @param seconds 时间(秒)
+     * @param fields  项
+     * @return 每项的结果 1成功 2时间为0已删除 -2项不存在
+     */
+    public List<Object> expireFields(String key, long seconds, String... fields) {
+        return commands.executeArray("HEXPIRE", fieldArgs(key, RedisCommandSupport.arg(seconds), fields));
+    }
+
+    /**
+     * 项的剩余过期时间(HTTL)
+     *
+     * @return 每项的剩余秒数 -1永久 -2项不存在
+     */
+    public List<Object> fieldTtl(String key, String... fields) {
+        return commands.executeArray("HTTL", fieldArgs(key, null, fields));
+    }
+
+    /**
+     * 写入一项并只设置这一项的过期时间
+     *
+     * @param key     键
+     * @param field   项
+     * @param value   值
+     * @param seconds 时间(秒)
+     */
+    public void hsetWithTtl(String key, String field, Object value, long seconds) {
+        redisTemplate.opsForHash().put(key, field, value);
+        if (seconds > 0) {
+            expireFields(key, seconds, field);
+        }
+    }
+
+    /**
+     * 拆分为多个物理hash的逻辑hash
+     *
+     * @param key     逻辑键
+     * @param buckets 物理hash数量 可以用 BucketedHash.bucketsFor 估算
+     * @return
+     */
+    public BucketedHash bucketed(String key, int buckets) {
+        return new BucketedHash(redisTemplate, commands, key, buckets);
+    }
+
+    @SuppressWarnings("unchecked")
+    static ScanIterator<Map.Entry<String, Object>, Map.Entry<String, Object>> hscan(RedisTemplate<String, Object> redisTemplate,
+                                                                                     RedisCommandSupport commands,
+                                                                                     String key, String pattern, long count) {
+        RedisSerializer<Object> fieldSerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        byte[] rawKey = ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+        return new ScanIterator<>(commands, "HSCAN", rawKey, pattern, count,
+                items -> ScanIterator.pairs(items, raw -> (String) fieldSerializer.deserialize(raw), valueSerializer::deserialize),
+                entry -> entry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[][] fieldArgs(String key, byte[] option, String... fields) {
+        RedisSerializer<Object> fieldSerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        List<byte[]> args = new ArrayList<>(fields.length + 4);
+        args.add(((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key));
+        if (option != null) {
+            args.add(option);
+        }
+        args.add(RedisCommandSupport.arg("FIELDS"));
+        args.add(RedisCommandSupport.arg(fields.length));
+        for (String field : fields) {
+            args.add(fieldSerializer.serialize(field));
+        }
+        return args.toArray(new byte[0][]);
+    }
+}
@@ -0,0 +1,29 @@
+package com.wode.util;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 计数器的值序列化 ASCII十进制, 可以和 INCR/DECR 混用
+ */
+public class LongAsciiSerializer implements RedisSerializer<Long> {
+
+    public static final LongAsciiSerializer INSTANCE = new LongAsciiSerializer();
+
+    @Override
+    public byte[] serialize(Long value) throws SerializationException {
+        return value == null ? null : NumericCodec.encodeLong(value);
+    }
+
+    @Override
+    public Long deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return NumericCodec.parseLong(bytes);
+        } catch (NumberFormatException e) {
+            throw new SerializationException("not a long value", e);
+        }
+    }
+}
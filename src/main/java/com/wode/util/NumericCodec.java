@@ -0,0 +1,75 @@
+package com.wode.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 整数与ASCII字节的直接转换, 不经过String和JSON解析
+ * 使用ASCII十进制格式, 与 INCR/DECR 的存储格式一致
+ */
+public final class NumericCodec {
+
+    private NumericCodec() {
+    }
+
+    /**
+     * 解析ASCII十进制整数 兼容Jackson序列化的带引号字符串("123")
+     */
+    public static long parseLong(byte[] raw) {
+        int start = 0;
+        int end = raw.length;
+        if (end >= 2 && raw[0] == '"' && raw[end - 1] == '"') {
+            start++;
+            end--;
+        }
+        if (start == end) {
+            throw new NumberFormatException("empty value");
+        }
+        boolean negative = raw[start] == '-';
+        if (negative) {
+            start++;
+        }
+        if (start == end || end - start > 19) {
+            return Long.parseLong(new String(raw, StandardCharsets.US_ASCII));
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = raw[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(new String(raw, StandardCharsets.US_ASCII));
+            }
+            result = result * 10 - digit;
+            if (result > 0) {
+                // 溢出
+                throw new NumberFormatException(new String(raw, StandardCharsets.US_ASCII));
+            }
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new NumberFormatException(new String(raw, StandardCharsets.US_ASCII));
+            }
+            return -result;
+        }
+        return result;
+    }
+
+    public static byte[] encodeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+        }
+        long abs = Math.abs(value);
+        int digits = 1;
+        for (long v = abs; v >= 10; v /= 10) {
+            digits++;
+        }
+        int length = value < 0 ? digits + 1 : digits;
+        byte[] raw = new byte[length];
+        for (int i = length - 1; i >= length - digits; i--) {
+            raw[i] = (byte) ('0' + abs % 10);
+            abs /= 10;
+        }
+        if (value < 0) {
+            raw[0] = '-';
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,26 @@
+package com.wode.util;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 带环境/租户前缀的键序列化 由 RedisKeyBuilder 生成前缀
+ */
+public class PrefixedKeySerializer implements RedisSerializer<String> {
+
+    private final RedisKeyBuilder keyBuilder;
+
+    public PrefixedKeySerializer(RedisKeyBuilder keyBuilder) {
+        this.keyBuilder = keyBuilder;
+    }
+
+    @Override
+    public byte[] serialize(String key) throws SerializationException {
+        return key == null ? null : keyBuilder.rawKey(key);
+    }
+
+    @Override
+    public String deserialize(byte[] bytes) throws SerializationException {
+        return bytes == null ? null : keyBuilder.stripPrefix(bytes);
+    }
+}
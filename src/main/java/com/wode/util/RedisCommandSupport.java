@@ -0,0 +1,163 @@
+package com.wode.util;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.ByteArrayOutput;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.output.NestedMultiOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConverters;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行 Spring Data Redis 2.1 未封装的新命令(HEXPIRE、GETEX、SINTERCARD、GEOSEARCH等)
+ * LettuceConnection.execute 用 CommandType.valueOf 解析命令名, Lettuce 5.1 没有的命令会抛 IllegalArgumentException,
+ * 这里用自定义的 ProtocolKeyword 通过原生连接的 dispatch 发送, 命令名原样写出, 并按回复类型指定解析方式
+ * 服务端不认识命令(版本过低)时抛 UnknownCommandException, 调用方按类型判断是否退回旧命令
+ * 不支持在管道和事务中调用
+ */
+@Component
+public class RedisCommandSupport {
+
+    /**
+     * 服务端不支持该命令
+     */
+    public static class UnknownCommandException extends InvalidDataAccessApiUsageException {
+
+        private final String command;
+
+        public UnknownCommandException(String command, Throwable cause) {
+            super("redis does not support " + command + ": " + cause.getMessage(), cause);
+            this.command = command;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+    private static final class Keyword implements ProtocolKeyword {
+
+        private final String name;
+
+        private final byte[] bytes;
+
+        private Keyword(String name) {
+            this.name = name.toUpperCase(Locale.ROOT);
+            this.bytes = this.name.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+    }
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    public RedisCommandSupport() {
+    }
+
+    RedisCommandSupport(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 回复为数组的命令 嵌套数组解析为嵌套的List, 字符串为byte[], 整数为Long
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> executeArray(String command, byte[]... args) {
+        return (List<Object>) execute(command, new NestedMultiOutput<>(ByteArrayCodec.INSTANCE), args);
+    }
+
+    /**
+     * 回复为整数的命令
+     */
+    public Long executeInteger(String command, byte[]... args) {
+        return execute(command, new IntegerOutput<>(ByteArrayCodec.INSTANCE), args);
+    }
+
+    /**
+     * 回复为字符串的命令
+     */
+    public byte[] executeBulk(String command, byte[]... args) {
+        return execute(command, new ByteArrayOutput<>(ByteArrayCodec.INSTANCE), args);
+    }
+
+    public static byte[] arg(Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 异常链中是否有服务端返回的错误(命令不支持、参数或类型错误) 这类错误说明Redis本身正常
+     */
+    public static boolean isCommandError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RedisCommandExecutionException || cause instanceof InvalidDataAccessApiUsageException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T execute(String command, CommandOutput<byte[], byte[], T> output, byte[]... args) {
+        return (T) redisTemplate.execute((RedisCallback<Object>) connection -> {
+            if (connection instanceof LettuceConnection) {
+                return dispatch((LettuceConnection) connection, command, output, args);
+            }
+            return connection.execute(command, args);
+        }, true);
+    }
+
+    private <T> T dispatch(LettuceConnection connection, String command, CommandOutput<byte[], byte[], T> output, byte[]... args) {
+        CommandArgs<byte[], byte[]> commandArgs = new CommandArgs<>(ByteArrayCodec.INSTANCE);
+        for (byte[] arg : args) {
+            commandArgs.add(arg);
+        }
+        try {
+            return LettuceFutures.awaitOrCancel(connection.getNativeConnection().dispatch(new Keyword(command), output, commandArgs),
+                    timeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (RedisCommandExecutionException e) {
+            if (String.valueOf(e.getMessage()).startsWith("ERR unknown command")) {
+                throw new UnknownCommandException(command, e);
+            }
+            throw new RedisSystemException("Error in execution", e);
+        } catch (RuntimeException e) {
+            RuntimeException translated = LettuceConverters.exceptionConverter().convert(e);
+            throw translated != null ? translated : e;
+        }
+    }
+
+    private long timeoutMillis() {
+        RedisConnectionFactory factory = redisTemplate.getConnectionFactory();
+        if (factory instanceof LettuceConnectionFactory) {
+            return ((LettuceConnectionFactory) factory).getClientConfiguration().getCommandTimeout().toMillis();
+        }
+        return DEFAULT_TIMEOUT_MILLIS;
+    }
+}
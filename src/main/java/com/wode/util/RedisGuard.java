@@ -0,0 +1,245 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Redis调用保护: 按命令类别的超时、舱壁隔离和熔断
+ * 每类命令在独立的线程池中执行, 池满时直接拒绝, 慢命令(HGETALL等)不会占满快命令的资源;
+ * 超时、失败、拒绝和熔断打开时都返回调用方提供的降级值, 避免Redis变慢时请求线程长时间挂起
+ * 服务端返回的命令错误(命令不支持、参数或类型错误)和序列化错误每次都会失败, 与Redis是否健康无关, 只降级不计入熔断
+ * 未开启时直接在调用线程执行, 行为与原来一致
+ */
+@Component
+public class RedisGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisGuard.class);
+
+    public enum CommandClass {
+        /**
+         * 单键读
+         */
+        READ,
+        /**
+         * 写
+         */
+        WRITE,
+        /**
+         * 返回整个集合等耗时命令
+         */
+        SLOW
+    }
+
+    @Value("${redis.guard.enabled:false}")
+    private boolean enabled;
+
+    @Value("${redis.guard.read.timeout-ms:200}")
+    private long readTimeout;
+
+    @Value("${redis.guard.write.timeout-ms:300}")
+    private long writeTimeout;
+
+    @Value("${redis.guard.slow.timeout-ms:1000}")
+    private long slowTimeout;
+
+    @Value("${redis.guard.read.bulkhead:64}")
+    private int readBulkhead;
+
+    @Value("${redis.guard.write.bulkhead:32}")
+    private int writeBulkhead;
+
+    @Value("${redis.guard.slow.bulkhead:8}")
+    private int slowBulkhead;
+
+    @Value("${redis.guard.breaker.window:100}")
+    private int breakerWindow;
+
+    @Value("${redis.guard.breaker.minimum-calls:20}")
+    private int breakerMinimumCalls;
+
+    @Value("${redis.guard.breaker.failure-rate:0.5}")
+    private double breakerFailureRate;
+
+    @Value("${redis.guard.breaker.open-ms:5000}")
+    private long breakerOpenMillis;
+
+    @Value("${redis.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    private CircuitBreaker breaker;
+
+    private final Map<CommandClass, ThreadPoolExecutor> bulkheads = new EnumMap<>(CommandClass.class);
+
+    private final Map<CommandClass, Long> timeouts = new EnumMap<>(CommandClass.class);
+
+    private final Map<CommandClass, Metrics> metrics = new EnumMap<>(CommandClass.class);
+
+    @PostConstruct
+    public void init() {
+        breaker = new CircuitBreaker("redis", breakerWindow, breakerMinimumCalls, breakerFailureRate, breakerOpenMillis);
+        timeouts.put(CommandClass.READ, readTimeout);
+        timeouts.put(CommandClass.WRITE, writeTimeout);
+        timeouts.put(CommandClass.SLOW, slowTimeout);
+        for (CommandClass commandClass : CommandClass.values()) {
+            metrics.put(commandClass, new Metrics());
+        }
+        if (enabled) {
+            bulkheads.put(CommandClass.READ, bulkhead("read", readBulkhead));
+            bulkheads.put(CommandClass.WRITE, bulkhead("write", writeBulkhead));
+            bulkheads.put(CommandClass.SLOW, bulkhead("slow", slowBulkhead));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        bulkheads.values().forEach(ExecutorService::shutdownNow);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 受保护地执行
+     *
+     * @param commandClass 命令类别
+     * @param action       Redis操作
+     * @param fallback     超时、失败、舱壁已满或熔断打开时的降级值
+     * @return 操作结果或降级值
+     */
+    public <T> T execute(CommandClass commandClass, Supplier<T> action, Supplier<T> fallback) {
+        if (!enabled) {
+            return action.get();
+        }
+        Metrics m = metrics.get(commandClass);
+        m.calls.increment();
+        if (!breaker.tryAcquire()) {
+            m.shortCircuited.increment();
+            return fallback.get();
+        }
+        String tenant = RedisKeyBuilder.currentTenant();
+        Future<T> future;
+        try {
+            future = bulkheads.get(commandClass).submit(() -> {
+                RedisKeyBuilder.setTenant(tenant);
+                try {
+                    return action.get();
+                } finally {
+                    RedisKeyBuilder.clearTenant();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 舱壁满不代表Redis故障, 不计入熔断, 但要结束半开状态的试探
+            breaker.onIgnored();
+            m.rejected.increment();
+            return fallback.get();
+        }
+        try {
+            T result = future.get(timeouts.get(commandClass), TimeUnit.MILLISECONDS);
+            breaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            breaker.onFailure();
+            m.timeouts.increment();
+            return fallback.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            breaker.onFailure();
+            m.failures.increment();
+            return fallback.get();
+        } catch (ExecutionException e) {
+            if (isDeterministic(e.getCause())) {
+                breaker.onIgnored();
+                m.commandErrors.increment();
+                log.debug("redis {} command rejected", commandClass, e.getCause());
+            } else {
+                breaker.onFailure();
+                m.failures.increment();
+                log.debug("redis {} command failed", commandClass, e.getCause());
+            }
+            return fallback.get();
+        }
+    }
+
+    /**
+     * 重试也一定失败的错误 说明调用有问题而不是Redis故障
+     */
+    private static boolean isDeterministic(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SerializationException || cause instanceof IllegalArgumentException) {
+                return true;
+            }
+        }
+        return RedisCommandSupport.isCommandError(e);
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    /**
+     * 熔断器状态及各类命令的调用统计
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("breakerState", breaker.getState());
+        result.put("failureRate", breaker.getFailureRate());
+        metrics.forEach((commandClass, m) -> {
+            Map<String, Long> counters = new LinkedHashMap<>();
+            counters.put("calls", m.calls.sum());
+            counters.put("failures", m.failures.sum());
+            counters.put("commandErrors", m.commandErrors.sum());
+            counters.put("timeouts", m.timeouts.sum());
+            counters.put("rejected", m.rejected.sum());
+            counters.put("shortCircuited", m.shortCircuited.sum());
+            ThreadPoolExecutor pool = bulkheads.get(commandClass);
+            counters.put("active", pool == null ? 0L : pool.getActiveCount());
+            result.put(commandClass.name().toLowerCase(), counters);
+        });
+        return result;
+    }
+
+    /**
+     * 虚拟线程模式下池中的线程为虚拟线程, 池大小仍然是舱壁的并发上限
+     */
+    private ThreadPoolExecutor bulkhead(String name, int size) {
+        ThreadFactory factory = virtualThreads && VirtualThreads.isSupported() ? VirtualThreads.factory("redis-guard-" + name + "-") : r -> {
+            Thread thread = new Thread(r, "redis-guard-" + name);
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static class Metrics {
+
+        final LongAdder calls = new LongAdder();
+
+        final LongAdder failures = new LongAdder();
+
+        final LongAdder commandErrors = new LongAdder();
+
+        final LongAdder timeouts = new LongAdder();
+
+        final LongAdder rejected = new LongAdder();
+
+        final LongAdder shortCircuited = new LongAdder();
+    }
+}
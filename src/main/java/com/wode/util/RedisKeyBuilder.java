@@ -0,0 +1,151 @@
+package com.wode.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 统一生成Redis键 两个工具类及管道方法共用
+ * 键 = 环境前缀 + 租户前缀 + 业务键, 前缀按环境/租户预先编码成字节, 每次调用不做字符串拼接
+ * 租户隔离方式:
+ * PREFIX    env + tenant + ":" + key
+ * HASH_TAG  env + "{" + tenant + "}:" + key 同一租户的键落在集群同一个槽
+ * DATABASE  env + key 租户映射到独立的逻辑库, 见 redis.tenant.databases
+ */
+@Component
+public class RedisKeyBuilder {
+
+    public enum TenantMode {
+        PREFIX, HASH_TAG, DATABASE
+    }
+
+    private static final ThreadLocal<String> TENANT = new ThreadLocal<>();
+
+    @Value("${spring.profiles.active:}")
+    private String env;
+
+    @Value("${redis.tenant.mode:PREFIX}")
+    private TenantMode mode;
+
+    /**
+     * 租户与逻辑库的映射 例: tenantA:1,tenantB:2
+     */
+    @Value("${redis.tenant.databases:}")
+    private String databases;
+
+    private byte[] envPrefix;
+
+    private final Map<String, Integer> tenantDatabases = new HashMap<>();
+
+    private final Map<String, byte[]> tenantPrefixes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        envPrefix = env.getBytes(StandardCharsets.UTF_8);
+        for (String mapping : StringUtils.commaDelimitedListToSet(databases)) {
+            String[] pair = mapping.trim().split(":");
+            if (pair.length != 2 || pair[0].trim().isEmpty() || !pair[1].trim().matches("\\d+")) {
+                throw new IllegalArgumentException("invalid redis.tenant.databases entry '" + mapping.trim()
+                        + "', expected tenant:database");
+            }
+            tenantDatabases.put(pair[0].trim(), Integer.valueOf(pair[1].trim()));
+        }
+    }
+
+    /**
+     * 设置当前线程的租户 请求结束时需要调用 clearTenant
+     */
+    public static void setTenant(String tenant) {
+        TENANT.set(tenant);
+    }
+
+    public static void clearTenant() {
+        TENANT.remove();
+    }
+
+    public static String currentTenant() {
+        return TENANT.get();
+    }
+
+    public String getEnv() {
+        return env;
+    }
+
+    public TenantMode getMode() {
+        return mode;
+    }
+
+    /**
+     * 当前租户对应的逻辑库 没有映射时返回null
+     */
+    public Integer currentDatabase() {
+        String tenant = TENANT.get();
+        return tenant == null || mode != TenantMode.DATABASE ? null : tenantDatabases.get(tenant);
+    }
+
+    public Map<String, Integer> getTenantDatabases() {
+        return tenantDatabases;
+    }
+
+    /**
+     * 当前线程的键前缀
+     */
+    public byte[] prefix() {
+        String tenant = TENANT.get();
+        if (tenant == null || mode == TenantMode.DATABASE) {
+            return envPrefix;
+        }
+        return tenantPrefixes.computeIfAbsent(tenant, t -> {
+            String prefix = mode == TenantMode.HASH_TAG ? env + "{" + t + "}:" : env + t + ":";
+            return prefix.getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    /**
+     * 生成完整的键
+     *
+     * @param key 业务键
+     * @return 编码后的键
+     */
+    public byte[] rawKey(String key) {
+        byte[] prefix = prefix();
+        int length = key.length();
+        byte[] raw = new byte[prefix.length + length];
+        System.arraycopy(prefix, 0, raw, 0, prefix.length);
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                // 非ASCII字符走UTF-8编码
+                byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+                byte[] wide = new byte[prefix.length + encoded.length];
+                System.arraycopy(prefix, 0, wide, 0, prefix.length);
+                System.arraycopy(encoded, 0, wide, prefix.length, encoded.length);
+                return wide;
+            }
+            raw[prefix.length + i] = (byte) c;
+        }
+        return raw;
+    }
+
+    /**
+     * 去掉前缀还原业务键 不带当前前缀的键原样返回
+     */
+    public String stripPrefix(byte[] raw) {
+        byte[] prefix = prefix();
+        if (raw.length < prefix.length) {
+            return new String(raw, StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (raw[i] != prefix[i]) {
+                return new String(raw, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(raw, prefix.length, raw.length - prefix.length, StandardCharsets.UTF_8);
+    }
+}
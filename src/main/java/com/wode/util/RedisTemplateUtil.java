@@ -1,15 +1,39 @@
 package com.wode.util;
 
+import io.lettuce.core.api.async.BaseRedisAsyncCommands;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Component
 public class RedisTemplateUtil{
@@ -17,10 +41,123 @@ public class RedisTemplateUtil{
     @Resource(name = "redisTemplate")
     private RedisTemplate<String, String> redisTemplate;
 
+    @Resource
+    private RedisKeyBuilder keyBuilder;
+
+    @Resource
+    private RedisGuard guard;
+
+    @Resource
+    private ClientTrackingCache nearCache;
+
+    @Resource
+    private RedisCommandSupport commands;
+
+    @Resource
+    private SlidingExpiration sliding;
+
+    @Resource
+    private AdaptiveTtlPolicy adaptiveTtl;
+
+    @Resource
+    private TraceRecorder trace;
+
+    /**
+     * 是否合并相同的并发读请求
+     */
+    @Value("${redis.read.coalesce:false}")
+    private boolean coalesce;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 是否对 get/hget/zScore 自动攒批
+     */
+    @Value("${redis.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${redis.batch.max-size:128}")
+    private int batchMaxSize;
+
+    @Value("${redis.batch.max-delay-micros:200}")
+    private long batchMaxDelayMicros;
+
+    @Value("${redis.batch.parallelism:4}")
+    private int batchParallelism;
+
+    @Value("${redis.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * mutiGet/mutiSet 每个MGET/MSET最多的键数
+     */
+    @Value("${redis.multi.chunk-size:500}")
+    private int multiChunkSize;
+
+    /**
+     * 流式 mutiGet 每次 execute 以管道取回的块数
+     */
+    private static final int STREAM_WINDOW_CHUNKS = 4;
+
+    /**
+     * sSet/sRemove 时递增集合的版本号, del 时删除版本号, 供 sIntersectMaterialized 判断输入是否变化
+     */
+    @Value("${redis.set.track-versions:false}")
+    private boolean trackSetVersions;
+
+    private static final String SET_VERSION_SUFFIX = ":__version";
+
+    @Value("${redis.geo.tile-cache.ttl-ms:2000}")
+    private long geoTileTtl;
+
+    @Value("${redis.geo.tile-cache.max-entries:10000}")
+    private int geoTileMaxEntries;
+
+    @Value("${redis.geo.tile-cache.max-candidates:2000}")
+    private int geoTileMaxCandidates;
+
+    private GeoTileCache geoTiles;
+
+    @Value("${redis.tx.max-attempts:5}")
+    private int txMaxAttempts;
+
+    @Value("${redis.tx.backoff-ms:2}")
+    private long txBackoffMillis;
+
+    @Value("${redis.tx.max-backoff-ms:50}")
+    private long txMaxBackoffMillis;
+
+    private final LongAdder txAttempts = new LongAdder();
+
+    private final LongAdder txCommits = new LongAdder();
+
+    private final LongAdder txReadOnly = new LongAdder();
+
+    private final LongAdder txConflicts = new LongAdder();
+
+    private final LongAdder txExhausted = new LongAdder();
+
+    private AutoBatcher batcher;
+
     public RedisTemplateUtil(RedisTemplate<String, String> redisTemplate) {
         this.redisTemplate = redisTemplate;
     }
 
+    @PostConstruct
+    public void init() {
+        geoTiles = new GeoTileCache(geoTileTtl, geoTileMaxEntries, geoTileMaxCandidates);
+        if (batchEnabled) {
+            batcher = new AutoBatcher(redisTemplate, batchMaxSize, batchMaxDelayMicros, batchParallelism, virtualThreads);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
 
     /**
      * 指定缓存失效时间
@@ -32,7 +169,12 @@ public class RedisTemplateUtil{
     public boolean expire(String key, long time) {
         try {
             if (time > 0) {
-                redisTemplate.expire( key, time, TimeUnit.SECONDS);
+                long ttl = adaptiveTtl.ttl(key, time);
+                trace.record(TraceFormat.Command.EXPIRE, key, 0, 0, ttl);
+                return guard.execute(RedisGuard.CommandClass.WRITE, () -> {
+                    redisTemplate.expire( key, ttl, TimeUnit.SECONDS);
+                    return true;
+                }, () -> false);
             }
             return true;
         } catch (Exception e) {
@@ -72,11 +214,16 @@ public class RedisTemplateUtil{
     @SuppressWarnings("unchecked")
     public void del(String... key) {
         if (key != null && key.length > 0) {
+            delSetVersions(key);
             if (key.length == 1) {
                 redisTemplate.delete( key[0]);
             } else {
                 redisTemplate.delete(CollectionUtils.arrayToList( key));
             }
+            for (String k : key) {
+                invalidateNearCache(k);
+                trace.record(TraceFormat.Command.DEL, k);
+            }
         }
     }
 
@@ -88,6 +235,7 @@ public class RedisTemplateUtil{
     @SuppressWarnings("unchecked")
     public void delBatch(String... key) {
         if (key != null && key.length > 0) {
+            delSetVersions(key);
             if (key.length == 1) {
                 redisTemplate.delete( key[0]);
             } else {
@@ -95,7 +243,24 @@ public class RedisTemplateUtil{
                 CollectionUtils.arrayToList(key).stream().forEach(x -> list.add(String.format("%s", x)));
                 redisTemplate.delete(list);
             }
+            for (String k : key) {
+                trace.record(TraceFormat.Command.DEL, k);
+            }
+        }
+    }
+
+    /**
+     * 删除集合时同时删除版本号 物化交集发现输入没有版本号时会重新计算
+     */
+    private void delSetVersions(String... keys) {
+        if (!trackSetVersions) {
+            return;
         }
+        List<String> versions = new ArrayList<>(keys.length);
+        for (String k : keys) {
+            versions.add(k + SET_VERSION_SUFFIX);
+        }
+        redisTemplate.delete(versions);
     }
 
     //============================String=============================
@@ -107,7 +272,80 @@ public class RedisTemplateUtil{
      * @return 值
      */
     public String get(String key) {
-        return key == null ? null : redisTemplate.opsForValue().get( key);
+        return get(key, () -> key == null || !tracking(key) ? null
+                : (String) deserialize(redisTemplate.getValueSerializer(), nearCache.peek(rawKey(key))));
+    }
+
+    /**
+     * 普通缓存获取 开启调用保护时, 超时、失败或熔断打开返回降级值
+     * 开启 CLIENT TRACKING 时优先读本地缓存
+     *
+     * @param key      键
+     * @param fallback 降级值
+     * @return 值
+     */
+    public String get(String key, Supplier<String> fallback) {
+        if (key == null) {
+            return null;
+        }
+        if (sliding.applies(key)) {
+            if (sliding.isGetex()) {
+                try {
+                    String value = guard.execute(RedisGuard.CommandClass.READ, () -> {
+                        try {
+                            return getEx(key, sliding.getTtlSeconds());
+                        } catch (RedisCommandSupport.UnknownCommandException e) {
+                            // 服务端低于6.2时退回批量PEXPIRE, 之后的读取不再尝试GETEX
+                            sliding.disableGetex(e);
+                            throw e;
+                        }
+                    }, fallback);
+                    // 本次调用中退回了TOUCH模式时 value 是保护返回的降级值, 改用GET重新读取
+                    if (sliding.isGetex()) {
+                        recordRead(TraceFormat.Command.GET, key, value);
+                        return value;
+                    }
+                } catch (RuntimeException e) {
+                    if (sliding.isGetex()) {
+                        throw e;
+                    }
+                }
+            }
+            String value = readValue(key, fallback);
+            if (value != null) {
+                sliding.touch(key);
+            }
+            recordRead(TraceFormat.Command.GET, key, value);
+            return value;
+        }
+        String value = readValue(key, fallback);
+        recordRead(TraceFormat.Command.GET, key, value);
+        return value;
+    }
+
+    /**
+     * 读取并设置过期时间(GETEX, Redis 6.2+) 一条命令完成读取和续期
+     *
+     * @param key  键
+     * @param time 时间(秒) 小于等于0时移除过期时间(PERSIST)
+     * @return 值
+     */
+    public String getEx(String key, long time) {
+        byte[] raw = time > 0
+                ? commands.executeBulk("GETEX", rawKey(key), RedisCommandSupport.arg("EX"), RedisCommandSupport.arg(time))
+                : commands.executeBulk("GETEX", rawKey(key), RedisCommandSupport.arg("PERSIST"));
+        return (String) deserialize(redisTemplate.getValueSerializer(), raw);
+    }
+
+    private String readValue(String key, Supplier<String> fallback) {
+        return read(() -> guard.execute(RedisGuard.CommandClass.READ, () -> {
+            if (tracking(key)) {
+                return (String) deserialize(redisTemplate.getValueSerializer(), nearCache.get(rawKey(key)));
+            }
+            return batching()
+                    ? (String) deserialize(redisTemplate.getValueSerializer(), join(batcher.get(rawKey(key))))
+                    : redisTemplate.opsForValue().get( key);
+        }, fallback), "get", key);
     }
 
     /**
@@ -118,9 +356,13 @@ public class RedisTemplateUtil{
      * @return true成功 false失败
      */
     public boolean set(String key, String value) {
+        trace.record(TraceFormat.Command.SET, key, 0, size(value), 0);
         try {
-            redisTemplate.opsForValue().set( key, value);
-            return true;
+            return guard.execute(RedisGuard.CommandClass.WRITE, () -> {
+                redisTemplate.opsForValue().set( key, value);
+                invalidateNearCache(key);
+                return true;
+            }, () -> false);
         } catch (Exception e) {
             return false;
         }
@@ -137,11 +379,15 @@ public class RedisTemplateUtil{
     public boolean set(String key, String value, long time) {
         try {
             if (time > 0) {
-                redisTemplate.opsForValue().set( key, value, time, TimeUnit.SECONDS);
-            } else {
-                set( key, value);
+                long ttl = adaptiveTtl.ttl(key, time, value == null ? -1 : value.length());
+                trace.record(TraceFormat.Command.SET, key, 0, size(value), ttl);
+                return guard.execute(RedisGuard.CommandClass.WRITE, () -> {
+                    redisTemplate.opsForValue().set( key, value, ttl, TimeUnit.SECONDS);
+                    invalidateNearCache(key);
+                    return true;
+                }, () -> false);
             }
-            return true;
+            return set( key, value);
         } catch (Exception e) {
             return false;
         }
@@ -160,6 +406,14 @@ public class RedisTemplateUtil{
         }
     }
 
+    /**
+     * 不存在时写入(SET NX) 常用作锁, 过期时间按调用方给的原样使用, 不经过自适应过期时间调整
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0时不设置过期时间
+     * @return 是否写入
+     */
     public boolean setIfAbsent(String key, String value, long time) {
         try {
             if (time > 0) {
@@ -179,6 +433,14 @@ public class RedisTemplateUtil{
         }
     }
 
+    /**
+     * 存在时覆盖(SET XX) 常用于锁续期, 过期时间按调用方给的原样使用, 不经过自适应过期时间调整
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0时不设置过期时间
+     * @return 是否成功
+     */
     public boolean setIfPresent(String key, String value, long time) {
         try {
             if (time > 0) {
@@ -203,6 +465,7 @@ public class RedisTemplateUtil{
         if (delta < 0) {
             throw new RuntimeException("递增因子必须大于0");
         }
+        trace.record(TraceFormat.Command.INCR, key);
         return redisTemplate.opsForValue().increment( key, delta);
     }
 
@@ -217,9 +480,234 @@ public class RedisTemplateUtil{
         if (delta < 0) {
             throw new RuntimeException("递减因子必须大于0");
         }
+        trace.record(TraceFormat.Command.INCR, key);
         return redisTemplate.opsForValue().increment( key, -delta);
     }
 
+    //============================bytes=============================
+
+    /**
+     * 读取原始字节 不经过序列化, 用于缓存渲染好的JSON、protobuf等不透明数据
+     *
+     * @param key 键
+     * @return 值 不存在时返回null
+     */
+    public byte[] getBytes(String key) {
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey(key)));
+        trace.record(TraceFormat.Command.GET, key, value != null ? TraceFormat.FLAG_HIT : 0, value == null ? 0 : value.length, 0);
+        return value;
+    }
+
+    /**
+     * 写入原始字节
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0为永久
+     */
+    public void setBytes(String key, byte[] value, long time) {
+        Expiration expiration = time > 0 ? Expiration.seconds(adaptiveTtl.ttl(key, time, value.length)) : Expiration.persistent();
+        trace.record(TraceFormat.Command.SET, key, 0, value.length, time > 0 ? expiration.getExpirationTimeInSeconds() : 0);
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(rawKey(key), value, expiration, RedisStringCommands.SetOption.upsert()));
+        invalidateNearCache(key);
+    }
+
+    /**
+     * 读取原始字节到调用方的缓冲区
+     *
+     * @param key    键
+     * @param buffer 缓冲区 剩余空间不足时不写入
+     * @return 值的长度 不存在时返回-1, 大于缓冲区剩余空间时调用方需要换更大的缓冲区
+     */
+    public int getInto(String key, ByteBuffer buffer) {
+        byte[] raw = getBytes(key);
+        if (raw == null) {
+            return -1;
+        }
+        if (raw.length <= buffer.remaining()) {
+            buffer.put(raw);
+        }
+        return raw.length;
+    }
+
+    //============================transaction=============================
+
+    /**
+     * 乐观事务 WATCH keys 后执行回调, 回调中的写操作在 MULTI/EXEC 中执行
+     * 被监视的键被其他客户端修改导致EXEC失败时, 退避后重新执行整个回调, 最多 redis.tx.max-attempts 次;
+     * 排队的命令在一次flush中写出后再发送EXEC, 事务在专用连接上执行
+     *
+     * @param keys 要监视的键 回调中读取并据此决定写入的键都要包含
+     * @param body 事务内容 返回值作为结果; 只读或调用 discard 时不执行MULTI
+     * @return 回调的返回值
+     * @throws ConcurrencyFailureException 重试次数用完仍然冲突
+     */
+    public <T> T transaction(Collection<String> keys, Function<RedisTransaction, T> body) {
+        long backoff = txBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            txAttempts.increment();
+            TxOutcome<T> outcome = redisTemplate.execute(new SessionCallback<TxOutcome<T>>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> TxOutcome<T> execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    return runTransaction((RedisOperations<String, String>) operations, keys, body);
+                }
+            });
+            if (outcome.committed) {
+                outcome.writtenKeys.forEach(this::invalidateNearCache);
+                return outcome.value;
+            }
+            txConflicts.increment();
+            if (attempt >= txMaxAttempts) {
+                txExhausted.increment();
+                throw new ConcurrencyFailureException("redis transaction on " + keys + " still conflicted after " + attempt + " attempts");
+            }
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConcurrencyFailureException("interrupted while retrying redis transaction on " + keys, e);
+            }
+            backoff = Math.min(backoff * 2, txMaxBackoffMillis);
+        }
+    }
+
+    /**
+     * 事务统计 conflictRate 为冲突次数/执行次数
+     */
+    public Map<String, Object> transactionMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long attempts = txAttempts.sum();
+        long conflicts = txConflicts.sum();
+        metrics.put("attempts", attempts);
+        metrics.put("commits", txCommits.sum());
+        metrics.put("readOnly", txReadOnly.sum());
+        metrics.put("conflicts", conflicts);
+        metrics.put("exhausted", txExhausted.sum());
+        metrics.put("conflictRate", attempts == 0 ? 0.0 : (double) conflicts / attempts);
+        return metrics;
+    }
+
+    private <T> TxOutcome<T> runTransaction(RedisOperations<String, String> operations, Collection<String> keys,
+                                            Function<RedisTransaction, T> body) {
+        operations.watch(keys);
+        RedisTransaction tx = new RedisTransaction(operations, this::rawKey);
+        T value;
+        try {
+            value = body.apply(tx);
+        } catch (RuntimeException e) {
+            operations.unwatch();
+            throw e;
+        }
+        if (tx.isDiscarded() || !tx.hasWrites()) {
+            operations.unwatch();
+            txReadOnly.increment();
+            return new TxOutcome<>(true, value, Collections.emptySet());
+        }
+        operations.multi();
+        // MULTI之后连接处于事务模式, 取到的是专用连接; 关闭自动flush, 排队的命令攒在缓冲区里一次写出
+        BaseRedisAsyncCommands<?, ?> nativeCommands = operations.execute((RedisCallback<BaseRedisAsyncCommands<?, ?>>) connection -> {
+            Object nativeConnection = connection.getNativeConnection();
+            return nativeConnection instanceof BaseRedisAsyncCommands ? (BaseRedisAsyncCommands<?, ?>) nativeConnection : null;
+        });
+        if (nativeCommands != null) {
+            nativeCommands.setAutoFlushCommands(false);
+        }
+        try {
+            tx.applyWrites();
+        } catch (RuntimeException e) {
+            flushQueued(nativeCommands);
+            operations.discard();
+            throw e;
+        }
+        flushQueued(nativeCommands);
+        List<Object> results = operations.exec();
+        // WATCH的键有变化时EXEC返回空回复, 驱动转换后为null或空列表(排队的命令不会为0条)
+        if (results == null || results.isEmpty()) {
+            return new TxOutcome<>(false, null, Collections.emptySet());
+        }
+        txCommits.increment();
+        return new TxOutcome<>(true, value, tx.getWrittenKeys());
+    }
+
+    /**
+     * 写出关闭自动flush期间缓冲的命令并恢复自动flush
+     * 只恢复自动flush不会写出缓冲区, EXEC会先于排队的命令到达服务端, 执行的是空事务
+     */
+    private static void flushQueued(BaseRedisAsyncCommands<?, ?> nativeCommands) {
+        if (nativeCommands != null) {
+            nativeCommands.flushCommands();
+            nativeCommands.setAutoFlushCommands(true);
+        }
+    }
+
+    private static final class TxOutcome<T> {
+
+        final boolean committed;
+
+        final T value;
+
+        final Set<String> writtenKeys;
+
+        TxOutcome(boolean committed, T value, Set<String> writtenKeys) {
+            this.committed = committed;
+            this.value = value;
+            this.writtenKeys = writtenKeys;
+        }
+    }
+
+    //============================long=============================
+
+    /**
+     * 读取整数 直接解析ASCII字节, 不经过Jackson
+     *
+     * @param key          键
+     * @param defaultValue 不存在时的值
+     * @return 值
+     */
+    public long getLong(String key, long defaultValue) {
+        byte[] raw = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey(key)));
+        return raw == null ? defaultValue : NumericCodec.parseLong(raw);
+    }
+
+    /**
+     * 批量读取整数
+     *
+     * @param keys         键
+     * @param defaultValue 不存在时的值
+     * @return 与keys顺序一致的值
+     */
+    public long[] mgetLongs(List<String> keys, long defaultValue) {
+        if (keys.isEmpty()) {
+            return new long[0];
+        }
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = rawKey(keys.get(i));
+        }
+        List<byte[]> raws = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        long[] values = new long[rawKeys.length];
+        for (int i = 0; i < values.length; i++) {
+            byte[] raw = raws == null ? null : raws.get(i);
+            values[i] = raw == null ? defaultValue : NumericCodec.parseLong(raw);
+        }
+        return values;
+    }
+
+    /**
+     * 写入整数 ASCII格式, 之后可以继续 incr/decr
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0为永久
+     */
+    public void setLong(String key, long value, long time) {
+        Expiration expiration = time > 0 ? Expiration.seconds(adaptiveTtl.ttl(key, time, Long.BYTES)) : Expiration.persistent();
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(rawKey(key), NumericCodec.encodeLong(value), expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
     //================================Map=================================
 
     /**
@@ -230,7 +718,20 @@ public class RedisTemplateUtil{
      * @return 值
      */
     public Object hget(String key, String item) {
-        return redisTemplate.opsForHash().get( key, item);
+        Object value = read(() -> guard.execute(RedisGuard.CommandClass.READ, () -> {
+            if (tracking(key)) {
+                return deserialize(redisTemplate.getHashValueSerializer(),
+                        nearCache.hget(rawKey(key), serialize(redisTemplate.getHashKeySerializer(), item)));
+            }
+            return batching()
+                    ? deserialize(redisTemplate.getHashValueSerializer(), join(batcher.hget(rawKey(key), serialize(redisTemplate.getHashKeySerializer(), item))))
+                    : redisTemplate.opsForHash().get( key, item);
+        }, () -> null), "hget", key, item);
+        if (value != null && sliding.applies(key)) {
+            sliding.touch(key);
+        }
+        recordRead(TraceFormat.Command.HGET, key, value);
+        return value;
     }
 
     /**
@@ -240,7 +741,8 @@ public class RedisTemplateUtil{
      * @return 对应的多个键值
      */
     public Map<Object, Object> hmget(String key) {
-        return redisTemplate.opsForHash().entries( key);
+        return read(() -> guard.execute(RedisGuard.CommandClass.SLOW,
+                () -> redisTemplate.opsForHash().entries( key), Collections::emptyMap), "hgetall", key);
     }
 
     /**
@@ -251,7 +753,8 @@ public class RedisTemplateUtil{
      */
     public List<Object> hmget(String key, List<String> itemList) {
         List<Object> tmpList = new ArrayList<>(itemList);
-        return redisTemplate.opsForHash().multiGet( key, tmpList);
+        return read(() -> guard.execute(RedisGuard.CommandClass.READ,
+                () -> redisTemplate.opsForHash().multiGet( key, tmpList), () -> null), "hmget", key, itemList);
     }
 
     /**
@@ -263,8 +766,11 @@ public class RedisTemplateUtil{
      */
     public boolean hmset(String key, Map<String, Object> map) {
         try {
-            redisTemplate.opsForHash().putAll( key, map);
-            return true;
+            return guard.execute(RedisGuard.CommandClass.WRITE, () -> {
+                redisTemplate.opsForHash().putAll( key, map);
+                invalidateNearCache(key);
+                return true;
+            }, () -> false);
         } catch (Exception e) {
             return false;
         }
@@ -280,7 +786,9 @@ public class RedisTemplateUtil{
      */
     public boolean hmset(String key, Map<String, Object> map, long time) {
         try {
-            redisTemplate.opsForHash().putAll( key, map);
+            if (!hmset(key, map)) {
+                return false;
+            }
             if (time > 0) {
                 expire(key, time);
             }
@@ -299,9 +807,13 @@ public class RedisTemplateUtil{
      * @return true 成功 false失败
      */
     public boolean hset(String key, String item, Object value) {
+        trace.record(TraceFormat.Command.HSET, key, 0, value instanceof String ? ((String) value).length() : 0, 0);
         try {
-            redisTemplate.opsForHash().put( key, item, value);
-            return true;
+            return guard.execute(RedisGuard.CommandClass.WRITE, () -> {
+                redisTemplate.opsForHash().put( key, item, value);
+                invalidateNearCache(key);
+                return true;
+            }, () -> false);
         } catch (Exception e) {
             return false;
         }
@@ -318,7 +830,9 @@ public class RedisTemplateUtil{
      */
     public boolean hset(String key, String item, Object value, long time) {
         try {
-            redisTemplate.opsForHash().put( key, item, value);
+            if (!hset(key, item, value)) {
+                return false;
+            }
             if (time > 0) {
                 //方法里边已经添加了环境变量
                 expire(key, time);
@@ -384,7 +898,7 @@ public class RedisTemplateUtil{
      */
     public Set<String> sGet(String key) {
         try {
-            return redisTemplate.opsForSet().members( key);
+            return guard.execute(RedisGuard.CommandClass.SLOW, () -> redisTemplate.opsForSet().members( key), () -> null);
         } catch (Exception e) {
             return null;
         }
@@ -441,6 +955,9 @@ public class RedisTemplateUtil{
      */
     public long sSet(String key, String... values) {
         try {
+            if (trackSetVersions) {
+                return sWrite(key, true, 0, values);
+            }
             return redisTemplate.opsForSet().add( key, values);
         } catch (Exception e) {
             return 0;
@@ -448,7 +965,7 @@ public class RedisTemplateUtil{
     }
 
     /**
-     * 将set数据放入缓存
+     * 将set数据放入缓存 开启版本号时版本号与集合设置相同的过期时间
      *
      * @param key    键
      * @param time   时间(秒)
@@ -457,7 +974,10 @@ public class RedisTemplateUtil{
      */
     public long sSet(String key, long time, String... values) {
         try {
-            Long count = redisTemplate.opsForSet().add( key, values);
+            if (trackSetVersions) {
+                return sWrite(key, true, time > 0 ? adaptiveTtl.ttl(key, time) : 0, values);
+            }
+            long count = sSet(key, values);
             if (time > 0) {
                 expire(key, time);
             }
@@ -490,11 +1010,264 @@ public class RedisTemplateUtil{
      */
     public long sRemove(String key, String... values) {
         try {
+            if (trackSetVersions) {
+                return sWrite(key, false, 0, values);
+            }
             return redisTemplate.opsForSet().remove( key, values);
         } catch (Exception e) {
             return 0;
         }
     }
+
+    /**
+     * 交集(SINTER) 在Redis端计算, 只传输结果
+     * 集群模式下所有键需要在同一个slot(使用hash tag)
+     *
+     * @param keys 键 至少一个
+     * @return 交集
+     */
+    public Set<String> sIntersect(String... keys) {
+        try {
+            return guard.execute(RedisGuard.CommandClass.SLOW, () -> redisTemplate.opsForSet()
+                    .intersect(keys[0], Arrays.asList(keys).subList(1, keys.length)), () -> null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 并集(SUNION)
+     *
+     * @param keys 键 至少一个
+     * @return 并集
+     */
+    public Set<String> sUnion(String... keys) {
+        try {
+            return guard.execute(RedisGuard.CommandClass.SLOW, () -> redisTemplate.opsForSet()
+                    .union(keys[0], Arrays.asList(keys).subList(1, keys.length)), () -> null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 差集(SDIFF) 第一个集合减去其余集合
+     *
+     * @param keys 键 至少一个
+     * @return 差集
+     */
+    public Set<String> sDifference(String... keys) {
+        try {
+            return guard.execute(RedisGuard.CommandClass.SLOW, () -> redisTemplate.opsForSet()
+                    .difference(keys[0], Arrays.asList(keys).subList(1, keys.length)), () -> null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 交集的元素个数(SINTERCARD, Redis 7+) 不返回元素, 达到limit后提前结束计算
+     *
+     * @param limit 最多数到几 0为不限
+     * @param keys  键 至少一个
+     * @return 个数
+     */
+    public long sIntersectCard(long limit, String... keys) {
+        List<byte[]> args = new ArrayList<>(keys.length + 3);
+        args.add(RedisCommandSupport.arg(keys.length));
+        for (String key : keys) {
+            args.add(rawKey(key));
+        }
+        if (limit > 0) {
+            args.add(RedisCommandSupport.arg("LIMIT"));
+            args.add(RedisCommandSupport.arg(limit));
+        }
+        Long count = commands.executeInteger("SINTERCARD", args.toArray(new byte[0][]));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 交集保存到destKey(SINTERSTORE) 结果不经过客户端
+     *
+     * @param destKey 结果键 已存在时被覆盖
+     * @param time    结果的过期时间(秒) 小于等于0为永久
+     * @param keys    键 至少一个
+     * @return 结果的元素个数
+     */
+    public long sIntersectAndStore(String destKey, long time, String... keys) {
+        return sStore(SetOperation.INTER, destKey, adaptiveTtl.ttl(destKey, time), keys);
+    }
+
+    /**
+     * 并集保存到destKey(SUNIONSTORE)
+     */
+    public long sUnionAndStore(String destKey, long time, String... keys) {
+        return sStore(SetOperation.UNION, destKey, adaptiveTtl.ttl(destKey, time), keys);
+    }
+
+    /**
+     * 差集保存到destKey(SDIFFSTORE)
+     */
+    public long sDifferenceAndStore(String destKey, long time, String... keys) {
+        return sStore(SetOperation.DIFF, destKey, adaptiveTtl.ttl(destKey, time), keys);
+    }
+
+    /**
+     * 物化的交集 输入集合没有变化且destKey未过期时直接复用, 否则重新计算(SINTERSTORE)
+     * 变化通过 sSet/sRemove/del 维护的版本号判断(需要开启 redis.set.track-versions), 未开启时只能在过期后重新计算;
+     * 不经过本工具类修改集合时调用 sTouch; 任一输入没有版本号时总是重新计算
+     * 注意: 版本号只在 sSet(key, time, ...) 写入时随集合一起过期, 用 expire 单独给输入集合设置过期时间时,
+     * 集合过期不会改变版本号, 这种情况下结果的过期时间不要长于输入集合
+     *
+     * @param destKey 结果键
+     * @param time    结果的过期时间(秒) 小于等于0为永久
+     * @param keys    键 至少一个
+     * @return 结果的元素个数
+     */
+    public long sIntersectMaterialized(String destKey, long time, String... keys) {
+        byte[] rawDest = rawKey(destKey);
+        byte[] rawMeta = rawKey(destKey + SET_VERSION_SUFFIX);
+        byte[][] rawVersions = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rawVersions[i] = rawKey(keys[i] + SET_VERSION_SUFFIX);
+        }
+        // 先读版本再计算, 计算期间输入有变化时记录的是旧版本, 下次调用会重新计算
+        List<Object> state = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            connection.stringCommands().mGet(rawVersions);
+            connection.stringCommands().get(rawMeta);
+            connection.setCommands().sCard(rawDest);
+            connection.keyCommands().exists(rawDest);
+            return connection.closePipeline();
+        });
+        String versions = versionString(state.get(0));
+        byte[] meta = (byte[]) state.get(1);
+        if (versions != null && Boolean.TRUE.equals(state.get(3)) && meta != null
+                && versions.equals(new String(meta, StandardCharsets.UTF_8))) {
+            return (Long) state.get(2);
+        }
+        long ttl = adaptiveTtl.ttl(destKey, time);
+        long size = sStore(SetOperation.INTER, destKey, ttl, keys);
+        if (versions == null) {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().del(rawMeta));
+            return size;
+        }
+        Expiration expiration = ttl > 0 ? Expiration.seconds(ttl) : Expiration.persistent();
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(rawMeta, versions.getBytes(StandardCharsets.UTF_8), expiration, RedisStringCommands.SetOption.upsert()));
+        return size;
+    }
+
+    /**
+     * 标记集合已变化 物化交集下次调用时重新计算
+     */
+    public void sTouch(String key) {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            bumpVersion(connection, rawKey(key + SET_VERSION_SUFFIX), 0);
+            return connection.closePipeline();
+        });
+    }
+
+    /**
+     * 惰性遍历集合(SSCAN) 用于读取大的结果集, 每页一次独立的命令, 不占用连接, 提前退出不需要 close
+     *
+     * @param key     键
+     * @param pattern 元素的匹配模式
+     * @param count   每次SCAN的数量
+     * @return 迭代器
+     */
+    public ScanIterator<String, String> sScan(String key, String pattern, long count) {
+        RedisSerializer<?> valueSerializer = redisTemplate.getValueSerializer();
+        return new ScanIterator<>(commands, "SSCAN", rawKey(key), pattern, count, items -> {
+            List<String> members = new ArrayList<>(items.size());
+            items.forEach(item -> members.add((String) deserialize(valueSerializer, item)));
+            return members;
+        }, Function.identity());
+    }
+
+    private enum SetOperation {
+        INTER, UNION, DIFF
+    }
+
+    private long sStore(SetOperation operation, String destKey, long time, String... keys) {
+        byte[] rawDest = rawKey(destKey);
+        byte[][] rawKeys = rawKeys(Arrays.asList(keys));
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            switch (operation) {
+                case INTER:
+                    connection.setCommands().sInterStore(rawDest, rawKeys);
+                    break;
+                case UNION:
+                    connection.setCommands().sUnionStore(rawDest, rawKeys);
+                    break;
+                default:
+                    connection.setCommands().sDiffStore(rawDest, rawKeys);
+            }
+            if (time > 0) {
+                connection.keyCommands().expire(rawDest, time);
+            }
+            return connection.closePipeline();
+        });
+        Long size = (Long) replies.get(0);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * SADD/SREM 和版本号递增在一个管道中执行
+     *
+     * @param ttl 集合和版本号的过期时间(秒) 小于等于0时不设置
+     */
+    private long sWrite(String key, boolean add, long ttl, String... values) {
+        byte[] raw = rawKey(key);
+        byte[][] rawValues = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            rawValues[i] = serialize(redisTemplate.getValueSerializer(), values[i]);
+        }
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            if (add) {
+                connection.setCommands().sAdd(raw, rawValues);
+            } else {
+                connection.setCommands().sRem(raw, rawValues);
+            }
+            if (ttl > 0) {
+                connection.keyCommands().expire(raw, ttl);
+            }
+            bumpVersion(connection, rawKey(key + SET_VERSION_SUFFIX), ttl);
+            return connection.closePipeline();
+        });
+        Long count = (Long) replies.get(0);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 递增版本号 版本号不存在时先从当前时间(微秒)开始, 删除或过期后重建的版本号不会与之前记录的相同
+     */
+    private static void bumpVersion(RedisConnection connection, byte[] rawVersion, long ttl) {
+        byte[] start = String.valueOf(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis())).getBytes(StandardCharsets.US_ASCII);
+        connection.stringCommands().set(rawVersion, start, Expiration.persistent(), RedisStringCommands.SetOption.ifAbsent());
+        connection.stringCommands().incr(rawVersion);
+        if (ttl > 0) {
+            connection.keyCommands().expire(rawVersion, ttl);
+        }
+    }
+
+    /**
+     * @return 各输入的版本号 有输入没有版本号时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private static String versionString(Object reply) {
+        StringBuilder versions = new StringBuilder();
+        for (byte[] version : (List<byte[]>) reply) {
+            if (version == null) {
+                return null;
+            }
+            versions.append(new String(version, StandardCharsets.US_ASCII)).append(',');
+        }
+        return versions.toString();
+    }
     //===============================list=================================
 
     /**
@@ -507,7 +1280,7 @@ public class RedisTemplateUtil{
      */
     public List<String> lGet(String key, long start, long end) {
         try {
-            return redisTemplate.opsForList().range( key, start, end);
+            return guard.execute(RedisGuard.CommandClass.SLOW, () -> redisTemplate.opsForList().range( key, start, end), () -> null);
         } catch (Exception e) {
             return null;
         }
@@ -677,7 +1450,7 @@ public class RedisTemplateUtil{
         //插入数据
         boundValueOperations.rightPushAll(values);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public void lRightPush(String key, long timeout, TimeUnit timeUnit, String value) {
@@ -686,7 +1459,7 @@ public class RedisTemplateUtil{
         //插入数据
         boundValueOperations.rightPush(value);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public String lRightPop(String key) {
@@ -701,7 +1474,7 @@ public class RedisTemplateUtil{
         //插入数据
         boundValueOperations.leftPushAll(values);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public void lLeftPush(String key, long timeout, TimeUnit timeUnit, String value) {
@@ -710,7 +1483,7 @@ public class RedisTemplateUtil{
         //插入数据
         boundValueOperations.leftPush(value);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public String lLeftPop(String key) {
@@ -809,7 +1582,7 @@ public class RedisTemplateUtil{
      */
     public Set<String> zsetReverseRange(String key, long start, long end) {
         try {
-            return redisTemplate.opsForZSet().reverseRange( key, start, end);
+            return read(() -> redisTemplate.opsForZSet().reverseRange( key, start, end), "zrevrange", key, start, end);
         } catch (Exception e) {
         }
         return null;
@@ -863,6 +1636,9 @@ public class RedisTemplateUtil{
 
     public Double zScore(String key, String value) {
         try {
+            if (batching()) {
+                return (Double) join(batcher.zScore(rawKey(key), serialize(redisTemplate.getValueSerializer(), value)));
+            }
             return redisTemplate.opsForZSet().score( key, value);
         } catch (Exception e) {
         }
@@ -902,6 +1678,48 @@ public class RedisTemplateUtil{
         return boundZSetOperations.rangeByScoreWithScores(start, end);
     }
 
+    /**
+     * 按下标从低分到高分获取成员及分数 结果放入并列的数组
+     *
+     * @param key
+     * @param start
+     * @param stop
+     * @return
+     */
+    public ZSetArrays zRangeArrays(String key, long start, long stop) {
+        return toArrays(redisTemplate.execute((RedisCallback<Set<RedisZSetCommands.Tuple>>) connection ->
+                connection.zSetCommands().zRangeWithScores(rawKey(key), start, stop)));
+    }
+
+    /**
+     * 按下标从高分到低分获取成员及分数 结果放入并列的数组
+     *
+     * @param key
+     * @param start
+     * @param stop
+     * @return
+     */
+    public ZSetArrays zRevRangeArrays(String key, long start, long stop) {
+        return toArrays(redisTemplate.execute((RedisCallback<Set<RedisZSetCommands.Tuple>>) connection ->
+                connection.zSetCommands().zRevRangeWithScores(rawKey(key), start, stop)));
+    }
+
+    private ZSetArrays toArrays(Set<RedisZSetCommands.Tuple> tuples) {
+        int size = tuples == null ? 0 : tuples.size();
+        String[] members = new String[size];
+        double[] scores = new double[size];
+        if (tuples != null) {
+            RedisSerializer<?> valueSerializer = redisTemplate.getValueSerializer();
+            int i = 0;
+            for (RedisZSetCommands.Tuple tuple : tuples) {
+                members[i] = (String) deserialize(valueSerializer, tuple.getValue());
+                scores[i] = tuple.getScore();
+                i++;
+            }
+        }
+        return new ZSetArrays(members, scores);
+    }
+
     public Set<String> zRange(String key, long start, long stop) {
         BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps( key);
         return boundZSetOperations.range(start, stop);
@@ -954,6 +1772,160 @@ public class RedisTemplateUtil{
         return null;
     }
 
+    //============================geo=============================
+
+    /**
+     * 批量写入位置(GEOADD) 按 redis.multi.chunk-size 分块在一个管道中发送
+     *
+     * @param key       键
+     * @param locations 成员 -> 位置(x为经度, y为纬度)
+     * @return 新增的成员数
+     */
+    public long geoAdd(String key, Map<String, Point> locations) {
+        byte[] raw = rawKey(key);
+        List<Map<byte[], Point>> chunks = new ArrayList<>();
+        Map<byte[], Point> chunk = new LinkedHashMap<>();
+        for (Map.Entry<String, Point> entry : locations.entrySet()) {
+            chunk.put(serialize(redisTemplate.getValueSerializer(), entry.getKey()), entry.getValue());
+            if (chunk.size() == multiChunkSize) {
+                chunks.add(chunk);
+                chunk = new LinkedHashMap<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            for (Map<byte[], Point> members : chunks) {
+                connection.geoCommands().geoAdd(raw, members);
+            }
+            return connection.closePipeline();
+        });
+        geoTiles.invalidate(geoCacheKey(key));
+        long added = 0;
+        for (Object reply : replies) {
+            added += reply == null ? 0 : (Long) reply;
+        }
+        return added;
+    }
+
+    /**
+     * 删除位置
+     *
+     * @param key     键
+     * @param members 成员
+     * @return 删除的个数
+     */
+    public long geoRemove(String key, String... members) {
+        Long removed = redisTemplate.opsForGeo().remove(key, members);
+        geoTiles.invalidate(geoCacheKey(key));
+        return removed == null ? 0 : removed;
+    }
+
+    /**
+     * 两个成员间的距离(GEODIST)
+     *
+     * @return 距离(米) 成员不存在时为null
+     */
+    public Double geoDist(String key, String member1, String member2) {
+        Distance distance = redisTemplate.opsForGeo().distance(key, member1, member2, RedisGeoCommands.DistanceUnit.METERS);
+        return distance == null ? null : distance.getValue();
+    }
+
+    /**
+     * 按半径搜索(GEOSEARCH BYRADIUS, Redis 6.2+)
+     *
+     * @param key          键
+     * @param longitude    中心经度
+     * @param latitude     中心纬度
+     * @param radiusMeters 半径(米)
+     * @param count        最多返回几个 小于等于0为不限
+     * @param any          为true时找到count个就返回, 不保证是最近的, 大集合上更快
+     * @return 结果 按距离升序(any时不保证)
+     */
+    public List<GeoResult<RedisGeoCommands.GeoLocation<String>>> geoSearchRadius(String key, double longitude, double latitude,
+                                                                                 double radiusMeters, long count, boolean any) {
+        return orEmpty(geoSearch(key, longitude, latitude, count, any, "BYRADIUS", radiusMeters, "m"));
+    }
+
+    /**
+     * 按矩形搜索(GEOSEARCH BYBOX) 矩形以指定点为中心
+     *
+     * @param widthMeters  宽(米) 东西方向
+     * @param heightMeters 高(米) 南北方向
+     */
+    public List<GeoResult<RedisGeoCommands.GeoLocation<String>>> geoSearchBox(String key, double longitude, double latitude,
+                                                                              double widthMeters, double heightMeters, long count, boolean any) {
+        return orEmpty(geoSearch(key, longitude, latitude, count, any, "BYBOX", widthMeters, heightMeters, "m"));
+    }
+
+    /**
+     * 附近搜索 同一geohash格子内的查询在 redis.geo.tile-cache.ttl-ms 内复用候选点, 本地按实际距离过滤
+     * 结果与 geoSearchRadius(按距离升序) 一致, 但可能有缓存时间内的延迟; 通过本工具类 geoAdd/geoRemove 会立即失效
+     * 查询失败(熔断、超时)时本次返回空列表, 不缓存
+     */
+    public List<GeoResult<RedisGeoCommands.GeoLocation<String>>> geoNearbyCached(String key, double longitude, double latitude,
+                                                                                 double radiusMeters, long count) {
+        return geoTiles.nearby(geoCacheKey(key), longitude, latitude, radiusMeters, count,
+                (lon, lat, radius, limit) -> geoSearch(key, lon, lat, limit, false, "BYRADIUS", radius, "m"));
+    }
+
+    private static <T> List<T> orEmpty(List<T> results) {
+        return results == null ? new ArrayList<>() : results;
+    }
+
+    /**
+     * @return 结果 查询失败(熔断、超时)时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private List<GeoResult<RedisGeoCommands.GeoLocation<String>>> geoSearch(String key, double longitude, double latitude,
+                                                                             long count, boolean any, Object... shape) {
+        List<byte[]> args = new ArrayList<>();
+        args.add(rawKey(key));
+        args.add(RedisCommandSupport.arg("FROMLONLAT"));
+        args.add(RedisCommandSupport.arg(longitude));
+        args.add(RedisCommandSupport.arg(latitude));
+        for (Object arg : shape) {
+            args.add(RedisCommandSupport.arg(arg));
+        }
+        args.add(RedisCommandSupport.arg("ASC"));
+        if (count > 0) {
+            args.add(RedisCommandSupport.arg("COUNT"));
+            args.add(RedisCommandSupport.arg(count));
+            if (any) {
+                args.add(RedisCommandSupport.arg("ANY"));
+            }
+        }
+        args.add(RedisCommandSupport.arg("WITHDIST"));
+        args.add(RedisCommandSupport.arg("WITHCOORD"));
+        List<Object> reply = guard.execute(RedisGuard.CommandClass.SLOW,
+                () -> commands.executeArray("GEOSEARCH", args.toArray(new byte[0][])), () -> null);
+        if (reply == null) {
+            return null;
+        }
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> results = new ArrayList<>(reply.size());
+        for (Object item : reply) {
+            // [成员, 距离, [经度, 纬度]]
+            List<Object> fields = (List<Object>) item;
+            List<Object> coordinate = (List<Object>) fields.get(2);
+            String member = (String) deserialize(redisTemplate.getValueSerializer(), fields.get(0));
+            Point point = new Point(parseDouble(coordinate.get(0)), parseDouble(coordinate.get(1)));
+            results.add(new GeoResult<>(new RedisGeoCommands.GeoLocation<>(member, point),
+                    new Distance(parseDouble(fields.get(1)), RedisGeoCommands.DistanceUnit.METERS)));
+        }
+        return results;
+    }
+
+    private String geoCacheKey(String key) {
+        Integer database = keyBuilder.currentDatabase();
+        return (database == null ? "" : database + "/") + new String(rawKey(key), StandardCharsets.ISO_8859_1);
+    }
+
+    private static double parseDouble(Object reply) {
+        return Double.parseDouble(reply instanceof byte[] ? new String((byte[]) reply, StandardCharsets.US_ASCII) : String.valueOf(reply));
+    }
+
     /**
      * 通过管道批量获取
      * @return
@@ -965,7 +1937,7 @@ public class RedisTemplateUtil{
             public Long doInRedis(RedisConnection connection) throws DataAccessException {
                 connection.openPipeline();
                 for (String key : keys) {
-                    connection.get(( key).getBytes());
+                    connection.get(keyBuilder.rawKey(key));
                 }
                 return null;
             }
@@ -974,26 +1946,236 @@ public class RedisTemplateUtil{
     }
 
     /**
-     * 通过管道批量获取
-     * @return
+     * 批量获取 按 redis.multi.chunk-size 分块执行MGET, 单机时各块在一个管道中发送;
+     * 集群时先按slot分组, 每个MGET只涉及一个slot
+     * @return 与keys顺序一致的值 不存在的为null
      */
     public List<String> mutiGet(Collection<String> keys){
-        List<String> list=new ArrayList<>();
-        keys.forEach(x->{
-            list.add(x);
+        byte[][] rawKeys = rawKeys(keys);
+        String[] values = new String[rawKeys.length];
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            boolean cluster = connection instanceof RedisClusterConnection;
+            List<int[]> chunks = chunkIndexes(rawKeys, cluster);
+            List<Object> replies = mGetChunks(connection, rawKeys, chunks, cluster);
+            for (int c = 0; c < chunks.size(); c++) {
+                fill(values, chunks.get(c), replies.get(c));
+            }
+            return null;
         });
-        List<String> list1 = redisTemplate.opsForValue().multiGet(list);
-        return list1;
+        if (trace.isEnabled()) {
+            int i = 0;
+            for (String key : keys) {
+                String value = values[i++];
+                trace.record(TraceFormat.Command.GET, key, TraceFormat.FLAG_BATCH | (value != null ? TraceFormat.FLAG_HIT : 0), size(value), 0);
+            }
+        }
+        return Arrays.asList(values);
     }
+
     /**
-     * 通过管道批量保存
-     * @return
+     * 分块批量获取 取回的块交给 consumer, 内存占用只和块大小有关, 用于流式输出
+     * 每 STREAM_WINDOW_CHUNKS 块用一次短的 execute 以管道取回, consumer 在连接回调之外调用,
+     * 慢的 consumer(如写给慢速的HTTP客户端)不占用Redis连接
+     *
+     * @param keys     键
+     * @param consumer 参数为该块的键和对应的值(不存在的为null), 按块的顺序调用
+     */
+    public void mutiGet(List<String> keys, BiConsumer<List<String>, List<String>> consumer){
+        if (keys.isEmpty()) {
+            return;
+        }
+        byte[][] rawKeys = rawKeys(keys);
+        boolean cluster = Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection));
+        List<int[]> chunks = chunkIndexes(rawKeys, cluster);
+        for (int from = 0; from < chunks.size(); from += STREAM_WINDOW_CHUNKS) {
+            List<int[]> window = chunks.subList(from, Math.min(chunks.size(), from + STREAM_WINDOW_CHUNKS));
+            List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> mGetChunks(connection, rawKeys, window, cluster));
+            for (int c = 0; c < window.size(); c++) {
+                int[] chunk = window.get(c);
+                String[] values = new String[chunk.length];
+                List<String> chunkKeys = new ArrayList<>(chunk.length);
+                for (int index : chunk) {
+                    chunkKeys.add(keys.get(index));
+                }
+                fill(values, identity(chunk.length), replies.get(c));
+                consumer.accept(chunkKeys, Arrays.asList(values));
+            }
+        }
+    }
+
+    /**
+     * 每块一条MGET 单机时在一个管道中发送, 集群时每块单独发送(同一块的键在同一个slot)
+     *
+     * @return 每块的回复
+     */
+    private List<Object> mGetChunks(RedisConnection connection, byte[][] rawKeys, List<int[]> chunks, boolean cluster) {
+        if (cluster) {
+            List<Object> replies = new ArrayList<>(chunks.size());
+            for (int[] chunk : chunks) {
+                replies.add(connection.stringCommands().mGet(select(rawKeys, chunk)));
+            }
+            return replies;
+        }
+        connection.openPipeline();
+        for (int[] chunk : chunks) {
+            connection.stringCommands().mGet(select(rawKeys, chunk));
+        }
+        return connection.closePipeline();
+    }
+
+    /**
+     * 批量保存 分块执行MSET, 分块方式同 mutiGet
      */
     public void mutiSet(Map<String, String> valueMap){
-        Map<String, String> newValueMap = new HashMap<>();
-        valueMap.forEach((key, value) -> {
-            newValueMap.put(key, value);
+        List<String> keys = new ArrayList<>(valueMap.keySet());
+        byte[][] rawKeys = rawKeys(keys);
+        byte[][] rawValues = new byte[rawKeys.length][];
+        for (int i = 0; i < rawValues.length; i++) {
+            rawValues[i] = serialize(redisTemplate.getValueSerializer(), valueMap.get(keys.get(i)));
+        }
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            boolean cluster = connection instanceof RedisClusterConnection;
+            if (!cluster) {
+                connection.openPipeline();
+            }
+            for (int[] chunk : chunkIndexes(rawKeys, cluster)) {
+                Map<byte[], byte[]> tuples = new LinkedHashMap<>(chunk.length * 2);
+                for (int index : chunk) {
+                    tuples.put(rawKeys[index], rawValues[index]);
+                }
+                connection.stringCommands().mSet(tuples);
+            }
+            if (!cluster) {
+                connection.closePipeline();
+            }
+            return null;
         });
-        redisTemplate.opsForValue().multiSet(newValueMap);
+        keys.forEach(this::invalidateNearCache);
+        if (trace.isEnabled()) {
+            valueMap.forEach((key, value) -> trace.record(TraceFormat.Command.SET, key, TraceFormat.FLAG_BATCH, size(value), 0));
+        }
+    }
+
+    private void recordRead(TraceFormat.Command command, String key, Object value) {
+        adaptiveTtl.recordRead(key, value != null);
+        trace.record(command, key, value != null ? TraceFormat.FLAG_HIT : 0, value instanceof String ? ((String) value).length() : 0, 0);
+    }
+
+    private static int size(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * 读请求 开启合并时相同参数的并发请求只执行一次
+     *
+     * @param loader  实际的读操作
+     * @param command 命令名
+     * @param args    参数 和命令名、当前租户一起组成合并的key
+     * @return
+     */
+    private <T> T read(Supplier<T> loader, String command, Object... args) {
+        if (!coalesce) {
+            return loader.get();
+        }
+        List<Object> flightKey = new ArrayList<>(args.length + 2);
+        flightKey.add(command);
+        flightKey.add(RedisKeyBuilder.currentTenant());
+        Collections.addAll(flightKey, args);
+        return singleFlight.execute(flightKey, loader);
+    }
+
+    /**
+     * 是否走自动攒批 DATABASE隔离模式下租户的库和批次执行线程不一致, 直接执行
+     */
+    private boolean batching() {
+        return batcher != null && keyBuilder.currentDatabase() == null;
+    }
+
+    /**
+     * 是否走 CLIENT TRACKING 本地缓存 DATABASE隔离模式下跟踪连接的库可能不同, 直接读Redis
+     */
+    private boolean tracking(String key) {
+        return nearCache.isAvailable() && keyBuilder.currentDatabase() == null && nearCache.cacheable(rawKey(key));
+    }
+
+    private void invalidateNearCache(String key) {
+        if (nearCache.isAvailable()) {
+            nearCache.invalidate(rawKey(key));
+        }
+    }
+
+    private byte[] rawKey(String key) {
+        return keyBuilder.rawKey(key);
+    }
+
+    private byte[][] rawKeys(Collection<String> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            rawKeys[i++] = rawKey(key);
+        }
+        return rawKeys;
+    }
+
+    /**
+     * 批量命令的分块 每块为键的下标, 集群时同一块的键在同一个slot
+     */
+    private List<int[]> chunkIndexes(byte[][] rawKeys, boolean cluster) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < rawKeys.length; i++) {
+            groups.computeIfAbsent(cluster ? ClusterSlotHashUtil.calculateSlot(rawKeys[i]) : 0, slot -> new ArrayList<>()).add(i);
+        }
+        List<int[]> chunks = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            for (int from = 0; from < group.size(); from += multiChunkSize) {
+                List<Integer> part = group.subList(from, Math.min(group.size(), from + multiChunkSize));
+                chunks.add(part.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        return chunks;
+    }
+
+    private static int[] identity(int length) {
+        int[] indexes = new int[length];
+        for (int i = 0; i < length; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    private static byte[][] select(byte[][] rawKeys, int[] indexes) {
+        byte[][] selected = new byte[indexes.length][];
+        for (int i = 0; i < indexes.length; i++) {
+            selected[i] = rawKeys[indexes[i]];
+        }
+        return selected;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fill(String[] values, int[] indexes, Object reply) {
+        List<byte[]> raws = (List<byte[]>) reply;
+        for (int i = 0; i < indexes.length; i++) {
+            values[indexes[i]] = raws == null ? null : (String) deserialize(redisTemplate.getValueSerializer(), raws.get(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(RedisSerializer<?> serializer, Object value) {
+        return ((RedisSerializer<Object>) serializer).serialize(value);
+    }
+
+    private Object deserialize(RedisSerializer<?> serializer, Object raw) {
+        return raw == null ? null : serializer.deserialize((byte[]) raw);
+    }
+
+    private Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 }
@@ -0,0 +1,134 @@
+package com.wode.util;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * RedisTemplateUtil.transaction 回调中使用的事务
+ * 读操作在WATCH之后立即执行; 写操作先在本地排队, 回调结束后在 MULTI/EXEC 中一次发出
+ * 被监视的键在WATCH之后有变化时EXEC失败, 整个回调重新执行, 所以回调中不要有Redis以外的副作用
+ */
+public class RedisTransaction {
+
+    private final RedisOperations<String, String> operations;
+
+    private final Function<String, byte[]> rawKey;
+
+    private final List<Consumer<RedisOperations<String, String>>> writes = new ArrayList<>();
+
+    private final Set<String> writtenKeys = new LinkedHashSet<>();
+
+    private boolean discarded;
+
+    RedisTransaction(RedisOperations<String, String> operations, Function<String, byte[]> rawKey) {
+        this.operations = operations;
+        this.rawKey = rawKey;
+    }
+
+    //============================读=============================
+
+    public String get(String key) {
+        return operations.opsForValue().get(key);
+    }
+
+    /**
+     * 读取整数 用于 incrBy/decrBy 维护的计数
+     *
+     * @param key          键
+     * @param defaultValue 不存在时的值
+     */
+    public long getLong(String key, long defaultValue) {
+        byte[] raw = operations.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey.apply(key)));
+        return raw == null ? defaultValue : NumericCodec.parseLong(raw);
+    }
+
+    public Object hget(String key, String item) {
+        return operations.opsForHash().get(key, item);
+    }
+
+    public boolean hasKey(String key) {
+        return Boolean.TRUE.equals(operations.hasKey(key));
+    }
+
+    //============================写=============================
+
+    public void set(String key, String value) {
+        write(key, ops -> ops.opsForValue().set(key, value));
+    }
+
+    /**
+     * @param time 时间(秒) 小于等于0为永久
+     */
+    public void set(String key, String value, long time) {
+        if (time <= 0) {
+            set(key, value);
+            return;
+        }
+        write(key, ops -> ops.opsForValue().set(key, value, time, TimeUnit.SECONDS));
+    }
+
+    public void incrBy(String key, long delta) {
+        write(key, ops -> ops.opsForValue().increment(key, delta));
+    }
+
+    public void decrBy(String key, long delta) {
+        write(key, ops -> ops.opsForValue().increment(key, -delta));
+    }
+
+    public void hset(String key, String item, Object value) {
+        write(key, ops -> ops.opsForHash().put(key, item, value));
+    }
+
+    public void hincr(String key, String item, long delta) {
+        write(key, ops -> ops.opsForHash().increment(key, item, delta));
+    }
+
+    public void del(String key) {
+        write(key, ops -> ops.delete(key));
+    }
+
+    public void expire(String key, long seconds) {
+        write(key, ops -> ops.expire(key, seconds, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 放弃本次事务 已排队的写操作不会执行, 也不会重试
+     */
+    public void discard() {
+        discarded = true;
+    }
+
+    boolean isDiscarded() {
+        return discarded;
+    }
+
+    boolean hasWrites() {
+        return !writes.isEmpty();
+    }
+
+    Set<String> getWrittenKeys() {
+        return writtenKeys;
+    }
+
+    /**
+     * 在MULTI之后调用 把排队的写操作加入事务
+     */
+    void applyWrites() {
+        for (Consumer<RedisOperations<String, String>> write : writes) {
+            write.accept(operations);
+        }
+    }
+
+    private void write(String key, Consumer<RedisOperations<String, String>> write) {
+        writes.add(write);
+        writtenKeys.add(key);
+    }
+}
@@ -0,0 +1,228 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动预热 应用启动完成后在后台执行, 完成前 /redis/ready 返回503, 负载均衡据此摘除未预热的节点
+ * 1. 建立并校验连接: 并发PING, DATABASE隔离模式下每个租户库都PING一次
+ *    Lettuce 默认共享一条原生连接(未引入 commons-pool2, spring.redis.jedis.pool.* 对其无效), 并发PING校验的是这条连接和IO线程, 不会建立连接池
+ * 2. 序列化预热: 用常见类型反复走 Jackson 序列化/反序列化, 让首个请求不再承担类加载和JIT
+ * 3. 热点键预加载: 按键列表和SCAN模式收集键, 分批并行通过管道载入本地缓存(CLIENT TRACKING 开启时)
+ * 任何一步失败只记录日志, 不阻止就绪, 避免Redis故障时节点永远不可用
+ */
+@Component
+public class RedisWarmup implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisWarmup.class);
+
+    public enum State {
+        PENDING, RUNNING, READY
+    }
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private RedisKeyBuilder keyBuilder;
+
+    @Resource
+    private ClientTrackingCache nearCache;
+
+    @Value("${redis.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${redis.warmup.connections:4}")
+    private int connections;
+
+    @Value("${redis.warmup.serializer-iterations:20000}")
+    private int serializerIterations;
+
+    @Value("${redis.warmup.keys:}")
+    private String keys;
+
+    @Value("${redis.warmup.patterns:}")
+    private String patterns;
+
+    @Value("${redis.warmup.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${redis.warmup.batch-size:500}")
+    private int batchSize;
+
+    @Value("${redis.warmup.parallelism:4}")
+    private int parallelism;
+
+    @Value("${redis.warmup.timeout-ms:60000}")
+    private long timeoutMillis;
+
+    private volatile State state = State.PENDING;
+
+    private final Map<String, Object> report = new ConcurrentHashMap<>();
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled) {
+            state = State.READY;
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "redis-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.putAll(report);
+        return status;
+    }
+
+    private void warmUp() {
+        state = State.RUNNING;
+        long start = System.currentTimeMillis();
+        step("connections", this::warmConnections);
+        step("serializer", this::warmSerializer);
+        step("preload", this::preload);
+        report.put("elapsedMillis", System.currentTimeMillis() - start);
+        state = State.READY;
+        log.info("redis warm-up finished: {}", report);
+    }
+
+    private void step(String name, Callable<Object> step) {
+        long start = System.currentTimeMillis();
+        try {
+            report.put(name, step.call());
+        } catch (Exception e) {
+            log.warn("redis warm-up step {} failed", name, e);
+            report.put(name, "failed: " + e.getMessage());
+        }
+        report.put(name + "Millis", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 并发PING 共享连接上多个请求同时在途, 提前完成连接建立和IO线程的初始化
+     */
+    private Object warmConnections() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try {
+            List<Future<String>> pings = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                pings.add(executor.submit(() -> redisTemplate.execute((RedisCallback<String>) connection -> connection.ping())));
+            }
+            for (Future<String> ping : pings) {
+                ping.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (String tenant : keyBuilder.getTenantDatabases().keySet()) {
+            RedisKeyBuilder.setTenant(tenant);
+            try {
+                redisTemplate.execute((RedisCallback<String>) connection -> connection.ping());
+            } finally {
+                RedisKeyBuilder.clearTenant();
+            }
+        }
+        return connections + keyBuilder.getTenantDatabases().size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object warmSerializer() {
+        RedisSerializer<Object> values = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 1L);
+        map.put("name", "warmup");
+        map.put("tags", Arrays.asList("a", "b"));
+        Object[] samples = {"warmup", 12345L, 1.5D, Boolean.TRUE, map, new ArrayList<>(map.keySet())};
+        long checksum = 0;
+        for (int i = 0; i < serializerIterations; i++) {
+            checksum += keySerializer.serialize("warmup:" + i).length;
+            for (Object sample : samples) {
+                byte[] raw = values.serialize(sample);
+                checksum += raw.length;
+                Object back = values.deserialize(raw);
+                checksum += back == null ? 0 : 1;
+            }
+        }
+        return checksum > 0 ? serializerIterations : 0;
+    }
+
+    private Object preload() throws Exception {
+        // 首次连接失败(服务端不支持跟踪)时立即返回, 不等满超时
+        if (!nearCache.awaitAvailable(timeoutMillis)) {
+            return "skipped: no local cache";
+        }
+        List<byte[]> rawKeys = collectKeys();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        AtomicInteger loaded = new AtomicInteger();
+        try {
+            List<Future<?>> batches = new ArrayList<>();
+            for (int from = 0; from < rawKeys.size(); from += batchSize) {
+                List<byte[]> batch = rawKeys.subList(from, Math.min(rawKeys.size(), from + batchSize));
+                batches.add(executor.submit(() -> loaded.addAndGet(nearCache.preload(batch))));
+            }
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            for (Future<?> batch : batches) {
+                batch.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return loaded.get() + "/" + rawKeys.size();
+    }
+
+    /**
+     * 配置的键加上SCAN模式匹配到的键 最多 max-keys 个
+     */
+    private List<byte[]> collectKeys() {
+        List<byte[]> rawKeys = new ArrayList<>();
+        for (String key : StringUtils.commaDelimitedListToSet(keys)) {
+            if (rawKeys.size() < maxKeys) {
+                rawKeys.add(keyBuilder.rawKey(key.trim()));
+            }
+        }
+        for (String pattern : StringUtils.commaDelimitedListToSet(patterns)) {
+            if (rawKeys.size() >= maxKeys) {
+                break;
+            }
+            // 模式加上环境/租户前缀后再匹配
+            String rawPattern = new String(keyBuilder.rawKey(pattern.trim()), StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                ScanOptions options = ScanOptions.scanOptions().match(rawPattern).count(1000).build();
+                try (Cursor<byte[]> cursor = connection.scan(options)) {
+                    while (cursor.hasNext() && rawKeys.size() < maxKeys) {
+                        rawKeys.add(cursor.next());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        }
+        return rawKeys;
+    }
+}
@@ -0,0 +1,116 @@
+package com.wode.util;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * SCAN系列命令(SSCAN/HSCAN/ZSCAN)的惰性迭代器
+ * 每一页用一次独立的短命令读取, 两页之间不占用连接, 提前退出不需要 close(保留 close 只为兼容 try-with-resources)
+ * 与 SCAN 语义一致: 遍历期间被修改的集合可能返回重复的元素
+ *
+ * @param <S> 解码后的元素
+ * @param <T> 返回的元素
+ */
+public class ScanIterator<S, T> implements Iterator<T>, Closeable {
+
+    private static final byte[] START = "0".getBytes(StandardCharsets.US_ASCII);
+
+    private final RedisCommandSupport commands;
+
+    private final String command;
+
+    private final byte[] key;
+
+    private final byte[] pattern;
+
+    private final long count;
+
+    private final Function<List<byte[]>, List<S>> decoder;
+
+    private final Function<S, T> mapper;
+
+    private byte[] cursor = START;
+
+    private Iterator<S> page = Collections.emptyIterator();
+
+    private boolean finished;
+
+    /**
+     * @param commands 执行命令
+     * @param command  SSCAN/HSCAN/ZSCAN
+     * @param key      序列化后的键
+     * @param pattern  匹配模式 为null时不过滤
+     * @param count    每页的数量
+     * @param decoder  把一页的原始回复解码为元素 HSCAN/ZSCAN 的回复是成对的
+     * @param mapper   元素转换
+     */
+    public ScanIterator(RedisCommandSupport commands, String command, byte[] key, String pattern, long count,
+                        Function<List<byte[]>, List<S>> decoder, Function<S, T> mapper) {
+        this.commands = commands;
+        this.command = command;
+        this.key = key;
+        this.pattern = pattern == null ? null : pattern.getBytes(StandardCharsets.UTF_8);
+        this.count = count;
+        this.decoder = decoder;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            fetch();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return mapper.apply(page.next());
+    }
+
+    /**
+     * 停止遍历 不持有连接, 不调用也不会泄漏
+     */
+    @Override
+    public void close() {
+        finished = true;
+        page = Collections.emptyIterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetch() {
+        List<byte[]> args = new ArrayList<>(6);
+        args.add(key);
+        args.add(cursor);
+        if (pattern != null) {
+            args.add(RedisCommandSupport.arg("MATCH"));
+            args.add(pattern);
+        }
+        args.add(RedisCommandSupport.arg("COUNT"));
+        args.add(RedisCommandSupport.arg(count));
+        List<Object> reply = commands.executeArray(command, args.toArray(new byte[0][]));
+        cursor = (byte[]) reply.get(0);
+        finished = Arrays.equals(cursor, START);
+        List<byte[]> items = (List<byte[]>) reply.get(1);
+        page = decoder.apply(items == null ? Collections.emptyList() : items).iterator();
+    }
+
+    /**
+     * HSCAN/ZSCAN 的回复按 (项, 值) 成对解码
+     */
+    public static <K, V> List<Map.Entry<K, V>> pairs(List<byte[]> items, Function<byte[], K> first, Function<byte[], V> second) {
+        List<Map.Entry<K, V>> entries = new ArrayList<>(items.size() / 2);
+        for (int i = 0; i + 1 < items.size(); i += 2) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(first.apply(items.get(i)), second.apply(items.get(i + 1))));
+        }
+        return entries;
+    }
+}
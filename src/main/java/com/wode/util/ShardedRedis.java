@@ -0,0 +1,668 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 客户端一致性哈希分片 把键分布到多个独立的Redis实例(不需要Redis Cluster)
+ * 单键命令发到键所在的分片; mutiGet/mutiSet/delBatch/pipelined 按分片拆开, 各分片并行执行, 每个分片内按 chunk-size 分块并走管道
+ * 键和值的序列化与 redisTemplate 一致, 分片上的数据 RedisTemplateUtil 也能读
+ * addShard 增加分片后只有约 1/(N+1) 的键换分片: 新的环立即生效, 迁移完成前读取未命中时再查一次原分片,
+ * 删除同时删除原分片; 迁移用 DUMP/RESTORE(不覆盖), 迁移期间新写入的值不会被旧值覆盖;
+ * DUMP 之后对原分片的删除和设置过期时间记入墓碑, 键迁移后在目标分片上补做(值未被新写入替换时), 不会把删除的键带回来
+ * addShard 只改变本进程的环, 不通知其他进程: 多个实例共用分片时, 其他实例仍按旧环读写, 迁移后写到原分片的键会滞留在那里;
+ * 扩容时应先让所有实例以相同的 redis.shards 重启, 或保证迁移期间只有执行迁移的进程写入
+ * DATABASE 租户隔离模式下各分片都使用 spring.redis.database, 不按租户切换库
+ * 配置: redis.shards=名字=host:port,... 名字决定在环上的位置, 换地址时保持名字不变键就不会移动
+ */
+public class ShardedRedis implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedRedis.class);
+
+    public static final class Shard {
+
+        private final String name;
+
+        private final String address;
+
+        private final LettuceConnectionFactory connectionFactory;
+
+        private final RedisTemplate<String, Object> template;
+
+        private Shard(String name, String address, LettuceConnectionFactory connectionFactory, RedisTemplate<String, Object> template) {
+            this.name = name;
+            this.address = address;
+            this.connectionFactory = connectionFactory;
+            this.template = template;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public RedisTemplate<String, Object> getTemplate() {
+            return template;
+        }
+    }
+
+    /**
+     * 迁移结果
+     */
+    public static final class Migration {
+
+        private long scanned;
+
+        private long moved;
+
+        private long skipped;
+
+        private long reconciled;
+
+        private long elapsedMillis;
+
+        public long getScanned() {
+            return scanned;
+        }
+
+        /**
+         * 迁移到其他分片的键数
+         */
+        public long getMoved() {
+            return moved;
+        }
+
+        /**
+         * 目标分片上已有新值或迁移前已过期/删除, 没有迁移的键数
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * 迁移途中被删除或设置了过期时间, 迁移后在目标分片上补做的键数
+         */
+        public long getReconciled() {
+            return reconciled;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("scanned=%d moved=%d (%.2f%%) skipped=%d reconciled=%d elapsed=%dms", scanned, moved,
+                    scanned == 0 ? 0 : moved * 100.0 / scanned, skipped, reconciled, elapsedMillis);
+        }
+    }
+
+    /**
+     * 不覆盖地RESTORE, 成功时返回目标分片上的DUMP(作为之后比较的版本), 目标已有值时返回nil
+     */
+    private static final byte[] RESTORE_SCRIPT = ("local ok = redis.pcall('RESTORE', KEYS[1], ARGV[2], ARGV[1]) "
+            + "if type(ok) == 'table' and ok.err then "
+            + "if string.find(ok.err, 'BUSYKEY') then return false end "
+            + "return ok end "
+            + "return redis.call('DUMP', KEYS[1])").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 目标分片上的值仍是迁移过去的版本时补做删除(ARGV[2]为-1)或PEXPIRE
+     */
+    private static final byte[] RECONCILE_SCRIPT = ("if redis.call('DUMP', KEYS[1]) ~= ARGV[1] then return 0 end "
+            + "if ARGV[2] == '-1' then return redis.call('DEL', KEYS[1]) end "
+            + "return redis.call('PEXPIRE', KEYS[1], ARGV[2])").getBytes(StandardCharsets.UTF_8);
+
+    private static final long DELETED = -1;
+
+    private final int virtualNodes;
+
+    private final String password;
+
+    private final int database;
+
+    private final RedisSerializer<String> keySerializer;
+
+    private final RedisSerializer<Object> valueSerializer;
+
+    private final int chunkSize;
+
+    private final int migrationBatchSize;
+
+    private final ExecutorService executor;
+
+    private volatile ConsistentHashRing<Shard> ring;
+
+    /**
+     * 迁移中的旧环 没有迁移时为null
+     */
+    private volatile ConsistentHashRing<Shard> previous;
+
+    private final ReentrantLock migrationLock = new ReentrantLock();
+
+    /**
+     * 迁移期间发往原分片的删除和过期 键 -> DELETED 或 过期的时间点(毫秒), 先登记再发命令, 迁移结束时清空
+     */
+    private final Map<ByteBuffer, Long> tombstones = new ConcurrentHashMap<>();
+
+    /**
+     * @param shards             分片 逗号分隔的 名字=host:port 或 host:port(名字为地址)
+     * @param virtualNodes       每个分片的虚拟节点数
+     * @param password           密码 可以为空
+     * @param database           库
+     * @param keySerializer      键的序列化 与 redisTemplate 一致
+     * @param valueSerializer    值的序列化 与 redisTemplate 一致
+     * @param chunkSize          批量命令每块的键数
+     * @param migrationBatchSize 迁移时每次SCAN的键数
+     * @param executor           各分片并行执行的线程池 由本实例关闭
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedRedis(String shards, int virtualNodes, String password, int database,
+                        RedisSerializer<?> keySerializer, RedisSerializer<?> valueSerializer,
+                        int chunkSize, int migrationBatchSize, ExecutorService executor) {
+        this.virtualNodes = virtualNodes;
+        this.password = password;
+        this.database = database;
+        this.keySerializer = (RedisSerializer<String>) keySerializer;
+        this.valueSerializer = (RedisSerializer<Object>) valueSerializer;
+        this.chunkSize = chunkSize;
+        this.migrationBatchSize = migrationBatchSize;
+        this.executor = executor;
+        ConsistentHashRing<Shard> initial = new ConsistentHashRing<>(virtualNodes);
+        for (String spec : StringUtils.commaDelimitedListToSet(shards)) {
+            Shard shard = connect(spec.trim());
+            initial = initial.with(shard.name, shard);
+        }
+        this.ring = initial;
+    }
+
+    public boolean isEnabled() {
+        return !ring.isEmpty();
+    }
+
+    /**
+     * 键所在的分片
+     */
+    public Shard shardFor(String key) {
+        Shard shard = ring.get(rawKey(key));
+        if (shard == null) {
+            throw new IllegalStateException("no redis shards configured (redis.shards)");
+        }
+        return shard;
+    }
+
+    //============================单键=============================
+
+    public String get(String key) {
+        byte[] raw = rawKey(key);
+        Object value = shardFor(key).template.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(raw));
+        if (value == null) {
+            Shard old = previousOwner(raw);
+            if (old != null) {
+                value = old.template.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(raw));
+            }
+        }
+        return (String) deserialize(value);
+    }
+
+    public void set(String key, String value) {
+        shardFor(key).template.opsForValue().set(key, value);
+    }
+
+    /**
+     * @param time 时间(秒) 小于等于0为永久
+     */
+    public void set(String key, String value, long time) {
+        if (time > 0) {
+            shardFor(key).template.opsForValue().set(key, value, time, TimeUnit.SECONDS);
+        } else {
+            set(key, value);
+        }
+    }
+
+    /**
+     * 迁移中键还没到新分片时设置原分片上的过期时间 并记入墓碑, 键迁移后在新分片上补做
+     */
+    public boolean expire(String key, long time) {
+        if (Boolean.TRUE.equals(shardFor(key).template.expire(key, time, TimeUnit.SECONDS))) {
+            return true;
+        }
+        byte[] raw = rawKey(key);
+        Shard old = previousOwner(raw);
+        if (old == null) {
+            return false;
+        }
+        tombstone(raw, time > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(time) : DELETED);
+        return Boolean.TRUE.equals(old.template.expire(key, time, TimeUnit.SECONDS))
+                // 两次调用之间键刚好迁移完成
+                || Boolean.TRUE.equals(shardFor(key).template.expire(key, time, TimeUnit.SECONDS));
+    }
+
+    public void del(String... keys) {
+        delBatch(keys);
+    }
+
+    //============================批量=============================
+
+    /**
+     * 批量获取 各分片并行执行MGET
+     *
+     * @return 与keys顺序一致的值 不存在的为null
+     */
+    public List<String> mutiGet(Collection<String> keys) {
+        Object[] values = read(keys, (connection, raws) -> {
+            for (int from = 0; from < raws.length; from += chunkSize) {
+                connection.stringCommands().mGet(Arrays.copyOfRange(raws, from, Math.min(raws.length, from + chunkSize)));
+            }
+        }, true);
+        List<String> result = new ArrayList<>(values.length);
+        for (Object value : values) {
+            result.add((String) value);
+        }
+        return result;
+    }
+
+    /**
+     * 通过管道批量获取 每个键一条GET, 各分片并行执行
+     *
+     * @return 与keys顺序一致的值
+     */
+    public List<Object> pipelined(Collection<String> keys) {
+        return Arrays.asList(read(keys, (connection, raws) -> {
+            for (byte[] raw : raws) {
+                connection.stringCommands().get(raw);
+            }
+        }, false));
+    }
+
+    /**
+     * 批量保存 各分片并行执行MSET
+     */
+    public void mutiSet(Map<String, String> valueMap) {
+        List<String> keys = new ArrayList<>(valueMap.keySet());
+        Map<Shard, List<Integer>> groups = group(ring, rawKeys(keys));
+        parallel(groups, (shard, indexes) -> shard.template.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            for (int from = 0; from < indexes.size(); from += chunkSize) {
+                Map<byte[], byte[]> tuples = new LinkedHashMap<>();
+                for (int index : indexes.subList(from, Math.min(indexes.size(), from + chunkSize))) {
+                    String key = keys.get(index);
+                    tuples.put(rawKey(key), valueSerializer.serialize(valueMap.get(key)));
+                }
+                connection.stringCommands().mSet(tuples);
+            }
+            connection.closePipeline();
+            return null;
+        }));
+    }
+
+    /**
+     * 批量删除 各分片并行执行DEL, 迁移中同时删除原分片上的键
+     */
+    public void delBatch(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return;
+        }
+        byte[][] raws = rawKeys(Arrays.asList(keys));
+        ConsistentHashRing<Shard> old = previous;
+        if (old != null) {
+            for (byte[] raw : raws) {
+                if (previousOwner(raw) != null) {
+                    tombstone(raw, DELETED);
+                }
+            }
+        }
+        delete(ring, raws);
+        if (old != null) {
+            delete(old, raws);
+        }
+    }
+
+    //============================扩容=============================
+
+    /**
+     * 增加分片并把归属新分片的键迁移过去 迁移期间读写可以正常进行
+     * 只改变本进程的环, 其他共用这些分片的进程不受影响, 见类注释
+     *
+     * @param spec 名字=host:port 或 host:port
+     * @return 迁移结果
+     */
+    public Migration addShard(String spec) {
+        migrationLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            Shard shard = connect(spec.trim());
+            ConsistentHashRing<Shard> old = ring;
+            ConsistentHashRing<Shard> updated;
+            try {
+                updated = old.with(shard.name, shard);
+            } catch (IllegalArgumentException e) {
+                shard.connectionFactory.destroy();
+                throw e;
+            }
+            previous = old;
+            ring = updated;
+            Migration migration = new Migration();
+            try {
+                for (Shard source : old.getNodes().values()) {
+                    migrate(source, updated, migration);
+                }
+            } finally {
+                previous = null;
+                tombstones.clear();
+            }
+            migration.elapsedMillis = System.currentTimeMillis() - start;
+            log.info("redis shard {} added: {}", shard.name, migration);
+            return migration;
+        } finally {
+            migrationLock.unlock();
+        }
+    }
+
+    /**
+     * 每个分片的名字、地址和占环的比例
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        ConsistentHashRing<Shard> current = ring;
+        Map<String, Double> ownership = current.ownership();
+        List<Map<String, Object>> shards = new ArrayList<>();
+        current.getNodes().forEach((name, shard) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", name);
+            item.put("address", shard.address);
+            item.put("ownership", ownership.get(name));
+            shards.add(item);
+        });
+        metrics.put("virtualNodes", virtualNodes);
+        metrics.put("migrating", previous != null);
+        metrics.put("shards", shards);
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        ring.getNodes().values().forEach(shard -> shard.connectionFactory.destroy());
+    }
+
+    /**
+     * SCAN源分片, 把新环上归属其他分片的键 DUMP/PTTL 后 RESTORE 到目标分片, 成功或目标已有新值时删除源分片上的键
+     */
+    private void migrate(Shard source, ConsistentHashRing<Shard> updated, Migration migration) {
+        source.template.execute((RedisCallback<Object>) connection -> {
+            List<byte[]> batch = new ArrayList<>(migrationBatchSize);
+            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().count(migrationBatchSize).build())) {
+                while (cursor.hasNext()) {
+                    byte[] key = cursor.next();
+                    migration.scanned++;
+                    if (updated.get(key) != source) {
+                        batch.add(key);
+                    }
+                    if (batch.size() == migrationBatchSize) {
+                        moveBatch(connection, updated, batch, migration);
+                        batch.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!batch.isEmpty()) {
+                moveBatch(connection, updated, batch, migration);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * DUMP 之后、删除源分片上的键之前发生的删除和过期记在墓碑里, 删除源键之后对迁移成功的键补做
+     * 补做前比较目标上的DUMP, 值已被新写入替换时不动
+     */
+    private void moveBatch(RedisConnection connection, ConsistentHashRing<Shard> updated, List<byte[]> keys, Migration migration) {
+        connection.openPipeline();
+        for (byte[] key : keys) {
+            connection.keyCommands().dump(key);
+            connection.keyCommands().pTtl(key);
+        }
+        List<Object> dumped = connection.closePipeline();
+        Map<Shard, List<Integer>> targets = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (dumped.get(i * 2) == null) {
+                // 扫描之后已过期或被删除
+                migration.skipped++;
+                continue;
+            }
+            targets.computeIfAbsent(updated.get(keys.get(i)), s -> new ArrayList<>()).add(i);
+        }
+        List<byte[]> done = new ArrayList<>(keys.size());
+        // 迁移成功的键在目标分片上的版本
+        byte[][] restored = new byte[keys.size()][];
+        targets.forEach((target, indexes) -> target.template.execute((RedisCallback<Object>) targetConnection -> {
+            for (int index : indexes) {
+                Long ttl = (Long) dumped.get(index * 2 + 1);
+                // 不覆盖: 目标分片上已有的值是迁移开始后写入的, 比源分片上的新
+                restored[index] = targetConnection.scriptingCommands().eval(RESTORE_SCRIPT, ReturnType.VALUE, 1, keys.get(index),
+                        (byte[]) dumped.get(index * 2), RedisCommandSupport.arg(ttl == null || ttl < 0 ? 0 : ttl));
+                if (restored[index] != null) {
+                    migration.moved++;
+                } else {
+                    migration.skipped++;
+                }
+                done.add(keys.get(index));
+            }
+            return null;
+        }));
+        if (!done.isEmpty()) {
+            connection.keyCommands().del(done.toArray(new byte[0][]));
+        }
+        reconcile(targets, keys, restored, migration);
+    }
+
+    private void reconcile(Map<Shard, List<Integer>> targets, List<byte[]> keys, byte[][] restored, Migration migration) {
+        if (tombstones.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        targets.forEach((target, indexes) -> {
+            for (int index : indexes) {
+                Long tombstone = restored[index] == null ? null : tombstones.get(ByteBuffer.wrap(keys.get(index)));
+                if (tombstone == null) {
+                    continue;
+                }
+                long pttl = tombstone == DELETED ? DELETED : Math.max(1, tombstone - now);
+                Long result = target.template.execute((RedisCallback<Long>) targetConnection ->
+                        targetConnection.scriptingCommands().eval(RECONCILE_SCRIPT, ReturnType.INTEGER, 1, keys.get(index),
+                                restored[index], RedisCommandSupport.arg(pttl)));
+                if (result != null && result > 0) {
+                    migration.reconciled++;
+                }
+            }
+        });
+    }
+
+    /**
+     * 删除优先于过期
+     */
+    private void tombstone(byte[] raw, long value) {
+        tombstones.merge(ByteBuffer.wrap(raw), value, (current, next) -> current == DELETED || next == DELETED ? DELETED : next);
+    }
+
+    /**
+     * 按分片分组后并行执行读命令 结果按原顺序放回
+     *
+     * @param multi 回复是否为MGET的列表
+     */
+    private Object[] read(Collection<String> keys, BiConsumer<RedisConnection, byte[][]> commands, boolean multi) {
+        byte[][] raws = rawKeys(keys);
+        Object[] objects = new Object[raws.length];
+        parallel(group(ring, raws), (shard, indexes) -> {
+            byte[][] selected = select(raws, indexes);
+            List<Object> replies = shard.template.execute((RedisCallback<List<Object>>) connection -> {
+                connection.openPipeline();
+                commands.accept(connection, selected);
+                return connection.closePipeline();
+            });
+            int i = 0;
+            for (Object reply : replies) {
+                if (multi) {
+                    for (Object raw : (List<?>) reply) {
+                        objects[indexes.get(i++)] = deserialize(raw);
+                    }
+                } else {
+                    objects[indexes.get(i++)] = deserialize(reply);
+                }
+            }
+        });
+        ConsistentHashRing<Shard> old = previous;
+        if (old != null) {
+            readMisses(old, raws, objects);
+        }
+        return objects;
+    }
+
+    /**
+     * 迁移中新分片未命中的键再从原分片读一次
+     */
+    private void readMisses(ConsistentHashRing<Shard> old, byte[][] raws, Object[] objects) {
+        Map<Shard, List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < raws.length; i++) {
+            if (objects[i] == null) {
+                Shard owner = old.get(raws[i]);
+                if (owner != ring.get(raws[i])) {
+                    misses.computeIfAbsent(owner, s -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+        parallel(misses, (shard, indexes) -> {
+            List<byte[]> replies = shard.template.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.stringCommands().mGet(select(raws, indexes)));
+            for (int i = 0; replies != null && i < indexes.size(); i++) {
+                objects[indexes.get(i)] = deserialize(replies.get(i));
+            }
+        });
+    }
+
+    private void delete(ConsistentHashRing<Shard> target, byte[][] raws) {
+        parallel(group(target, raws), (shard, indexes) -> shard.template.execute((RedisCallback<Object>) connection -> {
+            connection.openPipeline();
+            for (int from = 0; from < indexes.size(); from += chunkSize) {
+                connection.keyCommands().del(select(raws, indexes.subList(from, Math.min(indexes.size(), from + chunkSize))));
+            }
+            connection.closePipeline();
+            return null;
+        }));
+    }
+
+    /**
+     * 各分片的任务并行执行 只有一个分片时在调用线程执行
+     */
+    private void parallel(Map<Shard, List<Integer>> groups, BiConsumer<Shard, List<Integer>> task) {
+        if (groups.size() == 1) {
+            groups.forEach(task);
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(groups.size());
+        groups.forEach((shard, indexes) -> futures.add(CompletableFuture.runAsync(() -> task.accept(shard, indexes), executor)));
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private Map<Shard, List<Integer>> group(ConsistentHashRing<Shard> target, byte[][] raws) {
+        Map<Shard, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < raws.length; i++) {
+            Shard shard = target.get(raws[i]);
+            if (shard == null) {
+                throw new IllegalStateException("no redis shards configured (redis.shards)");
+            }
+            groups.computeIfAbsent(shard, s -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    private Shard previousOwner(byte[] raw) {
+        ConsistentHashRing<Shard> old = previous;
+        if (old == null) {
+            return null;
+        }
+        Shard owner = old.get(raw);
+        return owner != ring.get(raw) ? owner : null;
+    }
+
+    private Shard connect(String spec) {
+        int eq = spec.indexOf('=');
+        String name = eq > 0 ? spec.substring(0, eq) : spec;
+        String address = eq > 0 ? spec.substring(eq + 1) : spec;
+        int colon = address.lastIndexOf(':');
+        RedisStandaloneConfiguration configuration = colon > 0
+                ? new RedisStandaloneConfiguration(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)))
+                : new RedisStandaloneConfiguration(address);
+        configuration.setDatabase(database);
+        configuration.setPassword(RedisPassword.of(password));
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration);
+        factory.afterPropertiesSet();
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(keySerializer);
+        template.setValueSerializer(valueSerializer);
+        template.setHashKeySerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
+        template.afterPropertiesSet();
+        return new Shard(name, address, factory, template);
+    }
+
+    private byte[] rawKey(String key) {
+        return keySerializer.serialize(key);
+    }
+
+    private byte[][] rawKeys(Collection<String> keys) {
+        byte[][] raws = new byte[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            raws[i++] = rawKey(key);
+        }
+        return raws;
+    }
+
+    private static byte[][] select(byte[][] raws, List<Integer> indexes) {
+        byte[][] selected = new byte[indexes.size()][];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = raws[indexes.get(i)];
+        }
+        return selected;
+    }
+
+    private Object deserialize(Object raw) {
+        return raw == null ? null : valueSerializer.deserialize((byte[]) raw);
+    }
+}
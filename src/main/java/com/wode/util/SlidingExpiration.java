@@ -0,0 +1,208 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 滑动过期 匹配前缀的键每次被 RedisTemplateUtil 读取后延长过期时间
+ * TOUCH 模式: 读取后把键放入去重缓冲, 每个周期用一个管道发出PEXPIRE, 同一个键一个周期内最多续期一次;
+ * GETEX 模式(Redis 6.2+): 读取直接用 GETEX key EX ttl(秒), 一条命令完成读取和续期;
+ * 服务端不支持时第一次报错的读取立即改用GET重读并退回 TOUCH 模式
+ * 缓冲中的续期在进程退出前写入; TOUCH 模式下过期时间最多比实际访问晚一个周期
+ */
+@Component
+public class SlidingExpiration {
+
+    private static final Logger log = LoggerFactory.getLogger(SlidingExpiration.class);
+
+    public enum Mode {
+        TOUCH, GETEX
+    }
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private RedisKeyBuilder keyBuilder;
+
+    @Value("${redis.sliding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${redis.sliding.mode:TOUCH}")
+    private volatile Mode mode;
+
+    @Value("${redis.sliding.ttl-seconds:1800}")
+    private long ttlSeconds;
+
+    @Value("${redis.sliding.prefixes:}")
+    private String prefixes;
+
+    @Value("${redis.sliding.flush-interval-ms:1000}")
+    private long flushInterval;
+
+    @Value("${redis.sliding.max-pending:100000}")
+    private int maxPending;
+
+    private List<String> prefixList;
+
+    /**
+     * 待续期的键 -> 过期时间(毫秒)
+     */
+    private final Map<ByteBuffer, Long> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder touches = new LongAdder();
+
+    private final LongAdder deduplicated = new LongAdder();
+
+    private final LongAdder flushedCommands = new LongAdder();
+
+    private final LongAdder failedFlushes = new LongAdder();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        prefixList = new ArrayList<>(StringUtils.commaDelimitedListToSet(prefixes));
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-sliding-ttl");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(flushInterval * 2, TimeUnit.MILLISECONDS);
+            flush();
+        }
+    }
+
+    /**
+     * 键是否滑动过期 prefixes为空时所有键都滑动
+     */
+    public boolean applies(String key) {
+        if (!enabled || key == null) {
+            return false;
+        }
+        if (prefixList.isEmpty()) {
+            return true;
+        }
+        for (String prefix : prefixList) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isGetex() {
+        return mode == Mode.GETEX;
+    }
+
+    /**
+     * 服务端不支持GETEX时退回TOUCH模式
+     */
+    public void disableGetex(Exception cause) {
+        if (mode == Mode.GETEX) {
+            mode = Mode.TOUCH;
+            log.warn("GETEX not supported by redis, sliding expiration falls back to batched PEXPIRE: {}", cause.getMessage());
+        }
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public long getTtlMillis() {
+        return TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * 登记续期 DATABASE隔离模式下租户的库和刷新线程不一致, 直接续期
+     */
+    public void touch(String key) {
+        touches.increment();
+        byte[] rawKey = keyBuilder.rawKey(key);
+        long ttlMillis = getTtlMillis();
+        if (keyBuilder.currentDatabase() != null) {
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.keyCommands().pExpire(rawKey, ttlMillis));
+            flushedCommands.increment();
+            return;
+        }
+        if (pending.put(ByteBuffer.wrap(rawKey), ttlMillis) != null) {
+            deduplicated.increment();
+        } else if (pending.size() >= maxPending) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * 把缓冲中的续期用一个管道写入 失败时放回, 下个周期重试
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<ByteBuffer, Long> batch = new LinkedHashMap<>();
+            for (Iterator<Map.Entry<ByteBuffer, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<ByteBuffer, Long> entry = it.next();
+                batch.put(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+            try {
+                redisTemplate.execute((RedisCallback<Object>) connection -> {
+                    connection.openPipeline();
+                    batch.forEach((key, ttl) -> connection.keyCommands().pExpire(key.array(), ttl));
+                    connection.closePipeline();
+                    return null;
+                });
+                flushedCommands.add(batch.size());
+            } catch (Exception e) {
+                failedFlushes.increment();
+                log.warn("sliding expiration flush of {} keys failed, will retry", batch.size(), e);
+                batch.forEach(pending::putIfAbsent);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("mode", mode);
+        metrics.put("touches", touches.sum());
+        metrics.put("deduplicated", deduplicated.sum());
+        metrics.put("flushedCommands", flushedCommands.sum());
+        metrics.put("failedFlushes", failedFlushes.sum());
+        metrics.put("pendingKeys", pending.size());
+        return metrics;
+    }
+}
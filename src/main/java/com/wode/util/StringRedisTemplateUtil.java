@@ -1,7 +1,6 @@
 package com.wode.util;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.*;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
@@ -15,14 +14,23 @@ import java.util.concurrent.TimeUnit;
 @Component
 public class StringRedisTemplateUtil {
 
-    @Value("${spring.profiles.active:}")
-    private String env;
+    @Autowired
+    private RedisKeyBuilder keyBuilder;
 
     @Autowired
     private StringRedisTemplate redisTemplate;
 
+    @Autowired
+    private AdaptiveTtlPolicy adaptiveTtl;
+
+    @Autowired
+    private TraceRecorder trace;
+
+    /**
+     * 键的环境前缀由 RedisKeyBuilder 在序列化时统一添加
+     */
     public String getEnv() {
-        return env;
+        return keyBuilder.getEnv();
     }
 
     /**
@@ -35,7 +43,9 @@ public class StringRedisTemplateUtil {
     public boolean expire(String key, long time) {
         try {
             if (time > 0) {
-                redisTemplate.expire(env + key, time, TimeUnit.SECONDS);
+                long ttl = adaptiveTtl.ttl(key, time);
+                trace.record(TraceFormat.Command.EXPIRE, key, 0, 0, ttl);
+                redisTemplate.expire(key, ttl, TimeUnit.SECONDS);
             }
             return true;
         } catch (Exception e) {
@@ -50,7 +60,7 @@ public class StringRedisTemplateUtil {
      * @return 时间(秒) 返回0代表为永久有效
      */
     public long getExpire(String key) {
-        return redisTemplate.getExpire(env + key, TimeUnit.SECONDS);
+        return redisTemplate.getExpire(key, TimeUnit.SECONDS);
     }
 
     /**
@@ -61,7 +71,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean hasKey(String key) {
         try {
-            return redisTemplate.hasKey(env + key);
+            return redisTemplate.hasKey(key);
         } catch (Exception e) {
             return false;
         }
@@ -76,9 +86,12 @@ public class StringRedisTemplateUtil {
     public void del(String... key) {
         if (key != null && key.length > 0) {
             if (key.length == 1) {
-                redisTemplate.delete(env + key[0]);
+                redisTemplate.delete(key[0]);
             } else {
-                redisTemplate.delete(CollectionUtils.arrayToList(env + key));
+                redisTemplate.delete(CollectionUtils.arrayToList(key));
+            }
+            for (String k : key) {
+                trace.record(TraceFormat.Command.DEL, k);
             }
         }
     }
@@ -92,11 +105,12 @@ public class StringRedisTemplateUtil {
     public void delBatch(String... key) {
         if (key != null && key.length > 0) {
             if (key.length == 1) {
-                redisTemplate.delete(env + key[0]);
+                redisTemplate.delete(key[0]);
             } else {
-                List<String> list = new ArrayList<>();
-                CollectionUtils.arrayToList(key).stream().forEach(x -> list.add(String.format("%s%s", env, x)));
-                redisTemplate.delete(list);
+                redisTemplate.delete(CollectionUtils.arrayToList(key));
+            }
+            for (String k : key) {
+                trace.record(TraceFormat.Command.DEL, k);
             }
         }
     }
@@ -110,7 +124,13 @@ public class StringRedisTemplateUtil {
      * @return 值
      */
     public String get(String key) {
-        return key == null ? null : redisTemplate.opsForValue().get(env + key);
+        if (key == null) {
+            return null;
+        }
+        String value = redisTemplate.opsForValue().get(key);
+        adaptiveTtl.recordRead(key, value != null);
+        trace.record(TraceFormat.Command.GET, key, value != null ? TraceFormat.FLAG_HIT : 0, value == null ? 0 : value.length(), 0);
+        return value;
     }
 
 
@@ -122,8 +142,9 @@ public class StringRedisTemplateUtil {
      * @return true成功 false失败
      */
     public boolean set(String key, String value) {
+        trace.record(TraceFormat.Command.SET, key, 0, value == null ? 0 : value.length(), 0);
         try {
-            redisTemplate.opsForValue().set(env + key, value);
+            redisTemplate.opsForValue().set(key, value);
             return true;
         } catch (Exception e) {
             return false;
@@ -141,9 +162,11 @@ public class StringRedisTemplateUtil {
     public boolean set(String key, String value, long time) {
         try {
             if (time > 0) {
-                redisTemplate.opsForValue().set(env + key, value, time, TimeUnit.SECONDS);
+                long ttl = adaptiveTtl.ttl(key, time, value == null ? -1 : value.length());
+                trace.record(TraceFormat.Command.SET, key, 0, value == null ? 0 : value.length(), ttl);
+                redisTemplate.opsForValue().set(key, value, ttl, TimeUnit.SECONDS);
             } else {
-                set(env + key, value);
+                set(key, value);
             }
             return true;
         } catch (Exception e) {
@@ -152,24 +175,32 @@ public class StringRedisTemplateUtil {
     }
 
     public Object getAndSet(String key, String value) {
-        return redisTemplate.opsForValue().getAndSet(env + key, value);
+        return redisTemplate.opsForValue().getAndSet(key, value);
     }
 
     public boolean setIfAbsent(String key, String value) {
         try {
-            redisTemplate.opsForValue().setIfAbsent(env + key, value);
+            redisTemplate.opsForValue().setIfAbsent(key, value);
             return true;
         } catch (Exception e) {
             return false;
         }
     }
 
+    /**
+     * 不存在时写入(SET NX) 常用作锁, 过期时间按调用方给的原样使用, 不经过自适应过期时间调整
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0时不设置过期时间
+     * @return 是否写入
+     */
     public boolean setIfAbsent(String key, String value, long time) {
         try {
             if (time > 0) {
-                return redisTemplate.opsForValue().setIfAbsent(env + key, value, time, TimeUnit.SECONDS);
+                return redisTemplate.opsForValue().setIfAbsent(key, value, time, TimeUnit.SECONDS);
             }
-            return set(env + key, value);
+            return set(key, value);
         } catch (Exception e) {
             return false;
         }
@@ -177,18 +208,26 @@ public class StringRedisTemplateUtil {
 
     public boolean setIfPresent(String key, String value) {
         try {
-            return redisTemplate.opsForValue().setIfPresent(env + key, value);
+            return redisTemplate.opsForValue().setIfPresent(key, value);
         } catch (Exception e) {
             return false;
         }
     }
 
+    /**
+     * 存在时覆盖(SET XX) 常用于锁续期, 过期时间按调用方给的原样使用, 不经过自适应过期时间调整
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0时不设置过期时间
+     * @return 是否成功
+     */
     public boolean setIfPresent(String key, String value, long time) {
         try {
             if (time > 0) {
-                redisTemplate.opsForValue().setIfPresent(env + key, value, time, TimeUnit.SECONDS);
+                redisTemplate.opsForValue().setIfPresent(key, value, time, TimeUnit.SECONDS);
             } else {
-                set(env + key, value);
+                set(key, value);
             }
             return true;
         } catch (Exception e) {
@@ -207,7 +246,7 @@ public class StringRedisTemplateUtil {
         if (delta < 0) {
             throw new RuntimeException("递增因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(env + key, delta);
+        return redisTemplate.opsForValue().increment(key, delta);
     }
 
     /**
@@ -221,7 +260,7 @@ public class StringRedisTemplateUtil {
         if (delta < 0) {
             throw new RuntimeException("递减因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(env + key, -delta);
+        return redisTemplate.opsForValue().increment(key, -delta);
     }
 
     //================================Map=================================
@@ -234,7 +273,9 @@ public class StringRedisTemplateUtil {
      * @return 值
      */
     public Object hget(String key, String item) {
-        return redisTemplate.opsForHash().get(env + key, item);
+        Object value = redisTemplate.opsForHash().get(key, item);
+        adaptiveTtl.recordRead(key, value != null);
+        return value;
     }
 
     /**
@@ -244,7 +285,7 @@ public class StringRedisTemplateUtil {
      * @return 对应的多个键值
      */
     public Map<Object, Object> hmget(String key) {
-        return redisTemplate.opsForHash().entries(env + key);
+        return redisTemplate.opsForHash().entries(key);
     }
 
     /**
@@ -255,7 +296,7 @@ public class StringRedisTemplateUtil {
      */
     public List<Object> hmget(String key, List<String> itemList) {
         List<Object> tmpList = new ArrayList<>(itemList);
-        return redisTemplate.opsForHash().multiGet(env + key, tmpList);
+        return redisTemplate.opsForHash().multiGet(key, tmpList);
     }
 
     /**
@@ -267,7 +308,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean hmset(String key, Map<String, Object> map) {
         try {
-            redisTemplate.opsForHash().putAll(env + key, map);
+            redisTemplate.opsForHash().putAll(key, map);
             return true;
         } catch (Exception e) {
             return false;
@@ -284,7 +325,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean hmset(String key, Map<String, Object> map, long time) {
         try {
-            redisTemplate.opsForHash().putAll(env + key, map);
+            redisTemplate.opsForHash().putAll(key, map);
             if (time > 0) {
                 expire(key, time);
             }
@@ -304,7 +345,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean hset(String key, String item, Object value) {
         try {
-            redisTemplate.opsForHash().put(env + key, item, value);
+            redisTemplate.opsForHash().put(key, item, value);
             return true;
         } catch (Exception e) {
             return false;
@@ -322,7 +363,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean hset(String key, String item, Object value, long time) {
         try {
-            redisTemplate.opsForHash().put(env + key, item, value);
+            redisTemplate.opsForHash().put(key, item, value);
             if (time > 0) {
                 //方法里边已经添加了环境变量
                 expire(key, time);
@@ -340,7 +381,7 @@ public class StringRedisTemplateUtil {
      * @param item 项 可以使多个 不能为null
      */
     public void hdel(String key, Object... item) {
-        redisTemplate.opsForHash().delete(env + key, item);
+        redisTemplate.opsForHash().delete(key, item);
     }
 
     /**
@@ -351,7 +392,7 @@ public class StringRedisTemplateUtil {
      * @return true 存在 false不存在
      */
     public boolean hHasKey(String key, String item) {
-        return redisTemplate.opsForHash().hasKey(env + key, item);
+        return redisTemplate.opsForHash().hasKey(key, item);
     }
 
     /**
@@ -363,7 +404,7 @@ public class StringRedisTemplateUtil {
      * @return
      */
     public double hincr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(env + key, item, by);
+        return redisTemplate.opsForHash().increment(key, item, by);
     }
 
     /**
@@ -375,7 +416,18 @@ public class StringRedisTemplateUtil {
      * @return
      */
     public double hdecr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(env + key, item, -by);
+        return redisTemplate.opsForHash().increment(key, item, -by);
+    }
+
+    /**
+     * 分桶hash实现的紧凑键值表 用于大量小对象, 比每个对象一个键省内存
+     *
+     * @param namespace  命名空间 如 user
+     * @param bucketSize 每个桶的项数 不要超过服务端 hash-max-listpack-entries
+     * @return
+     */
+    public CompactKeyValueMap compactMap(String namespace, int bucketSize) {
+        return new CompactKeyValueMap(redisTemplate, namespace, bucketSize);
     }
 
     //============================set=============================
@@ -388,7 +440,7 @@ public class StringRedisTemplateUtil {
      */
     public Set<String> sGet(String key) {
         try {
-            return redisTemplate.opsForSet().members(env + key);
+            return redisTemplate.opsForSet().members(key);
         } catch (Exception e) {
             return null;
         }
@@ -403,7 +455,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean sHasKey(String key, Object value) {
         try {
-            return redisTemplate.opsForSet().isMember(env + key, value);
+            return redisTemplate.opsForSet().isMember(key, value);
         } catch (Exception e) {
             return false;
         }
@@ -418,7 +470,7 @@ public class StringRedisTemplateUtil {
      */
     public long sSet(String key, String... values) {
         try {
-            return redisTemplate.opsForSet().add(env + key, values);
+            return redisTemplate.opsForSet().add(key, values);
         } catch (Exception e) {
             return 0;
         }
@@ -434,7 +486,7 @@ public class StringRedisTemplateUtil {
      */
     public long sSet(String key, long time, String... values) {
         try {
-            Long count = redisTemplate.opsForSet().add(env + key, values);
+            Long count = redisTemplate.opsForSet().add(key, values);
             if (time > 0) {
                 expire(key, time);
             }
@@ -452,7 +504,7 @@ public class StringRedisTemplateUtil {
      */
     public long sGetSetSize(String key) {
         try {
-            return redisTemplate.opsForSet().size(env + key);
+            return redisTemplate.opsForSet().size(key);
         } catch (Exception e) {
             return 0;
         }
@@ -467,7 +519,7 @@ public class StringRedisTemplateUtil {
      */
     public long sRemove(String key, String... values) {
         try {
-            return redisTemplate.opsForSet().remove(env + key, values);
+            return redisTemplate.opsForSet().remove(key, values);
         } catch (Exception e) {
             return 0;
         }
@@ -484,7 +536,7 @@ public class StringRedisTemplateUtil {
      */
     public List<String> lGet(String key, long start, long end) {
         try {
-            return redisTemplate.opsForList().range(env + key, start, end);
+            return redisTemplate.opsForList().range(key, start, end);
         } catch (Exception e) {
             return null;
         }
@@ -498,7 +550,7 @@ public class StringRedisTemplateUtil {
      */
     public long lGetListSize(String key) {
         try {
-            return redisTemplate.opsForList().size(env + key);
+            return redisTemplate.opsForList().size(key);
         } catch (Exception e) {
             return 0;
         }
@@ -513,7 +565,7 @@ public class StringRedisTemplateUtil {
      */
     public Object lGetIndex(String key, long index) {
         try {
-            return redisTemplate.opsForList().index(env + key, index);
+            return redisTemplate.opsForList().index(key, index);
         } catch (Exception e) {
             return null;
         }
@@ -528,7 +580,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean lSet(String key, String value) {
         try {
-            redisTemplate.opsForList().rightPush(env + key, value);
+            redisTemplate.opsForList().rightPush(key, value);
             return true;
         } catch (Exception e) {
             return false;
@@ -545,7 +597,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean lSet(String key, String value, long time) {
         try {
-            redisTemplate.opsForList().rightPush(env + key, value);
+            redisTemplate.opsForList().rightPush(key, value);
             if (time > 0) {
                 expire(key, time);
             }
@@ -564,7 +616,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean lSet(String key, List<String> value) {
         try {
-            redisTemplate.opsForList().rightPushAll(env + key, value);
+            redisTemplate.opsForList().rightPushAll(key, value);
             return true;
         } catch (Exception e) {
             return false;
@@ -581,7 +633,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean lSet(String key, List<String> value, long time) {
         try {
-            redisTemplate.opsForList().rightPushAll(env + key, value);
+            redisTemplate.opsForList().rightPushAll(key, value);
             if (time > 0) {
                 expire(key, time);
             }
@@ -601,7 +653,7 @@ public class StringRedisTemplateUtil {
      */
     public boolean lUpdateIndex(String key, long index, String value) {
         try {
-            redisTemplate.opsForList().set(env + key, index, value);
+            redisTemplate.opsForList().set(key, index, value);
             return true;
         } catch (Exception e) {
             return false;
@@ -618,7 +670,7 @@ public class StringRedisTemplateUtil {
      */
     public long lRemove(String key, long count, Object value) {
         try {
-            Long remove = redisTemplate.opsForList().remove(env + key, count, value);
+            Long remove = redisTemplate.opsForList().remove(key, count, value);
             return remove;
         } catch (Exception e) {
             return 0;
@@ -632,7 +684,7 @@ public class StringRedisTemplateUtil {
      * @return
      */
     public Set keys(String pattern) {
-        return redisTemplate.keys(env + pattern);
+        return redisTemplate.keys(pattern);
     }
 
     /**
@@ -650,55 +702,55 @@ public class StringRedisTemplateUtil {
 
     public void lRightPushAll(String key, long timeout, TimeUnit timeUnit, String... values) {
         //绑定操作
-        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(env + key);
+        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(key);
         //插入数据
         boundValueOperations.rightPushAll(values);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public void lRightPush(String key, long timeout, TimeUnit timeUnit, String value) {
         //绑定操作
-        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(env + key);
+        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(key);
         //插入数据
         boundValueOperations.rightPush(value);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public String lRightPop(String key) {
         //绑定操作
-        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(env + key);
+        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(key);
         return boundValueOperations.rightPop();
     }
 
     public void lLeftPushALL(String key, long timeout, TimeUnit timeUnit, String... values) {
         //绑定操作
-        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(env + key);
+        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(key);
         //插入数据
         boundValueOperations.leftPushAll(values);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public void lLeftPush(String key, long timeout, TimeUnit timeUnit, String value) {
         //绑定操作
-        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(env + key);
+        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(key);
         //插入数据
         boundValueOperations.leftPush(value);
         //设置过期时间
-        boundValueOperations.expire(timeout, timeUnit);
+        boundValueOperations.expire(adaptiveTtl.ttl(key, timeout, timeUnit), timeUnit);
     }
 
     public String lLeftPop(String key) {
         //绑定操作
-        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(env + key);
+        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(key);
         return boundValueOperations.leftPop();
     }
 
     public List<String> lRang(String key, long start, long end) {
         //绑定操作
-        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(env + key);
+        BoundListOperations<String, String> boundValueOperations = redisTemplate.boundListOps(key);
         //查询数据
         return boundValueOperations.range(start, end);
     }
@@ -708,7 +760,7 @@ public class StringRedisTemplateUtil {
 
     public Long zsetAdd(String key, Set<ZSetOperations.TypedTuple<String>> tuples) {
         try {
-            return redisTemplate.opsForZSet().add(env + key, tuples);
+            return redisTemplate.opsForZSet().add(key, tuples);
         } catch (Exception e) {
         }
         return null;
@@ -722,7 +774,7 @@ public class StringRedisTemplateUtil {
      */
     public Long zsetZCard(String key) {
         try {
-            return redisTemplate.opsForZSet().zCard(env + key);
+            return redisTemplate.opsForZSet().zCard(key);
         } catch (Exception e) {
         }
         return null;
@@ -739,7 +791,7 @@ public class StringRedisTemplateUtil {
      */
     public Double zsetIncr(String key, String value, long delta) {
         try {
-            return redisTemplate.opsForZSet().incrementScore(env + key, value, delta);
+            return redisTemplate.opsForZSet().incrementScore(key, value, delta);
         } catch (Exception e) {
         }
         return 0.0;
@@ -754,7 +806,7 @@ public class StringRedisTemplateUtil {
      */
     public Long zsetRemove(String key, String value) {
         try {
-            return redisTemplate.opsForZSet().remove(env + key, value);
+            return redisTemplate.opsForZSet().remove(key, value);
         } catch (Exception e) {
         }
         return null;
@@ -770,7 +822,7 @@ public class StringRedisTemplateUtil {
      */
     public Set<String> zsetReverseRange(String key, long start, long end) {
         try {
-            return redisTemplate.opsForZSet().reverseRange(env + key, start, end);
+            return redisTemplate.opsForZSet().reverseRange(key, start, end);
         } catch (Exception e) {
         }
         return null;
@@ -786,7 +838,7 @@ public class StringRedisTemplateUtil {
      */
     public Set<ZSetOperations.TypedTuple<String>> zsetReverseRangeWithScores(String key, long start, long end) {
         try {
-            return redisTemplate.opsForZSet().reverseRangeWithScores(env + key, start, end);
+            return redisTemplate.opsForZSet().reverseRangeWithScores(key, start, end);
         } catch (Exception e) {
         }
         return null;
@@ -801,7 +853,7 @@ public class StringRedisTemplateUtil {
      */
     public Long zsetRank(String key, String value) {
         try {
-            return redisTemplate.opsForZSet().rank(env + key, value);
+            return redisTemplate.opsForZSet().rank(key, value);
         } catch (Exception e) {
         }
         return null;
@@ -816,7 +868,7 @@ public class StringRedisTemplateUtil {
      */
     public Long zsetReverseRank(String key, String value) {
         try {
-            return redisTemplate.opsForZSet().reverseRank(env + key, value);
+            return redisTemplate.opsForZSet().reverseRank(key, value);
         } catch (Exception e) {
         }
         return null;
@@ -824,19 +876,19 @@ public class StringRedisTemplateUtil {
 
     public Double zScore(String key, String value) {
         try {
-            return redisTemplate.opsForZSet().score(env + key, value);
+            return redisTemplate.opsForZSet().score(key, value);
         } catch (Exception e) {
         }
         return null;
     }
 
     public Boolean zAdd(String key, String value, long score) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.add(value, score);
     }
 
     public Boolean zAdd(String key, String value, double score) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.add(value, score);
     }
 
@@ -844,12 +896,12 @@ public class StringRedisTemplateUtil {
         if(CollectionUtils.isEmpty(values)) {
             return 0L;
         }
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.add(values);
     }
 
     public Long zRem(String key, String value) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.remove(value);
     }
 
@@ -857,53 +909,53 @@ public class StringRedisTemplateUtil {
         if(end < start) {
             return 0L;
         }
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.removeRange(start, end);
     }
 
     public Set<ZSetOperations.TypedTuple<String>> zRangeWithScore(String key, long start, long stop) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.rangeWithScores(start, stop);
     }
 
     public Set<String> zRange(String key, long start, long stop) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.range(start, stop);
     }
 
     public Long zRank(String key, String value) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.rank(value);
     }
 
     public Long zReverse(String key) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.reverseRank(key);
     }
 
     public Long zCard(String key) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.zCard();
     }
 
     public Cursor<Map.Entry<Object, Object>> hScan(String key, String pattern, long count) {
-        return redisTemplate.opsForHash().scan(env+key, ScanOptions.scanOptions().match(pattern).count(count).build());
+        return redisTemplate.opsForHash().scan(key, ScanOptions.scanOptions().match(pattern).count(count).build());
     }
 
     public Cursor<ZSetOperations.TypedTuple<String>> zScan(String key, String pattern, long count) {
-        return redisTemplate.opsForZSet().scan(env+key, ScanOptions.scanOptions().match(pattern).count(count).build());
+        return redisTemplate.opsForZSet().scan(key, ScanOptions.scanOptions().match(pattern).count(count).build());
     }
 
     public Set<ZSetOperations.TypedTuple<String>> zRangeByScore(String key, double start, double end) {
-        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(env + key);
+        BoundZSetOperations<String, String> boundZSetOperations = redisTemplate.boundZSetOps(key);
         return boundZSetOperations.rangeByScoreWithScores(start, end);
     }
 
     public Boolean getBit(String key, long value) {
-        return redisTemplate.opsForValue().getBit(env + key, value);
+        return redisTemplate.opsForValue().getBit(key, value);
     }
 
     public void setBit(String key, long value, boolean tag) {
-        redisTemplate.opsForValue().setBit(env + key, value, tag);
+        redisTemplate.opsForValue().setBit(key, value, tag);
     }
 }
@@ -0,0 +1,195 @@
+package com.wode.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 访问轨迹文件格式 由 TraceRecorder 写出, 回放工具读取
+ * <pre>
+ * 文件头(32字节): "RTRC" 版本(1字节) 记录长度(1字节) 保留(2字节) 录制开始时间(long, 毫秒) 记录数(long) 保留(8字节)
+ * 记录(24字节): [命令(8位) 标志(8位) 相对录制开始的时间(48位, 微秒)] 键哈希(long) [值大小(int) 过期时间秒(int)]
+ * </pre>
+ * 文件按记录上限预先分配并映射到内存, 记录数在每次刷出后更新, 之后的内容无效; 字节序为小端
+ */
+public final class TraceFormat {
+
+    public static final int HEADER_SIZE = 32;
+
+    public static final int RECORD_SIZE = 24;
+
+    private static final byte[] MAGIC = {'R', 'T', 'R', 'C'};
+
+    private static final byte VERSION = 1;
+
+    private static final int COUNT_OFFSET = 16;
+
+    private static final long TIME_MASK = (1L << 48) - 1;
+
+    /**
+     * 读命令命中
+     */
+    public static final int FLAG_HIT = 1;
+
+    /**
+     * 批量命令中的一个键(mutiGet/mutiSet)
+     */
+    public static final int FLAG_BATCH = 2;
+
+    public enum Command {
+        GET, SET, DEL, EXPIRE, INCR, HGET, HSET;
+
+        private static final Command[] VALUES = values();
+
+        public boolean isRead() {
+            return this == GET || this == HGET;
+        }
+
+        static Command of(int code) {
+            return code < VALUES.length ? VALUES[code] : null;
+        }
+    }
+
+    private TraceFormat() {
+    }
+
+    /**
+     * 64位FNV-1a 按字符计算, 不需要先编码成字节
+     */
+    public static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    static long packHead(Command command, int flags, long micros) {
+        return ((long) command.ordinal() << 56) | ((long) (flags & 0xff) << 48) | (micros & TIME_MASK);
+    }
+
+    static long packTail(int size, int ttlSeconds) {
+        return ((long) size << 32) | (ttlSeconds & 0xffffffffL);
+    }
+
+    static void writeHeader(ByteBuffer buffer, long startMillis) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(0, MAGIC[0]).put(1, MAGIC[1]).put(2, MAGIC[2]).put(3, MAGIC[3]);
+        buffer.put(4, VERSION).put(5, (byte) RECORD_SIZE);
+        buffer.putLong(8, startMillis);
+        buffer.putLong(COUNT_OFFSET, 0);
+    }
+
+    static void writeCount(ByteBuffer buffer, long count) {
+        buffer.putLong(COUNT_OFFSET, count);
+    }
+
+    static void writeRecord(ByteBuffer buffer, long index, long head, long keyHash, long tail) {
+        int offset = (int) (HEADER_SIZE + index * RECORD_SIZE);
+        buffer.putLong(offset, head).putLong(offset + 8, keyHash).putLong(offset + 16, tail);
+    }
+
+    /**
+     * 只读打开轨迹文件
+     */
+    public static Reader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_SIZE) {
+                throw new IOException("not a trace file: " + file);
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (buffer.get(i) != MAGIC[i]) {
+                    throw new IOException("not a trace file: " + file);
+                }
+            }
+            if (buffer.get(4) != VERSION || buffer.get(5) != RECORD_SIZE) {
+                throw new IOException("unsupported trace version " + buffer.get(4) + " in " + file);
+            }
+            long count = Math.min(buffer.getLong(COUNT_OFFSET), (buffer.limit() - HEADER_SIZE) / RECORD_SIZE);
+            return new Reader(buffer, buffer.getLong(8), count);
+        }
+    }
+
+    /**
+     * 顺序读取记录 字段在 next 之后有效
+     */
+    public static final class Reader {
+
+        private final ByteBuffer buffer;
+
+        private final long startMillis;
+
+        private final long count;
+
+        private long index = -1;
+
+        private long head;
+
+        private long keyHash;
+
+        private long tail;
+
+        private Reader(ByteBuffer buffer, long startMillis, long count) {
+            this.buffer = buffer;
+            this.startMillis = startMillis;
+            this.count = count;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public boolean next() {
+            if (index + 1 >= count) {
+                return false;
+            }
+            int offset = (int) (HEADER_SIZE + ++index * RECORD_SIZE);
+            head = buffer.getLong(offset);
+            keyHash = buffer.getLong(offset + 8);
+            tail = buffer.getLong(offset + 16);
+            return true;
+        }
+
+        public Command command() {
+            return Command.of((int) (head >>> 56));
+        }
+
+        public int flags() {
+            return (int) (head >>> 48) & 0xff;
+        }
+
+        public long micros() {
+            return head & TIME_MASK;
+        }
+
+        public long keyHash() {
+            return keyHash;
+        }
+
+        /**
+         * 回放时使用的键
+         */
+        public String key() {
+            return "trace:" + Long.toHexString(keyHash);
+        }
+
+        public int size() {
+            return (int) (tail >>> 32);
+        }
+
+        public int ttlSeconds() {
+            return (int) tail;
+        }
+    }
+}
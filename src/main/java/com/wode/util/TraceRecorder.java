@@ -0,0 +1,264 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 键访问轨迹录制 记录命令、键哈希、值大小和时间, 不记录键和值的内容
+ * 调用线程只把记录写入预分配的环形缓冲(CAS占位, 不加锁、不分配对象), 缓冲满时丢弃并计数, 不会阻塞业务线程;
+ * 后台线程每隔 flush-interval-ms 把缓冲中的记录写入内存映射的轨迹文件, 文件写满后切换到下一个, 只保留最近 max-files 个
+ * 按键哈希采样, 同一个键要么全部记录要么都不记录, 回放时单个键的访问序列是完整的
+ * 文件格式见 TraceFormat, 回放工具见 com.wode.loadtest.TraceReplay
+ */
+@Component
+public class TraceRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceRecorder.class);
+
+    @Value("${redis.trace.enabled:false}")
+    private volatile boolean enabled;
+
+    @Value("${redis.trace.dir:trace}")
+    private String dir;
+
+    @Value("${redis.trace.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${redis.trace.buffer-records:65536}")
+    private int bufferRecords;
+
+    @Value("${redis.trace.file-records:1048576}")
+    private int fileRecords;
+
+    @Value("${redis.trace.max-files:16}")
+    private int maxFiles;
+
+    @Value("${redis.trace.flush-interval-ms:1000}")
+    private long flushInterval;
+
+    /**
+     * 键哈希低16位小于该值的键被记录
+     */
+    private int sampleThreshold;
+
+    private int mask;
+
+    private long[] slots;
+
+    /**
+     * 每个槽位已写入的序号+1 刷出线程据此判断记录是否写完
+     */
+    private AtomicLongArray published;
+
+    private final AtomicLong head = new AtomicLong();
+
+    private volatile long tail;
+
+    private long startNanos;
+
+    private long startMillis;
+
+    private String session;
+
+    private int fileSeq;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer mapped;
+
+    private long fileCount;
+
+    private final LongAdder recorded = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        int capacity = Integer.highestOneBit(Math.max(1024, bufferRecords));
+        if (capacity < bufferRecords) {
+            capacity <<= 1;
+        }
+        mask = capacity - 1;
+        slots = new long[capacity * 3];
+        published = new AtomicLongArray(capacity);
+        sampleThreshold = (int) Math.round(Math.max(0, Math.min(1, sampleRate)) * 0x10000);
+        startNanos = System.nanoTime();
+        startMillis = System.currentTimeMillis();
+        session = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date(startMillis));
+        Files.createDirectories(Paths.get(dir));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-trace-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        log.info("redis trace recording to {} (sample rate {}, buffer {} records)", dir, sampleRate, capacity);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(flushInterval * 2, TimeUnit.MILLISECONDS);
+        flush();
+        closeFile();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param command    命令
+     * @param key        逻辑键
+     * @param flags      TraceFormat.FLAG_*
+     * @param size       值的大小 未知时为0
+     * @param ttlSeconds 过期时间(秒) 没有时为0
+     */
+    public void record(TraceFormat.Command command, String key, int flags, int size, long ttlSeconds) {
+        if (!enabled || key == null) {
+            return;
+        }
+        long keyHash = TraceFormat.hash(key);
+        if ((keyHash & 0xffff) >= sampleThreshold) {
+            return;
+        }
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        int slot = (int) (seq & mask);
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        slots[slot * 3] = TraceFormat.packHead(command, flags, micros);
+        slots[slot * 3 + 1] = keyHash;
+        slots[slot * 3 + 2] = TraceFormat.packTail(size, (int) Math.min(Integer.MAX_VALUE, ttlSeconds));
+        published.lazySet(slot, seq + 1);
+        recorded.increment();
+    }
+
+    public void record(TraceFormat.Command command, String key) {
+        record(command, key, 0, 0, 0);
+    }
+
+    /**
+     * 把缓冲中已写完的记录写入轨迹文件 遇到还没写完的槽位时停止, 下次继续
+     */
+    public void flush() {
+        if (slots == null) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            long seq = tail;
+            long end = head.get();
+            while (seq < end) {
+                int slot = (int) (seq & mask);
+                if (published.get(slot) != seq + 1) {
+                    break;
+                }
+                if (mapped == null || fileCount == fileRecords) {
+                    rollFile();
+                }
+                TraceFormat.writeRecord(mapped, fileCount++, slots[slot * 3], slots[slot * 3 + 1], slots[slot * 3 + 2]);
+                seq++;
+            }
+            if (seq != tail) {
+                written.add(seq - tail);
+                TraceFormat.writeCount(mapped, fileCount);
+                tail = seq;
+            }
+        } catch (IOException e) {
+            log.warn("redis trace flush failed, recording stopped", e);
+            enabled = false;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("recorded", recorded.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("written", written.sum());
+        metrics.put("buffered", head.get() - tail);
+        metrics.put("files", fileSeq);
+        return metrics;
+    }
+
+    private void rollFile() throws IOException {
+        closeFile();
+        Path file = Paths.get(dir, String.format("redis-trace-%s-%05d.bin", session, fileSeq++));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, TraceFormat.HEADER_SIZE + (long) fileRecords * TraceFormat.RECORD_SIZE);
+        TraceFormat.writeHeader(mapped, startMillis);
+        fileCount = 0;
+        deleteOldFiles();
+    }
+
+    private void closeFile() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            TraceFormat.writeCount(mapped, fileCount);
+            mapped.force();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("close redis trace file failed", e);
+        }
+        channel = null;
+        mapped = null;
+    }
+
+    private void deleteOldFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(Paths.get(dir))) {
+            files = stream.filter(path -> path.getFileName().toString().startsWith("redis-trace-"))
+                    .sorted().collect(Collectors.toList());
+        }
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+}
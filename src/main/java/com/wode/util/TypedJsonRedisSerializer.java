@@ -0,0 +1,60 @@
+package com.wode.util;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * 固定类型的JSON序列化 不写入类名
+ * ObjectReader/ObjectWriter 在创建时绑定类型并预先解析好(反)序列化器, 每次调用不再按类型查找;
+ * 读取时直接按声明的类型反序列化, 没有多态类型判断. 写入的内容不能被 redisTemplate 的默认类型序列化读取, 反之亦然
+ */
+public class TypedJsonRedisSerializer<T> implements RedisSerializer<T> {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final JavaType type;
+
+    private final ObjectReader reader;
+
+    private final ObjectWriter writer;
+
+    public TypedJsonRedisSerializer(ObjectMapper mapper, JavaType type) {
+        this.type = type;
+        this.reader = mapper.readerFor(type);
+        this.writer = mapper.writerFor(type);
+    }
+
+    public JavaType getType() {
+        return type;
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        if (value == null) {
+            return EMPTY;
+        }
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write JSON as " + type + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return reader.readValue(bytes);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read JSON as " + type + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.wode.util;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单一类型的缓存操作 由 TypedRedisOpsFactory 创建, 每个类型一个实例
+ * 值用 TypedJsonRedisSerializer 序列化, 不带类名; 键和 redisTemplate 一样添加环境/租户前缀, hash的项为普通字符串
+ *
+ * @param <T> 值的类型
+ */
+public class TypedRedisOps<T> {
+
+    private final RedisTemplate<String, T> template;
+
+    private final TypedJsonRedisSerializer<T> serializer;
+
+    TypedRedisOps(RedisConnectionFactory connectionFactory, RedisKeyBuilder keyBuilder, TypedJsonRedisSerializer<T> serializer) {
+        this.serializer = serializer;
+        this.template = new RedisTemplate<>();
+        this.template.setConnectionFactory(connectionFactory);
+        this.template.setKeySerializer(new PrefixedKeySerializer(keyBuilder));
+        this.template.setValueSerializer(serializer);
+        this.template.setHashKeySerializer(new StringRedisSerializer());
+        this.template.setHashValueSerializer(serializer);
+        this.template.afterPropertiesSet();
+    }
+
+    /**
+     * 普通缓存获取
+     *
+     * @param key 键
+     * @return 值 不存在时返回null
+     */
+    public T get(String key) {
+        return key == null ? null : template.opsForValue().get(key);
+    }
+
+    /**
+     * 普通缓存放入
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void set(String key, T value) {
+        template.opsForValue().set(key, value);
+    }
+
+    /**
+     * 普通缓存放入并设置时间
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0为永久
+     */
+    public void set(String key, T value, long time) {
+        if (time > 0) {
+            template.opsForValue().set(key, value, time, TimeUnit.SECONDS);
+        } else {
+            set(key, value);
+        }
+    }
+
+    /**
+     * 批量获取(MGET)
+     *
+     * @param keys 键
+     * @return 与keys顺序一致的值 不存在的为null
+     */
+    public List<T> multiGet(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return template.opsForValue().multiGet(keys);
+    }
+
+    /**
+     * 批量保存(MSET)
+     */
+    public void multiSet(Map<String, T> values) {
+        if (!values.isEmpty()) {
+            template.opsForValue().multiSet(values);
+        }
+    }
+
+    /**
+     * 获取hash中的项
+     *
+     * @param key  键
+     * @param item 项
+     * @return 值
+     */
+    public T hget(String key, String item) {
+        return template.<String, T>opsForHash().get(key, item);
+    }
+
+    /**
+     * 向hash中放入数据
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     */
+    public void hset(String key, String item, T value) {
+        template.<String, T>opsForHash().put(key, item, value);
+    }
+
+    /**
+     * 获取hash的全部项
+     *
+     * @param key 键
+     * @return 项 -> 值
+     */
+    public Map<String, T> hgetAll(String key) {
+        return template.<String, T>opsForHash().entries(key);
+    }
+
+    public boolean delete(String key) {
+        return Boolean.TRUE.equals(template.delete(key));
+    }
+
+    /**
+     * 底层的 RedisTemplate 用于这里没有封装的命令
+     */
+    public RedisTemplate<String, T> getTemplate() {
+        return template;
+    }
+
+    public RedisSerializer<T> getSerializer() {
+        return serializer;
+    }
+}
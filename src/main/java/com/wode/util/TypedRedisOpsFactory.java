@@ -0,0 +1,65 @@
+package com.wode.util;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按领域类型创建 TypedRedisOps
+ * redisTemplate 开启了 DefaultTyping.NON_FINAL, 每个值(包括其中的集合)都带类名, 读取时要按类名反射查找多态类型;
+ * 这里每个类型一个模板, 值里只有字段, 读取时直接按声明类型反序列化. 可见性与 redisTemplate 一致(直接读写字段),
+ * 忽略null字段和未知字段, 类增删字段后旧数据仍可读取
+ * 同一个类型多次获取返回同一个实例, 连接工厂与 redisTemplate 共用(包括租户分库路由)
+ */
+@Component
+public class TypedRedisOpsFactory {
+
+    @Resource(name = "redisTemplate")
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private RedisKeyBuilder keyBuilder;
+
+    private final ObjectMapper mapper = createMapper();
+
+    private final Map<JavaType, TypedRedisOps<?>> cache = new ConcurrentHashMap<>();
+
+    public static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
+    }
+
+    /**
+     * @param type 值的类型
+     * @return 该类型的操作
+     */
+    public <T> TypedRedisOps<T> forClass(Class<T> type) {
+        return forJavaType(mapper.constructType(type));
+    }
+
+    /**
+     * 泛型类型 如 new TypeReference&lt;List&lt;Order&gt;&gt;() {}
+     */
+    public <T> TypedRedisOps<T> forType(TypeReference<T> type) {
+        return forJavaType(mapper.getTypeFactory().constructType(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> TypedRedisOps<T> forJavaType(JavaType type) {
+        return (TypedRedisOps<T>) cache.computeIfAbsent(type, t -> new TypedRedisOps<>(
+                redisTemplate.getConnectionFactory(), keyBuilder, new TypedJsonRedisSerializer<T>(mapper, t)));
+    }
+}
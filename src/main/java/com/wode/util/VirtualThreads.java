@@ -0,0 +1,107 @@
+package com.wode.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持
+ * 源码仍以Java 8编译, 通过反射使用 JDK 21 的 Thread.ofVirtual(), 低版本JDK上退回固定大小的平台线程池
+ */
+public final class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+
+    private static final Method NAME;
+
+    private static final Method FACTORY;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method perTask = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = perTask;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 虚拟线程工厂 线程名为 prefix + 序号
+     *
+     * @throws UnsupportedOperationException JDK不支持虚拟线程
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("virtual threads require JDK 21+, running " + System.getProperty("java.version"));
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("failed to create virtual thread factory", e);
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器
+     */
+    public static ExecutorService newPerTaskExecutor(String prefix) {
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory(prefix));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("failed to create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * 并发执行器
+     * 开启虚拟线程且JDK支持时每个任务一个虚拟线程, 并发数由调用方的信号量等控制; 否则为 parallelism 个守护线程的固定线程池
+     *
+     * @param virtual     是否使用虚拟线程
+     * @param parallelism 平台线程数
+     * @param prefix      线程名前缀
+     */
+    public static ExecutorService newExecutor(boolean virtual, int parallelism, String prefix) {
+        if (virtual) {
+            if (isSupported()) {
+                return newPerTaskExecutor(prefix);
+            }
+            log.warn("virtual threads requested but not supported by JDK {}, using {} platform threads",
+                    System.getProperty("java.version"), parallelism);
+        }
+        return Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, prefix);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,28 @@
+package com.wode.util;
+
+/**
+ * 有序集合范围查询的结果 成员和分数按下标对应, 分数不装箱
+ */
+public class ZSetArrays {
+
+    private final String[] members;
+
+    private final double[] scores;
+
+    public ZSetArrays(String[] members, double[] scores) {
+        this.members = members;
+        this.scores = scores;
+    }
+
+    public String[] getMembers() {
+        return members;
+    }
+
+    public double[] getScores() {
+        return scores;
+    }
+
+    public int size() {
+        return members.length;
+    }
+}
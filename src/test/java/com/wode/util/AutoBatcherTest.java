@@ -0,0 +1,113 @@
+package com.wode.util;
+
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class AutoBatcherTest {
+
+    /**
+     * MGET 原样返回键 不需要Redis
+     */
+    private static class EchoTemplate extends RedisTemplate<String, Object> {
+
+        private final long delayMillis;
+
+        EchoTemplate(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public <T> T execute(RedisCallback<T> action) {
+            RedisStringCommands strings = (RedisStringCommands) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{RedisStringCommands.class}, (proxy, method, args) -> {
+                        if (!"mGet".equals(method.getName())) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        Thread.sleep(delayMillis);
+                        return Arrays.asList((byte[][]) args[0]);
+                    });
+            RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> {
+                        if ("stringCommands".equals(method.getName())) {
+                            return strings;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+            return action.doInRedis(connection);
+        }
+    }
+
+    @Test
+    public void closeSendsBatchBeingCollected() throws Exception {
+        // 攒批等待很长, 关闭时请求还在收集线程手里
+        AutoBatcher batcher = new AutoBatcher(new EchoTemplate(0), 100, TimeUnit.SECONDS.toMicros(30), 1, false);
+        CompletableFuture<Object> future = batcher.get(bytes("a"));
+        Thread.sleep(100);
+        batcher.close();
+        assertEquals("a", new String((byte[]) future.get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void everyRequestCompletesWhenClosedUnderLoad() throws Exception {
+        AutoBatcher batcher = new AutoBatcher(new EchoTemplate(1), 16, 200, 2, false);
+        ExecutorService submitters = Executors.newFixedThreadPool(8);
+        List<Future<List<CompletableFuture<Object>>>> submitted = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            submitted.add(submitters.submit(() -> {
+                List<CompletableFuture<Object>> futures = new ArrayList<>();
+                started.countDown();
+                for (int i = 0; i < 2000; i++) {
+                    futures.add(batcher.get(bytes("k" + i)));
+                }
+                return futures;
+            }));
+        }
+        started.await();
+        Thread.sleep(5);
+        batcher.close();
+        submitters.shutdown();
+        int completed = 0;
+        int rejected = 0;
+        for (Future<List<CompletableFuture<Object>>> result : submitted) {
+            for (CompletableFuture<Object> future : result.get(10, TimeUnit.SECONDS)) {
+                try {
+                    assertNotNull(future.get(10, TimeUnit.SECONDS));
+                    completed++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                    rejected++;
+                }
+            }
+        }
+        assertEquals(8 * 2000, completed + rejected);
+    }
+
+    @Test
+    public void submitAfterCloseFails() throws Exception {
+        AutoBatcher batcher = new AutoBatcher(new EchoTemplate(0), 16, 200, 1, false);
+        batcher.close();
+        try {
+            batcher.get(bytes("a")).get(1, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package com.wode.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 100000;
+
+    @Test
+    public void hashTagKeysShareNode() {
+        ConsistentHashRing<String> ring = ring(8);
+        for (int i = 0; i < 1000; i++) {
+            String owner = ring.get(bytes("{user" + i + "}:profile"));
+            assertEquals(owner, ring.get(bytes("{user" + i + "}:orders")));
+            assertEquals(owner, ring.get(bytes("prefix:{user" + i + "}")));
+            // 只有第一个 {...} 是hash tag
+            assertEquals(owner, ring.get(bytes("{user" + i + "}:{other}")));
+        }
+    }
+
+    @Test
+    public void emptyOrUnclosedTagHashesWholeKey() {
+        ConsistentHashRing<String> ring = ring(8);
+        int differs = 0;
+        int unclosedDiffers = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (!ring.get(bytes("{}a" + i)).equals(ring.get(bytes("{}b" + i)))) {
+                differs++;
+            }
+            byte[] unclosed = bytes("{open" + i);
+            assertArrayEquals(unclosed, ConsistentHashRing.hashPart(unclosed));
+            assertArrayEquals(bytes("{}a" + i), ConsistentHashRing.hashPart(bytes("{}a" + i)));
+            if (!ring.get(unclosed).equals(ring.get(bytes("open" + i)))) {
+                unclosedDiffers++;
+            }
+        }
+        // 空括号不是hash tag, 不同的键应分散到不同节点
+        assertTrue(differs > 500);
+        // 未闭合的括号也不是hash tag, 不能只按括号后的内容定位
+        assertTrue(unclosedDiffers > 500);
+    }
+
+    @Test
+    public void addingNodeMovesOnlyItsShare() {
+        ConsistentHashRing<String> before = ring(10);
+        ConsistentHashRing<String> after = before.with("node-10", "node-10");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            byte[] key = bytes("key:" + i);
+            String from = before.get(key);
+            String to = after.get(key);
+            if (!from.equals(to)) {
+                // 换节点的键只能去新节点
+                assertEquals("node-10", to);
+                moved++;
+            }
+        }
+        double expected = KEYS / 11.0;
+        assertTrue("moved " + moved, moved > expected * 0.7 && moved < expected * 1.3);
+    }
+
+    @Test
+    public void removingNodeRestoresPreviousOwnership() {
+        ConsistentHashRing<String> before = ring(5);
+        ConsistentHashRing<String> restored = before.with("extra", "extra").without("extra");
+        for (int i = 0; i < 10000; i++) {
+            byte[] key = bytes("key:" + i);
+            assertEquals(before.get(key), restored.get(key));
+        }
+    }
+
+    @Test
+    public void placementIndependentOfInsertionOrder() {
+        ConsistentHashRing<String> forward = new ConsistentHashRing<>(160);
+        ConsistentHashRing<String> backward = new ConsistentHashRing<>(160);
+        for (int i = 0; i < 6; i++) {
+            forward = forward.with("node-" + i, "node-" + i);
+            backward = backward.with("node-" + (5 - i), "node-" + (5 - i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            byte[] key = bytes("key:" + i);
+            assertEquals(forward.get(key), backward.get(key));
+        }
+    }
+
+    @Test
+    public void ownershipCoversRingEvenly() {
+        ConsistentHashRing<String> ring = ring(4);
+        Map<String, Double> ownership = ring.ownership();
+        assertEquals(4, ownership.size());
+        double total = 0;
+        for (double share : ownership.values()) {
+            assertTrue("share " + share, share > 0.15 && share < 0.35);
+            total += share;
+        }
+        assertEquals(1.0, total, 1e-9);
+    }
+
+    @Test
+    public void singleVirtualNodeOwnsWholeRing() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(1).with("only", "only");
+        assertEquals(1.0, ring.ownership().get("only"), 1e-9);
+        assertEquals("only", ring.get(bytes("key")));
+    }
+
+    @Test
+    public void ownershipMatchesKeyDistribution() {
+        ConsistentHashRing<String> ring = ring(4);
+        Map<String, Double> ownership = ring.ownership();
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get(bytes("key:" + i)), 1, Integer::sum);
+        }
+        ownership.forEach((name, share) -> assertEquals(name, share, counts.get(name) / (double) KEYS, 0.02));
+    }
+
+    @Test
+    public void emptyRingHasNoOwner() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(160);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.get(bytes("key")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateNodeRejected() {
+        ring(2).with("node-0", "again");
+    }
+
+    private static ConsistentHashRing<String> ring(int nodes) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(160);
+        for (int i = 0; i < nodes; i++) {
+            ring = ring.with("node-" + i, "node-" + i);
+        }
+        return ring;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package com.wode.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 项过期命令(HEXPIRE/HTTL) Lettuce 5.1 没有对应的 CommandType, 通过 RedisCommandSupport 发送
+ */
+public class LargeHashOpsTest {
+
+    private MiniRedisFixture redis;
+
+    private RedisTemplate<String, Object> template;
+
+    private LargeHashOps ops;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new MiniRedisFixture();
+        template = redis.objectTemplate();
+        ops = new LargeHashOps();
+        ReflectionTestUtils.setField(ops, "redisTemplate", template);
+        ReflectionTestUtils.setField(ops, "commands", redis.commands(template));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Test
+    public void hsetWithTtlExpiresOnlyThatField() {
+        template.opsForHash().put("profile", "name", "wode");
+        ops.hsetWithTtl("profile", "token", "abc", 100);
+        assertEquals(Arrays.asList(-1L, 100L, -2L), ops.fieldTtl("profile", "name", "token", "missing"));
+        assertEquals("abc", template.opsForHash().get("profile", "token"));
+    }
+
+    @Test
+    public void expireFieldsReportsPerField() {
+        template.opsForHash().put("profile", "a", 1);
+        template.opsForHash().put("profile", "b", 2);
+        assertEquals(Arrays.asList(1L, -2L), ops.expireFields("profile", 30, "a", "c"));
+        // 时间为0时删除该项
+        assertEquals(Arrays.asList(2L), ops.expireFields("profile", 0, "b"));
+        assertNull(template.opsForHash().get("profile", "b"));
+        assertEquals(Arrays.asList(30L), ops.fieldTtl("profile", "a"));
+    }
+
+    @Test
+    public void missingKeyReportsMissingFields() {
+        assertEquals(Arrays.asList(-2L, -2L), ops.expireFields("absent", 10, "a", "b"));
+        assertEquals(Arrays.asList(-2L), ops.fieldTtl("absent", "a"));
+    }
+
+    @Test
+    public void expiredFieldDisappears() throws Exception {
+        template.opsForHash().put("profile", "keep", 1);
+        ops.hsetWithTtl("profile", "gone", 2, 1);
+        Thread.sleep(1100);
+        assertNull(template.opsForHash().get("profile", "gone"));
+        assertEquals(1, template.opsForHash().get("profile", "keep"));
+    }
+
+    @Test(expected = RedisCommandSupport.UnknownCommandException.class)
+    public void unsupportedServerRaisesTypedError() {
+        redis.server.disable("HEXPIRE");
+        ops.expireFields("profile", 10, "a");
+    }
+}
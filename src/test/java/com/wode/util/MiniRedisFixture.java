@@ -0,0 +1,82 @@
+package com.wode.util;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wode.loadtest.MiniRedisServer;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 进程内的 MiniRedisServer 加上与 RedisConfig 一致的Lettuce连接和序列化
+ */
+final class MiniRedisFixture implements Closeable {
+
+    final MiniRedisServer server;
+
+    final LettuceConnectionFactory factory;
+
+    final RedisKeyBuilder keyBuilder;
+
+    MiniRedisFixture() throws IOException {
+        server = new MiniRedisServer(0);
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", server.getPort()));
+        factory.afterPropertiesSet();
+        keyBuilder = new RedisKeyBuilder();
+        ReflectionTestUtils.setField(keyBuilder, "env", "test:");
+        ReflectionTestUtils.setField(keyBuilder, "mode", RedisKeyBuilder.TenantMode.PREFIX);
+        ReflectionTestUtils.setField(keyBuilder, "databases", "");
+        keyBuilder.init();
+    }
+
+    /**
+     * 与 RedisConfig.redisTemplate 相同: 键带前缀, 值和hash用Jackson
+     */
+    RedisTemplate<String, Object> objectTemplate() {
+        Jackson2JsonRedisSerializer<Object> jackson = new Jackson2JsonRedisSerializer<>(Object.class);
+        ObjectMapper om = new ObjectMapper();
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        jackson.setObjectMapper(om);
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new PrefixedKeySerializer(keyBuilder));
+        template.setValueSerializer(jackson);
+        template.setHashKeySerializer(jackson);
+        template.setHashValueSerializer(jackson);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    /**
+     * 键带前缀, 值为字符串
+     */
+    RedisTemplate<String, String> stringTemplate() {
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new PrefixedKeySerializer(keyBuilder));
+        template.setValueSerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @SuppressWarnings("unchecked")
+    RedisCommandSupport commands(RedisTemplate<String, ?> template) {
+        return new RedisCommandSupport((RedisTemplate<String, Object>) template);
+    }
+
+    @Override
+    public void close() throws IOException {
+        factory.destroy();
+        server.close();
+    }
+}
@@ -0,0 +1,130 @@
+package com.wode.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * GEOSEARCH 通过 RedisCommandSupport 发送, 在 SLOW 类命令的保护下执行
+ */
+public class RedisTemplateUtilGeoTest {
+
+    private static final double LON = 116.40;
+
+    private static final double LAT = 39.90;
+
+    private MiniRedisFixture redis;
+
+    private RedisTemplate<String, String> template;
+
+    private RedisGuard guard;
+
+    private RedisTemplateUtil util;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new MiniRedisFixture();
+        template = redis.stringTemplate();
+
+        guard = new RedisGuard();
+        ReflectionTestUtils.setField(guard, "enabled", true);
+        ReflectionTestUtils.setField(guard, "readTimeout", 2000L);
+        ReflectionTestUtils.setField(guard, "writeTimeout", 2000L);
+        ReflectionTestUtils.setField(guard, "slowTimeout", 2000L);
+        ReflectionTestUtils.setField(guard, "readBulkhead", 4);
+        ReflectionTestUtils.setField(guard, "writeBulkhead", 4);
+        ReflectionTestUtils.setField(guard, "slowBulkhead", 4);
+        ReflectionTestUtils.setField(guard, "breakerWindow", 10);
+        ReflectionTestUtils.setField(guard, "breakerMinimumCalls", 5);
+        ReflectionTestUtils.setField(guard, "breakerFailureRate", 0.5);
+        ReflectionTestUtils.setField(guard, "breakerOpenMillis", 5000L);
+        guard.init();
+
+        util = new RedisTemplateUtil(template);
+        ReflectionTestUtils.setField(util, "keyBuilder", redis.keyBuilder);
+        ReflectionTestUtils.setField(util, "nearCache", new ClientTrackingCache("127.0.0.1", redis.server.getPort(), null, 0,
+                ClientTrackingCache.Mode.DEFAULT, Collections.emptyList(), 16, 1000));
+        ReflectionTestUtils.setField(util, "commands", redis.commands(template));
+        ReflectionTestUtils.setField(util, "guard", guard);
+        ReflectionTestUtils.setField(util, "multiChunkSize", 500);
+        ReflectionTestUtils.setField(util, "geoTileTtl", 60000L);
+        ReflectionTestUtils.setField(util, "geoTileMaxEntries", 100);
+        ReflectionTestUtils.setField(util, "geoTileMaxCandidates", 100);
+        util.init();
+
+        Map<String, Point> places = new LinkedHashMap<>();
+        // 中心以东约85米、以北约334米、以东约853米、东北约6.6公里
+        places.put("a", new Point(116.401, 39.90));
+        places.put("b", new Point(116.40, 39.903));
+        places.put("c", new Point(116.41, 39.90));
+        places.put("d", new Point(116.45, 39.95));
+        util.geoAdd("places", places);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        util.destroy();
+        guard.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void searchRadiusOrdersByDistance() {
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> results = util.geoSearchRadius("places", LON, LAT, 500, 0, false);
+        assertEquals(Arrays.asList("a", "b"), members(results));
+        assertEquals(85, results.get(0).getDistance().getValue(), 1);
+        assertEquals(116.401, results.get(0).getContent().getPoint().getX(), 1e-6);
+        assertEquals(Collections.singletonList("a"), members(util.geoSearchRadius("places", LON, LAT, 500, 1, false)));
+    }
+
+    @Test
+    public void searchBoxUsesWidthAndHeight() {
+        // 东西各1000米, 南北各200米: b在北边334米处不在矩形内
+        assertEquals(Arrays.asList("a", "c"), members(util.geoSearchBox("places", LON, LAT, 2000, 400, 0, false)));
+    }
+
+    @Test
+    public void nearbyCachedIsInvalidatedByGeoAdd() {
+        assertEquals(Arrays.asList("a", "b"), members(util.geoNearbyCached("places", LON, LAT, 500, 0)));
+        // 以北约111米
+        util.geoAdd("places", Collections.singletonMap("e", new Point(116.40, 39.901)));
+        assertEquals(Arrays.asList("a", "e", "b"), members(util.geoNearbyCached("places", LON, LAT, 500, 0)));
+    }
+
+    @Test
+    public void commandErrorsDoNotOpenBreaker() {
+        template.opsForValue().set("text", "v");
+        for (int i = 0; i < 10; i++) {
+            // WRONGTYPE 降级为空结果
+            assertTrue(util.geoSearchRadius("text", LON, LAT, 500, 0, false).isEmpty());
+        }
+        redis.server.disable("GEOSEARCH");
+        for (int i = 0; i < 10; i++) {
+            assertTrue(util.geoNearbyCached("places", LON, LAT, 500, 0).isEmpty());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getBreakerState());
+        assertEquals(0.0, guard.metrics().get("failureRate"));
+        @SuppressWarnings("unchecked")
+        Map<String, Long> slow = (Map<String, Long>) guard.metrics().get("slow");
+        assertEquals(20L, (long) slow.get("commandErrors"));
+        assertEquals(0L, (long) slow.get("failures"));
+    }
+
+    private static List<String> members(List<GeoResult<RedisGeoCommands.GeoLocation<String>>> results) {
+        return results.stream().map(r -> r.getContent().getName()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,65 @@
+package com.wode.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * SINTERCARD 通过 RedisCommandSupport 发送
+ */
+public class RedisTemplateUtilSetTest {
+
+    private MiniRedisFixture redis;
+
+    private RedisTemplateUtil util;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new MiniRedisFixture();
+        RedisTemplate<String, String> template = redis.stringTemplate();
+        util = new RedisTemplateUtil(template);
+        ReflectionTestUtils.setField(util, "keyBuilder", redis.keyBuilder);
+        ReflectionTestUtils.setField(util, "nearCache", new ClientTrackingCache("127.0.0.1", redis.server.getPort(), null, 0,
+                ClientTrackingCache.Mode.DEFAULT, Collections.emptyList(), 16, 1000));
+        ReflectionTestUtils.setField(util, "commands", redis.commands(template));
+
+        util.sSet("tags:1", "a", "b", "c", "d");
+        util.sSet("tags:2", "b", "c", "d", "e");
+        util.sSet("tags:3", "c", "d");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Test
+    public void countsIntersection() {
+        assertEquals(3, util.sIntersectCard(0, "tags:1", "tags:2"));
+        assertEquals(2, util.sIntersectCard(0, "tags:1", "tags:2", "tags:3"));
+        assertEquals(4, util.sIntersectCard(0, "tags:1"));
+    }
+
+    @Test
+    public void stopsAtLimit() {
+        assertEquals(2, util.sIntersectCard(2, "tags:1", "tags:2"));
+        assertEquals(3, util.sIntersectCard(10, "tags:1", "tags:2"));
+    }
+
+    @Test
+    public void missingKeyIsEmpty() {
+        assertEquals(0, util.sIntersectCard(0, "tags:1", "absent"));
+    }
+
+    @Test(expected = RedisCommandSupport.UnknownCommandException.class)
+    public void unsupportedServerRaisesTypedError() {
+        redis.server.disable("SINTERCARD");
+        util.sIntersectCard(0, "tags:1", "tags:2");
+    }
+}
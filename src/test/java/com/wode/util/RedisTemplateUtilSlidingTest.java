@@ -0,0 +1,116 @@
+package com.wode.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 滑动过期的 GETEX 模式 以及服务端不支持GETEX时退回 GET + 批量PEXPIRE
+ */
+public class RedisTemplateUtilSlidingTest {
+
+    private static final long TTL_SECONDS = 100;
+
+    private MiniRedisFixture redis;
+
+    private RedisTemplate<String, String> template;
+
+    private SlidingExpiration sliding;
+
+    private RedisGuard guard;
+
+    private RedisTemplateUtil util;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new MiniRedisFixture();
+        template = redis.stringTemplate();
+
+        sliding = new SlidingExpiration();
+        ReflectionTestUtils.setField(sliding, "redisTemplate", template);
+        ReflectionTestUtils.setField(sliding, "keyBuilder", redis.keyBuilder);
+        ReflectionTestUtils.setField(sliding, "enabled", true);
+        ReflectionTestUtils.setField(sliding, "mode", SlidingExpiration.Mode.GETEX);
+        ReflectionTestUtils.setField(sliding, "ttlSeconds", TTL_SECONDS);
+        ReflectionTestUtils.setField(sliding, "prefixes", "session:");
+        ReflectionTestUtils.setField(sliding, "flushInterval", 60000L);
+        ReflectionTestUtils.setField(sliding, "maxPending", 1000);
+        sliding.init();
+
+        guard = new RedisGuard();
+        ReflectionTestUtils.setField(guard, "readTimeout", 2000L);
+        ReflectionTestUtils.setField(guard, "readBulkhead", 4);
+        ReflectionTestUtils.setField(guard, "writeBulkhead", 4);
+        ReflectionTestUtils.setField(guard, "slowBulkhead", 4);
+        ReflectionTestUtils.setField(guard, "breakerWindow", 10);
+        ReflectionTestUtils.setField(guard, "breakerMinimumCalls", 5);
+        ReflectionTestUtils.setField(guard, "breakerFailureRate", 0.5);
+        ReflectionTestUtils.setField(guard, "breakerOpenMillis", 5000L);
+
+        util = new RedisTemplateUtil(template);
+        ReflectionTestUtils.setField(util, "keyBuilder", redis.keyBuilder);
+        ReflectionTestUtils.setField(util, "nearCache", new ClientTrackingCache("127.0.0.1", redis.server.getPort(), null, 0,
+                ClientTrackingCache.Mode.DEFAULT, Collections.emptyList(), 16, 1000));
+        ReflectionTestUtils.setField(util, "commands", redis.commands(template));
+        ReflectionTestUtils.setField(util, "sliding", sliding);
+        ReflectionTestUtils.setField(util, "guard", guard);
+        ReflectionTestUtils.setField(util, "adaptiveTtl", new AdaptiveTtlPolicy());
+        ReflectionTestUtils.setField(util, "trace", new TraceRecorder());
+
+        template.opsForValue().set("session:1", "v");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        guard.destroy();
+        sliding.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void getexReadsAndRenews() {
+        guard.init();
+        assertEquals("v", util.get("session:1", () -> "fallback"));
+        assertTrue(sliding.isGetex());
+        assertRenewed();
+    }
+
+    @Test
+    public void unsupportedGetexFallsBackToGetWithoutGuard() {
+        guard.init();
+        redis.server.disable("GETEX");
+        assertEquals("v", util.get("session:1", () -> "fallback"));
+        assertFalse(sliding.isGetex());
+        assertRenewedAfterFlush();
+    }
+
+    @Test
+    public void unsupportedGetexFallsBackToGetWithGuard() {
+        ReflectionTestUtils.setField(guard, "enabled", true);
+        guard.init();
+        redis.server.disable("GETEX");
+        // 第一次读取就返回真实值 而不是保护的降级值
+        assertEquals("v", util.get("session:1", () -> "fallback"));
+        assertFalse(sliding.isGetex());
+        assertEquals("v", util.get("session:1", () -> "fallback"));
+        assertRenewedAfterFlush();
+    }
+
+    private void assertRenewedAfterFlush() {
+        assertEquals(-1L, (long) template.getExpire("session:1", TimeUnit.SECONDS));
+        sliding.flush();
+        assertRenewed();
+    }
+
+    private void assertRenewed() {
+        long pttl = template.getExpire("session:1", TimeUnit.MILLISECONDS);
+        assertTrue("pttl " + pttl, pttl > TimeUnit.SECONDS.toMillis(TTL_SECONDS - 5) && pttl <= TimeUnit.SECONDS.toMillis(TTL_SECONDS));
+    }
+}
@@ -0,0 +1,123 @@
+package com.wode.util;
+
+import com.wode.loadtest.MiniRedisServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 乐观事务 在进程内的 MiniRedisServer 上通过Lettuce执行真实的 WATCH/MULTI/EXEC
+ */
+public class RedisTemplateUtilTransactionTest {
+
+    private MiniRedisServer server;
+
+    private LettuceConnectionFactory factory;
+
+    private RedisTemplateUtil util;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MiniRedisServer(0);
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", server.getPort()));
+        factory.afterPropertiesSet();
+
+        RedisKeyBuilder keyBuilder = new RedisKeyBuilder();
+        ReflectionTestUtils.setField(keyBuilder, "env", "test:");
+        ReflectionTestUtils.setField(keyBuilder, "mode", RedisKeyBuilder.TenantMode.PREFIX);
+        ReflectionTestUtils.setField(keyBuilder, "databases", "");
+        keyBuilder.init();
+
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new PrefixedKeySerializer(keyBuilder));
+        template.setValueSerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+
+        util = new RedisTemplateUtil(template);
+        ReflectionTestUtils.setField(util, "keyBuilder", keyBuilder);
+        ReflectionTestUtils.setField(util, "nearCache", new ClientTrackingCache("127.0.0.1", server.getPort(), null, 0,
+                ClientTrackingCache.Mode.DEFAULT, Collections.emptyList(), 16, 1000));
+        ReflectionTestUtils.setField(util, "txMaxAttempts", 200);
+        ReflectionTestUtils.setField(util, "txBackoffMillis", 1L);
+        ReflectionTestUtils.setField(util, "txMaxBackoffMillis", 5L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        factory.destroy();
+        server.close();
+    }
+
+    @Test
+    public void commitsGetCheckDecr() {
+        util.setLong("stock", 10, 0);
+        boolean reserved = util.transaction(Collections.singleton("stock"), tx -> reserve(tx, 3));
+        assertTrue(reserved);
+        assertEquals(7, util.getLong("stock", -1));
+        assertEquals(1L, util.transactionMetrics().get("commits"));
+        assertEquals(0L, util.transactionMetrics().get("conflicts"));
+    }
+
+    @Test
+    public void discardLeavesValueUnchanged() {
+        util.setLong("stock", 2, 0);
+        boolean reserved = util.transaction(Collections.singleton("stock"), tx -> reserve(tx, 3));
+        assertFalse(reserved);
+        assertEquals(2, util.getLong("stock", -1));
+        assertEquals(1L, util.transactionMetrics().get("readOnly"));
+    }
+
+    @Test
+    public void concurrentDecrementsNeverOversell() throws Exception {
+        util.setLong("stock", 50, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    int reserved = 0;
+                    for (int i = 0; i < 20; i++) {
+                        if (util.transaction(Collections.singleton("stock"), tx -> reserve(tx, 1))) {
+                            reserved++;
+                        }
+                    }
+                    return reserved;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(50, total);
+            assertEquals(0, util.getLong("stock", -1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean reserve(RedisTransaction tx, long quantity) {
+        long stock = tx.getLong("stock", 0);
+        if (stock < quantity) {
+            tx.discard();
+            return false;
+        }
+        tx.decrBy("stock", quantity);
+        return true;
+    }
+}
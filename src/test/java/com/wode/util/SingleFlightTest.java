@@ -0,0 +1,112 @@
+package com.wode.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void followersShareLeaderResult() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> flight.execute("k", () -> {
+                started.countDown();
+                await(release);
+                return "v";
+            }));
+            started.await();
+            Follower follower = new Follower();
+            Future<String> result = executor.submit(() -> follower.run(() -> flight.execute("k", () -> "other")));
+            follower.awaitJoined();
+            release.countDown();
+            assertEquals("v", leader.get(5, TimeUnit.SECONDS));
+            assertEquals("v", result.get(5, TimeUnit.SECONDS));
+            assertEquals(0, flight.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void errorInLoaderReleasesFollowers() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = executor.submit(() -> flight.execute("k", () -> {
+                started.countDown();
+                await(release);
+                throw new AssertionError("boom");
+            }));
+            started.await();
+            Follower follower = new Follower();
+            Future<Object> result = executor.submit(() -> follower.run(() -> flight.execute("k", () -> "other")));
+            follower.awaitJoined();
+            release.countDown();
+            assertErrorCause(leader);
+            assertErrorCause(result);
+            assertEquals(0, flight.inFlight());
+            assertEquals("next", flight.execute("k", () -> "next"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertErrorCause(Future<Object> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected AssertionError");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * 跟随的请求 记下执行线程, 等它阻塞在leader的结果上之后再放行leader, 保证两个请求确实重叠
+     */
+    private static final class Follower {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private volatile Thread thread;
+
+        <T> T run(Supplier<T> call) {
+            thread = Thread.currentThread();
+            started.countDown();
+            return call.get();
+        }
+
+        /**
+         * 开始后线程只会在等待leader结果时进入WAITING
+         */
+        void awaitJoined() throws InterruptedException {
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (thread.getState() != Thread.State.WAITING) {
+                assertTrue("follower did not join the leader", System.nanoTime() < deadline);
+                Thread.yield();
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}